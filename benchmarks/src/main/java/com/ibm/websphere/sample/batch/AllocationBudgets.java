@@ -0,0 +1,298 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.batch.runtime.context.JobContext;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import com.ibm.websphere.sample.benchmarks.LocalTransaction;
+import com.ibm.websphere.sample.benchmarks.SampleTweets;
+import com.ibm.websphere.sample.benchmarks.TweetDatabase;
+import com.ibm.websphere.sample.benchmarks.UnobservedEvent;
+import com.ibm.websphere.sample.jpa.TweetDataObject;
+import com.ibm.websphere.sample.snatcher.TweetStatusFileWriter;
+import com.ibm.websphere.sample.trending.TrendWindows;
+import com.ibm.websphere.sample.twitter4j.ReplayStatusSource;
+import com.ibm.websphere.sample.watson.SentimentObject;
+
+import twitter4j.Status;
+
+/**
+ * Checks that each stage of the pipeline allocates no more per tweet than its budget, so heap churn
+ * that has been taken out doesn't creep back in.  The reader, the processor (with and without a stand-in
+ * for Watson), the JPA writer and the snatcher's file writer each handle the sample tweets a few times
+ * over to warm up, and then again while the bytes the thread allocates are counted
+ * (com.sun.management.ThreadMXBean).  The budgets are in allocation-budgets.properties, and any can be
+ * overridden with a system property, e.g. <code>-Dbudget.reader=20000</code>.
+ * <p>
+ * Run by <code>mvn verify</code> in the benchmarks directory (<code>-DskipBudgets</code> to leave it out);
+ * it prints what each stage allocated against its budget and exits with 1 if any went over.
+ */
+public class AllocationBudgets {
+
+	private static final int WARMUP_PASSES = 20;
+	private static final int MEASURED_PASSES = 10;
+	private static final int CHUNK_SIZE = 10;
+	private static final int TREND_FLUSH_ITEMS = 1000;
+
+	private final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private final List<String> lines;
+
+	/**
+	 * Handles every sample tweet once
+	 */
+	private interface Pass {
+		/**
+		 * @return The number of tweets handled
+		 */
+		long run() throws Exception;
+	}
+
+	AllocationBudgets(List<String> lines) {
+		this.lines = lines;
+	}
+
+	public static void main(String[] args) throws Exception {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.out.println("This JVM can't count the bytes a thread allocates");
+			System.exit(2);
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		Properties budgets = new Properties();
+		InputStream in = AllocationBudgets.class.getClassLoader().getResourceAsStream("allocation-budgets.properties");
+		try {
+			budgets.load(in);
+		} finally {
+			in.close();
+		}
+
+		AllocationBudgets check = new AllocationBudgets(SampleTweets.lines());
+		Map<String, Long> measured = new LinkedHashMap<String, Long>();
+		measured.put("reader", check.bytesPerTweet(check.reader()));
+		measured.put("processor", check.bytesPerTweet(check.processor(false)));
+		measured.put("processor.watsonStub", check.bytesPerTweet(check.processor(true)));
+		measured.put("jpaWriter", check.bytesPerTweet(check.jpaWriter()));
+		measured.put("snatcherWriter", check.bytesPerTweet(check.snatcherWriter()));
+
+		boolean over = false;
+		System.out.println(String.format("%-22s %14s %14s", "stage", "bytes/tweet", "budget"));
+		for (Map.Entry<String, Long> stage : measured.entrySet()) {
+			long budget = Long.parseLong(System.getProperty("budget." + stage.getKey(), budgets.getProperty(stage.getKey())));
+			boolean ok = stage.getValue() <= budget;
+			over |= !ok;
+			System.out.println(String.format("%-22s %14d %14d %s", stage.getKey(), stage.getValue(), budget, ok ? "" : "OVER BUDGET"));
+		}
+		System.exit(over ? 1 : 0);
+	}
+
+	/**
+	 * Runs a pass enough times to warm it up, then measures what it allocates
+	 */
+	private long bytesPerTweet(Pass pass) throws Exception {
+		for (int i = 0; i < WARMUP_PASSES; i++) {
+			pass.run();
+		}
+		long thread = Thread.currentThread().getId();
+		long tweets = 0;
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < MEASURED_PASSES; i++) {
+			tweets += pass.run();
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		return tweets > 0 ? allocated / tweets : 0;
+	}
+
+	/**
+	 * MultiTextFileLineReader reading the sample files, from open to close
+	 */
+	private Pass reader() {
+		final JobContext jobContext = (JobContext) Proxy.newProxyInstance(JobContext.class.getClassLoader(),
+				new Class<?>[] { JobContext.class }, (proxy, method, methodArgs) ->
+						method.getName().endsWith("Id") ? Long.valueOf(1) : null);
+		final JobProgress jobProgress = new JobProgress();
+		final String inputDir = System.getProperty("tweets.dir", "../sample-data/snatched-tweets");
+		return () -> {
+			MultiTextFileLineReader reader = new MultiTextFileLineReader();
+			reader.inputDir = inputDir;
+			reader.inputExt = ".dat";
+			reader.jobContext = jobContext;
+			reader.jobProgress = jobProgress;
+			reader.open(null);
+			long tweets = 0;
+			while (reader.readItem() != null) {
+				if (++tweets % CHUNK_SIZE == 0) {
+					reader.checkpointInfo();
+				}
+			}
+			reader.close();
+			return tweets;
+		};
+	}
+
+	/**
+	 * SentimentAnalysisProcessor, without Watson as the job runs by default or with a stand-in for it
+	 */
+	private Pass processor(boolean useWatson) throws Exception {
+		final List<TweetDataObject> tweets = tweets();
+		final SentimentAnalysisProcessor processor = new SentimentAnalysisProcessor();
+		processor.useWatson = useWatson;
+		if (useWatson) {
+			processor.la = ProcessorBenchmark.StubLanguageAnalyzer.create();
+		}
+		return () -> {
+			for (TweetDataObject tweet : tweets) {
+				processor.processItem(tweet);
+			}
+			return tweets.size();
+		};
+	}
+
+	/**
+	 * TweetObjectJPAWriter inserting the tweets into an in-memory database, a chunk per transaction, as
+	 * the job runs it: each tweet comes from the processor with its hashtags, mentions and links, and
+	 * the new tweets are counted into the trend sketches every TREND_FLUSH_ITEMS, the job's default.
+	 * The processor's share, a few hundred bytes a tweet (see processor), is counted in with the writer's.
+	 */
+	private Pass jpaWriter() throws Exception {
+		final List<TweetDataObject> tweets = tweets();
+		final EntityManagerFactory emf = TweetDatabase.open("jdbc:derby:memory:AllocationBudgetsDB");
+		final EntityManager em = emf.createEntityManager();
+		final LocalTransaction tx = new LocalTransaction(em);
+		final SentimentAnalysisProcessor processor = new SentimentAnalysisProcessor();
+		processor.useWatson = false;
+		final TrendWindows trendWindows = new TrendWindows();
+		// Not in this package, so injected the way EmbeddedBatchRuntime would
+		Field trendsEm = TrendWindows.class.getDeclaredField("entityManager");
+		trendsEm.setAccessible(true);
+		trendsEm.set(trendWindows, em);
+		final TweetObjectJPAWriter writer = new TweetObjectJPAWriter();
+		writer.entityManager = em;
+		writer.transactionRegistry = tx;
+		writer.trendWindows = trendWindows;
+		writer.persistAnalysis = true;
+		writer.trendFlushItems = TREND_FLUSH_ITEMS;
+		writer.popularityChanges = new UnobservedEvent<PopularityChangeEvent>();
+		writer.newTweets = new UnobservedEvent<NewTweetsEvent>();
+		writer.open(null);
+		final long[] nextStatusId = { 1 };
+		return () -> {
+			List<Object> chunk = new ArrayList<Object>(CHUNK_SIZE);
+			for (int i = 0; i < tweets.size(); i++) {
+				// A new tweet each time, as the reader would hand over
+				TweetDataObject sample = tweets.get(i);
+				TweetDataObject tweet = new TweetDataObject();
+				tweet.setStatusId(nextStatusId[0]++);
+				tweet.setAccountId(sample.getAccountId());
+				tweet.setTextContent(sample.getTextContent());
+				tweet.setCreationDate(sample.getCreationDate());
+				tweet.setNumberOfFollowers(sample.getNumberOfFollowers());
+				tweet.setRetweetCount(sample.getRetweetCount());
+				tweet.setFavoriteCount(sample.getFavoriteCount());
+				tweet.setAccountLocation(sample.getAccountLocation());
+				tweet.setExpandedUrls(sample.getExpandedUrls());
+				tweet.setSentimentObject(new SentimentObject());
+				chunk.add(processor.processItem(tweet));
+				if (chunk.size() == CHUNK_SIZE || i == tweets.size() - 1) {
+					tx.begin();
+					writer.writeItems(chunk);
+					tx.commit();
+					em.clear();
+					chunk.clear();
+				}
+			}
+			return tweets.size();
+		};
+	}
+
+	/**
+	 * The snatcher's TweetStatusFileWriter writing the tweets in batches, into the tweets directory
+	 * it always writes to; the files it adds there are deleted afterwards.
+	 */
+	private Pass snatcherWriter() throws Exception {
+		final List<Status> statuses = new ArrayList<Status>();
+		for (String line : lines) {
+			statuses.add(ReplayStatusSource.parseCapture(line));
+		}
+		final File dir = new File("tweets");
+		final Set<String> existing = new HashSet<String>(dir.isDirectory() ? Arrays.asList(dir.list()) : new ArrayList<String>());
+		final boolean created = !dir.isDirectory();
+		final PrintStream console = System.out;
+		final PrintStream discard = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		});
+		return () -> {
+			System.setOut(discard);
+			try {
+				TweetStatusFileWriter writer = new TweetStatusFileWriter();
+				for (int i = 0; i < statuses.size(); i += 100) {
+					writer.write(statuses.subList(i, Math.min(i + 100, statuses.size())));
+					writer.syncIfDue();
+				}
+				writer.close();
+			} finally {
+				System.setOut(console);
+			}
+			for (String name : dir.list()) {
+				if (!existing.contains(name)) {
+					new File(dir, name).delete();
+				}
+			}
+			if (created) {
+				dir.delete();
+			}
+			return statuses.size();
+		};
+	}
+
+	private List<TweetDataObject> tweets() throws Exception {
+		Jsonb jsonb = JsonbBuilder.create();
+		List<TweetDataObject> tweets = new ArrayList<TweetDataObject>();
+		for (String line : lines) {
+			tweets.add(jsonb.fromJson(line, TweetDataObject.class));
+		}
+		jsonb.close();
+		return tweets;
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.websphere.sample.benchmarks.SampleTweets;
+import com.ibm.websphere.sample.jpa.TweetDataObject;
+import com.ibm.websphere.sample.watson.LanguageAnalyzer;
+import com.ibm.websphere.sample.watson.SentimentObject;
+
+/**
+ * SentimentAnalysisProcessor.processItem, without Watson as the job runs by default, and
+ * with a stand-in for Watson that answers at once, so what's measured is the processor's
+ * own work around the call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessorBenchmark {
+
+	@Param({ "false", "true" })
+	boolean useWatson;
+
+	private List<TweetDataObject> tweets;
+	private int next;
+	private SentimentAnalysisProcessor processor;
+
+	/**
+	 * Scores a tweet from its text instead of asking Watson
+	 */
+	static class StubLanguageAnalyzer extends LanguageAnalyzer {
+
+		StubLanguageAnalyzer(String pf) throws Exception {
+			super(pf);
+		}
+
+		static StubLanguageAnalyzer create() throws Exception {
+			// LanguageAnalyzer wants a properties file, though the stub never connects
+			File props = File.createTempFile("watson", ".properties");
+			props.deleteOnExit();
+			Properties watson = new Properties();
+			watson.setProperty("version", "2018-03-16");
+			watson.setProperty("username", "benchmark");
+			watson.setProperty("password", "benchmark");
+			OutputStream out = new FileOutputStream(props);
+			try {
+				watson.store(out, null);
+			} finally {
+				out.close();
+			}
+			return new StubLanguageAnalyzer(props.getPath());
+		}
+
+		@Override
+		public SentimentObject analyze(String text) {
+			double score = (text.hashCode() % 100) / 100.0;
+			return new SentimentObject(score > 0.3 ? "positive" : score < -0.3 ? "negative" : "neutral", score);
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		Jsonb jsonb = JsonbBuilder.create();
+		tweets = new ArrayList<TweetDataObject>();
+		for (String line : SampleTweets.lines()) {
+			tweets.add(jsonb.fromJson(line, TweetDataObject.class));
+		}
+		jsonb.close();
+
+		processor = new SentimentAnalysisProcessor();
+		processor.useWatson = useWatson;
+		if (useWatson) {
+			processor.la = StubLanguageAnalyzer.create();
+		}
+	}
+
+	@Benchmark
+	public Object processItem() throws Exception {
+		TweetDataObject tweet = tweets.get(next);
+		next = (next + 1) % tweets.size();
+		return processor.processItem(tweet);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.websphere.sample.benchmarks.SampleTweets;
+import com.ibm.websphere.sample.jpa.TweetDataObject;
+
+/**
+ * Turning a captured line into a TweetDataObject, as MultiTextFileLineReader does for every tweet.
+ * <code>sharedJsonb</code> is JSON-B on its own, for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReaderDeserializeBenchmark {
+
+	private List<String> lines;
+	private int next;
+	private MultiTextFileLineReader reader;
+	private Jsonb jsonb;
+
+	@Setup
+	public void setup() throws IOException {
+		lines = SampleTweets.lines();
+		reader = new MultiTextFileLineReader();
+		jsonb = JsonbBuilder.create();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		jsonb.close();
+	}
+
+	private String nextLine() {
+		String line = lines.get(next);
+		next = (next + 1) % lines.size();
+		return line;
+	}
+
+	@Benchmark
+	public TweetDataObject deserialize() {
+		return reader.deserialize(nextLine());
+	}
+
+	@Benchmark
+	public TweetDataObject sharedJsonb() {
+		return jsonb.fromJson(nextLine(), TweetDataObject.class);
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.websphere.sample.benchmarks.SampleTweets;
+import com.ibm.websphere.sample.benchmarks.TweetDatabase;
+import com.ibm.websphere.sample.benchmarks.UnobservedEvent;
+import com.ibm.websphere.sample.jpa.TweetDataObject;
+import com.ibm.websphere.sample.watson.SentimentObject;
+
+/**
+ * TweetObjectJPAWriter.writeItems writing one chunk, and committing it, into an in-memory Derby
+ * database through the application's own persistence unit (switched to local transactions).
+ * With <code>mode=insert</code> every chunk is new tweets; with <code>mode=update</code> it is
+ * tweets already in the database with their retweet counts gone up, so the rollups change too.
+ * <p>
+ * The writer's CommitEvent needs the server's transaction registry, so leave Flight Recorder off
+ * when running this one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriterBenchmark {
+
+	// The job's default item-count
+	@Param({ "10" })
+	int chunkSize;
+
+	@Param({ "insert", "update" })
+	String mode;
+
+	private List<TweetDataObject> tweets;
+	private int next;
+	private long nextStatusId = 1;
+	private long invocation;
+	private EntityManagerFactory emf;
+	private EntityManager em;
+	private TweetObjectJPAWriter writer;
+	private List<Object> chunk;
+
+	@Setup
+	public void setup() throws Exception {
+		Jsonb jsonb = JsonbBuilder.create();
+		tweets = new ArrayList<TweetDataObject>();
+		for (String line : SampleTweets.lines()) {
+			tweets.add(jsonb.fromJson(line, TweetDataObject.class));
+		}
+		jsonb.close();
+
+		emf = TweetDatabase.open("jdbc:derby:memory:TweetBenchmarkDB");
+		em = emf.createEntityManager();
+
+		writer = new TweetObjectJPAWriter();
+		writer.entityManager = em;
+		writer.persistAnalysis = true;
+		writer.popularityChanges = new UnobservedEvent<PopularityChangeEvent>();
+		writer.newTweets = new UnobservedEvent<NewTweetsEvent>();
+
+		if (mode.equals("update")) {
+			// Write each of the tweets once, so every chunk from now on updates them
+			for (int i = 0; i < tweets.size(); i += chunkSize) {
+				chunk();
+				write();
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		em.close();
+		emf.close();
+		TweetDatabase.close("jdbc:derby:memory:TweetBenchmarkDB");
+	}
+
+	/**
+	 * Makes the next chunk as the reader would, with new objects each time
+	 */
+	@Setup(Level.Invocation)
+	public void chunk() {
+		invocation++;
+		chunk = new ArrayList<Object>(chunkSize);
+		for (int i = 0; i < chunkSize; i++) {
+			TweetDataObject sample = tweets.get(next);
+			TweetDataObject tweet = new TweetDataObject();
+			if (mode.equals("insert")) {
+				tweet.setStatusId(nextStatusId++);
+				tweet.setRetweetCount(sample.getRetweetCount());
+			} else {
+				tweet.setStatusId(next + 1);
+				tweet.setRetweetCount(sample.getRetweetCount() + invocation);
+			}
+			tweet.setAccountId(sample.getAccountId());
+			tweet.setTextContent(sample.getTextContent());
+			tweet.setCreationDate(sample.getCreationDate());
+			tweet.setNumberOfFollowers(sample.getNumberOfFollowers());
+			tweet.setFavoriteCount(sample.getFavoriteCount());
+			tweet.setAccountLocation(sample.getAccountLocation());
+			tweet.setSentimentObject(new SentimentObject());
+			chunk.add(tweet);
+			next = (next + 1) % tweets.size();
+		}
+	}
+
+	@Benchmark
+	public void write() {
+		em.getTransaction().begin();
+		writer.writeItems(chunk);
+		em.getTransaction().commit();
+		// The next chunk runs in a new transaction, and so a new persistence context, in the server too
+		em.clear();
+	}
+}
@@ -0,0 +1,860 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.benchmarks;
+
+import java.io.InputStream;
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.batch.api.BatchProperty;
+import javax.batch.api.chunk.ItemProcessor;
+import javax.batch.api.chunk.ItemReader;
+import javax.batch.api.chunk.ItemWriter;
+import javax.batch.api.chunk.listener.ChunkListener;
+import javax.batch.api.chunk.listener.ItemProcessListener;
+import javax.batch.api.chunk.listener.ItemReadListener;
+import javax.batch.api.chunk.listener.ItemWriteListener;
+import javax.batch.api.listener.JobListener;
+import javax.batch.api.listener.StepListener;
+import javax.batch.api.partition.PartitionMapper;
+import javax.batch.api.partition.PartitionPlan;
+import javax.batch.runtime.Metric;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.context.JobContext;
+import javax.batch.runtime.context.StepContext;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceContext;
+import javax.transaction.TransactionSynchronizationRegistry;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Runs a job from META-INF/batch-jobs in this JVM, without a server, so its throughput can be measured
+ * on its own.  It is just enough of JSR 352 for TweetFileProcessing: job and step listeners, job properties,
+ * chunk steps (item-count checkpoints, and retry-limit with retryable-exception-classes, rolling back to the
+ * last checkpoint), partition mappers, and the jobParameters, jobProperties, systemProperties and
+ * partitionPlan substitutions with ?: defaults.  Steps run in the order they appear.
+ * <p>
+ * Artifacts are created from their class names and their fields filled in as CDI and the server would:
+ * BatchProperty values, the JobContext and StepContext, an EntityManager of the partition's own for PersistenceContext,
+ * Events no one observes, and one shared instance of any other injected type (JobProgress, PipelineMetrics).
+ * Each chunk is a local transaction on the partition's EntityManager, as are opening and closing the reader
+ * and writer, and job listeners and partition mappers run in a transaction of their own.  There are no restarts,
+ * so a step's persistent user data lasts only as long as the step.  Like the container's, the EntityManager
+ * of a shared bean and the transaction registry are those of the partition running on the calling thread.
+ * Other resources are left unset.
+ */
+public class EmbeddedBatchRuntime implements AutoCloseable {
+
+	// Execution IDs are unique in the JVM, as PipelineMetrics names its MBeans after them
+	private static final AtomicLong executionIds = new AtomicLong();
+	private static final Pattern SUBSTITUTION = Pattern.compile("#\\{(jobParameters|jobProperties|systemProperties|partitionPlan)\\['([^']*)'\\]\\}");
+
+	private final EntityManagerFactory emf;
+	private final EntityManager em;
+	private final Map<Class<?>, Object> shared = new LinkedHashMap<Class<?>, Object>();
+
+	// The transaction of the partition running on this thread, if any
+	private final ThreadLocal<LocalTransaction> currentTransaction = new ThreadLocal<LocalTransaction>();
+	// Stand in for the container's, following the current thread's transaction
+	private final EntityManager sharedEm;
+	private final TransactionSynchronizationRegistry transactionRegistry;
+
+	/**
+	 * The outcome of running a job
+	 */
+	public static class JobResult {
+		private final long executionId;
+		private BatchStatus batchStatus;
+		private long nanos;
+		private final Map<String, Long> stepNanos = new LinkedHashMap<String, Long>();
+		private Exception failure;
+
+		JobResult(long executionId) {
+			this.executionId = executionId;
+		}
+
+		public long getExecutionId() {
+			return executionId;
+		}
+
+		public BatchStatus getBatchStatus() {
+			return batchStatus;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return The time each step took, by step ID, in the order they ran
+		 */
+		public Map<String, Long> getStepNanos() {
+			return stepNanos;
+		}
+
+		/**
+		 * @return What made the job fail, or null
+		 */
+		public Exception getFailure() {
+			return failure;
+		}
+	}
+
+	/**
+	 * Where an artifact is being created
+	 */
+	private static class Scope {
+		final JobContext jobContext;
+		final Properties jobParameters;
+		final Properties jobProperties;
+		final Properties partitionPlan;
+		final EntityManager entityManager;
+		final StepContext stepContext;
+
+		Scope(JobContext jobContext, Properties jobParameters, Properties jobProperties, Properties partitionPlan, EntityManager entityManager,
+				StepContext stepContext) {
+			this.jobContext = jobContext;
+			this.jobParameters = jobParameters;
+			this.jobProperties = jobProperties;
+			this.partitionPlan = partitionPlan;
+			this.entityManager = entityManager;
+			this.stepContext = stepContext;
+		}
+	}
+
+	private static class SimpleJobContext implements JobContext {
+		private final String jobName;
+		private final long executionId;
+		private final Properties properties;
+		private volatile BatchStatus batchStatus = BatchStatus.STARTING;
+		private volatile String exitStatus;
+		private volatile Object transientUserData;
+
+		SimpleJobContext(String jobName, long executionId, Properties properties) {
+			this.jobName = jobName;
+			this.executionId = executionId;
+			this.properties = properties;
+		}
+
+		@Override
+		public String getJobName() {
+			return jobName;
+		}
+
+		@Override
+		public Object getTransientUserData() {
+			return transientUserData;
+		}
+
+		@Override
+		public void setTransientUserData(Object data) {
+			transientUserData = data;
+		}
+
+		@Override
+		public long getInstanceId() {
+			return executionId;
+		}
+
+		@Override
+		public long getExecutionId() {
+			return executionId;
+		}
+
+		@Override
+		public Properties getProperties() {
+			return properties;
+		}
+
+		@Override
+		public BatchStatus getBatchStatus() {
+			return batchStatus;
+		}
+
+		@Override
+		public String getExitStatus() {
+			return exitStatus;
+		}
+
+		@Override
+		public void setExitStatus(String status) {
+			exitStatus = status;
+		}
+	}
+
+	private static class SimpleStepContext implements StepContext {
+		private final String stepName;
+		private final long stepExecutionId;
+		private final Properties properties;
+		private volatile BatchStatus batchStatus = BatchStatus.STARTED;
+		private volatile String exitStatus;
+		private volatile Object transientUserData;
+		private volatile Serializable persistentUserData;
+
+		SimpleStepContext(String stepName, long stepExecutionId, Properties properties) {
+			this.stepName = stepName;
+			this.stepExecutionId = stepExecutionId;
+			this.properties = properties;
+		}
+
+		@Override
+		public String getStepName() {
+			return stepName;
+		}
+
+		@Override
+		public Object getTransientUserData() {
+			return transientUserData;
+		}
+
+		@Override
+		public void setTransientUserData(Object data) {
+			transientUserData = data;
+		}
+
+		@Override
+		public long getStepExecutionId() {
+			return stepExecutionId;
+		}
+
+		@Override
+		public Properties getProperties() {
+			return properties;
+		}
+
+		@Override
+		public Serializable getPersistentUserData() {
+			return persistentUserData;
+		}
+
+		@Override
+		public void setPersistentUserData(Serializable data) {
+			persistentUserData = data;
+		}
+
+		@Override
+		public BatchStatus getBatchStatus() {
+			return batchStatus;
+		}
+
+		@Override
+		public String getExitStatus() {
+			return exitStatus;
+		}
+
+		@Override
+		public void setExitStatus(String status) {
+			exitStatus = status;
+		}
+
+		@Override
+		public Exception getException() {
+			return null;
+		}
+
+		@Override
+		public Metric[] getMetrics() {
+			return new Metric[0];
+		}
+	}
+
+	/**
+	 * @param emf The tweet-persister persistence unit, e.g. from TweetDatabase
+	 */
+	public EmbeddedBatchRuntime(EntityManagerFactory emf) {
+		this.emf = emf;
+		this.em = emf.createEntityManager();
+		this.sharedEm = (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(), new Class<?>[] { EntityManager.class },
+				(proxy, method, args) -> {
+					LocalTransaction tx = currentTransaction.get();
+					try {
+						return method.invoke(tx != null ? tx.em : em, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+		this.transactionRegistry = (TransactionSynchronizationRegistry) Proxy.newProxyInstance(TransactionSynchronizationRegistry.class.getClassLoader(),
+				new Class<?>[] { TransactionSynchronizationRegistry.class }, (proxy, method, args) -> {
+					LocalTransaction tx = currentTransaction.get();
+					if (tx == null) {
+						throw new IllegalStateException("No transaction on this thread");
+					}
+					try {
+						return method.invoke(tx, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+	/**
+	 * @param type An application scoped bean's class
+	 * @return The one instance of it, created if need be
+	 * @throws Exception If it can't be created
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T> T getShared(Class<T> type) throws Exception {
+		Object bean = shared.get(type);
+		if (bean == null) {
+			bean = create(type, new Properties(), new Scope(null, null, null, null, sharedEm, null));
+			shared.put(type, bean);
+		}
+		return (T) bean;
+	}
+
+	/**
+	 * Runs a job to the end
+	 * @param jobXMLName The job's name, as for JobOperator.start
+	 * @param jobParameters The job parameters
+	 * @return How it went
+	 * @throws Exception If the job XML can't be read, or uses something not supported here
+	 */
+	public JobResult run(String jobXMLName, Properties jobParameters) throws Exception {
+		Element job = parse(jobXMLName);
+		Properties jobProperties = new Properties();
+		properties(job, new Scope(null, jobParameters, jobProperties, null, null, null));
+
+		SimpleJobContext jobContext = new SimpleJobContext(job.getAttribute("id"), executionIds.incrementAndGet(), jobProperties);
+		Scope jobScope = new Scope(jobContext, jobParameters, jobProperties, null, null, null);
+		JobResult result = new JobResult(jobContext.getExecutionId());
+
+		List<Object> listeners = listeners(job, jobScope);
+		long started = System.nanoTime();
+		jobContext.batchStatus = BatchStatus.STARTED;
+		try {
+			for (Object listener : listeners) {
+				if (listener instanceof JobListener) {
+					inTransaction(() -> ((JobListener) listener).beforeJob());
+				}
+			}
+			for (Element step : children(job, "step")) {
+				long stepStarted = System.nanoTime();
+				runStep(step, jobScope);
+				result.stepNanos.put(step.getAttribute("id"), System.nanoTime() - stepStarted);
+			}
+			jobContext.batchStatus = BatchStatus.COMPLETED;
+		} catch (Exception e) {
+			jobContext.batchStatus = BatchStatus.FAILED;
+			result.failure = e;
+		}
+		result.nanos = System.nanoTime() - started;
+		result.batchStatus = jobContext.batchStatus;
+		for (Object listener : listeners) {
+			if (listener instanceof JobListener) {
+				inTransaction(() -> ((JobListener) listener).afterJob());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Ends the shared beans and the runtime's own EntityManager.  An interrupt while a bean ends is passed on
+	 * by setting the thread's interrupt flag again, rather than thrown, as AutoCloseable warns against.
+	 */
+	@Override
+	public synchronized void close() {
+		try {
+			for (Object bean : shared.values()) {
+				invokeAnnotated(bean, PreDestroy.class);
+			}
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new IllegalStateException(cause);
+			}
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		} finally {
+			shared.clear();
+			em.close();
+		}
+	}
+
+	// Stands in for the container's transaction around listeners (and PipelineMetrics.writeSummary)
+	private synchronized void inTransaction(LocalTransaction.Work work) throws Exception {
+		EntityTransaction tx = em.getTransaction();
+		tx.begin();
+		try {
+			work.run();
+			tx.commit();
+		} finally {
+			if (tx.isActive()) {
+				tx.rollback();
+			}
+		}
+	}
+
+	private void runStep(Element step, Scope jobScope) throws Exception {
+		SimpleStepContext stepContext = new SimpleStepContext(step.getAttribute("id"), executionIds.incrementAndGet(), new Properties());
+		Scope stepScope = new Scope(jobScope.jobContext, jobScope.jobParameters, jobScope.jobProperties, null, null, stepContext);
+		Element chunk = child(step, "chunk");
+		if (chunk == null) {
+			throw new UnsupportedOperationException("Step " + step.getAttribute("id") + " is not a chunk step");
+		}
+		Element partition = child(step, "partition");
+		if (partition == null) {
+			runPartition(step, chunk, stepScope, null);
+			return;
+		}
+		Element mapperElement = child(partition, "mapper");
+		if (mapperElement == null) {
+			throw new UnsupportedOperationException("Step " + step.getAttribute("id") + " has a partition plan rather than a mapper");
+		}
+		PartitionMapper mapper = (PartitionMapper) create(mapperElement, stepScope);
+		PartitionPlan[] mapped = new PartitionPlan[1];
+		inTransaction(() -> mapped[0] = mapper.mapPartitions());
+		PartitionPlan plan = mapped[0];
+		int partitions = plan.getPartitions();
+		int threads = plan.getThreads() > 0 ? plan.getThreads() : partitions;
+		Properties[] planProperties = plan.getPartitionProperties();
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			List<Future<?>> running = new ArrayList<Future<?>>(partitions);
+			for (int i = 0; i < partitions; i++) {
+				final Properties partitionPlan = planProperties != null && i < planProperties.length ? planProperties[i] : new Properties();
+				running.add(executor.submit(() -> {
+					runPartition(step, chunk, stepScope, partitionPlan);
+					return null;
+				}));
+			}
+			Exception failure = null;
+			for (Future<?> partitionResult : running) {
+				try {
+					partitionResult.get();
+				} catch (Exception e) {
+					failure = failure != null ? failure : e;
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * The chunk loop, for a whole step or one partition of it
+	 */
+	private void runPartition(Element step, Element chunk, Scope stepScope, Properties partitionPlan) throws Exception {
+		EntityManager partitionEm = emf.createEntityManager();
+		LocalTransaction partitionTx = new LocalTransaction(partitionEm);
+		currentTransaction.set(partitionTx);
+		try {
+			Scope scope = new Scope(stepScope.jobContext, stepScope.jobParameters, stepScope.jobProperties, partitionPlan, partitionEm, stepScope.stepContext);
+			List<Object> listeners = listeners(step, scope);
+			ItemReader reader = (ItemReader) create(child(chunk, "reader"), scope);
+			Element processorElement = child(chunk, "processor");
+			ItemProcessor processor = processorElement != null ? (ItemProcessor) create(processorElement, scope) : null;
+			ItemWriter writer = (ItemWriter) create(child(chunk, "writer"), scope);
+
+			String itemCountValue = resolve(chunk.getAttribute("item-count"), scope);
+			int itemCount = itemCountValue.isEmpty() ? 10 : Integer.parseInt(itemCountValue);
+			String retryLimitValue = resolve(chunk.getAttribute("retry-limit"), scope);
+			int retryLimit = retryLimitValue.isEmpty() ? -1 : Integer.parseInt(retryLimitValue);
+			Element retryable = child(chunk, "retryable-exception-classes");
+
+			for (Object listener : listeners) {
+				if (listener instanceof StepListener) {
+					((StepListener) listener).beforeStep();
+				}
+			}
+			Serializable readerCheckpoint = null;
+			Serializable writerCheckpoint = null;
+			int retries = 0;
+			partitionTx.run(() -> {
+				reader.open(null);
+				writer.open(null);
+			});
+			try {
+				boolean done = false;
+				while (!done) {
+					partitionTx.begin();
+					try {
+						for (Object listener : listeners) {
+							if (listener instanceof ChunkListener) {
+								((ChunkListener) listener).beforeChunk();
+							}
+						}
+						List<Object> items = new ArrayList<Object>(itemCount);
+						for (int read = 0; read < itemCount; read++) {
+							Object item = read(reader, listeners);
+							if (item == null) {
+								done = true;
+								break;
+							}
+							Object result = processor != null ? process(processor, item, listeners) : item;
+							if (result != null) {
+								items.add(result);
+							}
+						}
+						if (!items.isEmpty()) {
+							write(writer, items, listeners);
+						}
+						Serializable r = reader.checkpointInfo();
+						Serializable w = writer.checkpointInfo();
+						partitionTx.commit();
+						readerCheckpoint = r;
+						writerCheckpoint = w;
+						for (Object listener : listeners) {
+							if (listener instanceof ChunkListener) {
+								((ChunkListener) listener).afterChunk();
+							}
+						}
+					} catch (Exception e) {
+						partitionTx.rollback();
+						partitionEm.clear();
+						for (Object listener : listeners) {
+							if (listener instanceof ChunkListener) {
+								((ChunkListener) listener).onError(e);
+							}
+						}
+						if (!retryable(retryable, e) || (retryLimit >= 0 && ++retries > retryLimit)) {
+							throw e;
+						}
+						// Go back to the last checkpoint and carry on from there
+						final Serializable r = readerCheckpoint;
+						final Serializable w = writerCheckpoint;
+						partitionTx.run(() -> {
+							reader.close();
+							writer.close();
+							reader.open(r);
+							writer.open(w);
+						});
+						done = false;
+					}
+				}
+			} finally {
+				partitionTx.run(() -> {
+					reader.close();
+					writer.close();
+				});
+			}
+			for (Object listener : listeners) {
+				if (listener instanceof StepListener) {
+					((StepListener) listener).afterStep();
+				}
+			}
+		} finally {
+			currentTransaction.remove();
+			partitionEm.close();
+		}
+	}
+
+	private static Object read(ItemReader reader, List<Object> listeners) throws Exception {
+		for (Object listener : listeners) {
+			if (listener instanceof ItemReadListener) {
+				((ItemReadListener) listener).beforeRead();
+			}
+		}
+		Object item;
+		try {
+			item = reader.readItem();
+		} catch (Exception e) {
+			for (Object listener : listeners) {
+				if (listener instanceof ItemReadListener) {
+					((ItemReadListener) listener).onReadError(e);
+				}
+			}
+			throw e;
+		}
+		for (Object listener : listeners) {
+			if (listener instanceof ItemReadListener) {
+				((ItemReadListener) listener).afterRead(item);
+			}
+		}
+		return item;
+	}
+
+	private static Object process(ItemProcessor processor, Object item, List<Object> listeners) throws Exception {
+		for (Object listener : listeners) {
+			if (listener instanceof ItemProcessListener) {
+				((ItemProcessListener) listener).beforeProcess(item);
+			}
+		}
+		Object result;
+		try {
+			result = processor.processItem(item);
+		} catch (Exception e) {
+			for (Object listener : listeners) {
+				if (listener instanceof ItemProcessListener) {
+					((ItemProcessListener) listener).onProcessError(item, e);
+				}
+			}
+			throw e;
+		}
+		for (Object listener : listeners) {
+			if (listener instanceof ItemProcessListener) {
+				((ItemProcessListener) listener).afterProcess(item, result);
+			}
+		}
+		return result;
+	}
+
+	private static void write(ItemWriter writer, List<Object> items, List<Object> listeners) throws Exception {
+		for (Object listener : listeners) {
+			if (listener instanceof ItemWriteListener) {
+				((ItemWriteListener) listener).beforeWrite(items);
+			}
+		}
+		try {
+			writer.writeItems(items);
+		} catch (Exception e) {
+			for (Object listener : listeners) {
+				if (listener instanceof ItemWriteListener) {
+					((ItemWriteListener) listener).onWriteError(items, e);
+				}
+			}
+			throw e;
+		}
+		for (Object listener : listeners) {
+			if (listener instanceof ItemWriteListener) {
+				((ItemWriteListener) listener).afterWrite(items);
+			}
+		}
+	}
+
+	private static boolean retryable(Element classes, Exception e) throws ClassNotFoundException {
+		if (classes == null) {
+			return false;
+		}
+		boolean included = false;
+		for (Element include : children(classes, "include")) {
+			included |= Class.forName(include.getAttribute("class")).isInstance(e);
+		}
+		for (Element exclude : children(classes, "exclude")) {
+			included &= !Class.forName(exclude.getAttribute("class")).isInstance(e);
+		}
+		return included;
+	}
+
+	private List<Object> listeners(Element parent, Scope scope) throws Exception {
+		List<Object> listeners = new ArrayList<Object>();
+		Element listenersElement = child(parent, "listeners");
+		if (listenersElement != null) {
+			for (Element listener : children(listenersElement, "listener")) {
+				listeners.add(create(listener, scope));
+			}
+		}
+		return listeners;
+	}
+
+	private Object create(Element artifact, Scope scope) throws Exception {
+		return create(Class.forName(artifact.getAttribute("ref")), properties(artifact, scope), scope);
+	}
+
+	/**
+	 * Creates an artifact and fills in its fields the way CDI and the server would
+	 */
+	private Object create(Class<?> type, Properties properties, Scope scope) throws Exception {
+		Object artifact = type.getDeclaredConstructor().newInstance();
+		for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				Object value;
+				if (field.isAnnotationPresent(BatchProperty.class)) {
+					String name = field.getAnnotation(BatchProperty.class).name();
+					value = properties.getProperty(name.isEmpty() ? field.getName() : name);
+				} else if (field.isAnnotationPresent(PersistenceContext.class)) {
+					value = scope.entityManager;
+				} else if (field.isAnnotationPresent(Resource.class)) {
+					if (field.getType() != TransactionSynchronizationRegistry.class) {
+						continue;
+					}
+					value = transactionRegistry;
+				} else if (field.isAnnotationPresent(Inject.class)) {
+					if (field.getType() == JobContext.class) {
+						value = scope.jobContext;
+					} else if (field.getType() == StepContext.class) {
+						value = scope.stepContext;
+					} else if (field.getType() == Event.class) {
+						value = new UnobservedEvent<Object>();
+					} else {
+						value = getShared(field.getType());
+					}
+				} else {
+					continue;
+				}
+				field.setAccessible(true);
+				field.set(artifact, value);
+			}
+		}
+		invokeAnnotated(artifact, PostConstruct.class);
+		return artifact;
+	}
+
+	private static void invokeAnnotated(Object bean, Class<? extends Annotation> annotation) throws Exception {
+		List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+		for (Class<?> c = bean.getClass(); c != Object.class; c = c.getSuperclass()) {
+			hierarchy.add(0, c);
+		}
+		for (Class<?> c : hierarchy) {
+			for (Method method : c.getDeclaredMethods()) {
+				if (method.isAnnotationPresent(annotation)) {
+					method.setAccessible(true);
+					method.invoke(bean);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The element's properties, with their values resolved
+	 */
+	private static Properties properties(Element parent, Scope scope) {
+		Properties resolved = new Properties();
+		Element propertiesElement = child(parent, "properties");
+		if (propertiesElement != null) {
+			for (Element property : children(propertiesElement, "property")) {
+				String value = resolve(property.getAttribute("value"), scope);
+				resolved.setProperty(property.getAttribute("name"), value);
+				if (scope.jobProperties != null && parent.getLocalName().equals("job")) {
+					// Later job properties can refer to earlier ones
+					scope.jobProperties.setProperty(property.getAttribute("name"), value);
+				}
+			}
+		}
+		return resolved;
+	}
+
+	/**
+	 * Resolves the substitutions in an attribute value; a reference to something not set is an empty
+	 * string, unless the expression has a ?: default.
+	 */
+	private static String resolve(String value, Scope scope) {
+		StringBuilder resolved = new StringBuilder();
+		String rest = value;
+		int op;
+		while ((op = rest.indexOf("?:")) >= 0) {
+			int end = rest.indexOf(';', op);
+			if (end < 0) {
+				end = rest.length();
+			}
+			String left = substitute(rest.substring(0, op), scope);
+			resolved.append(left != null ? left : nonNull(substitute(rest.substring(op + 2, end), scope)));
+			rest = end < rest.length() ? rest.substring(end + 1) : "";
+		}
+		return resolved.append(nonNull(substitute(rest, scope))).toString();
+	}
+
+	/**
+	 * @return The text with its substitutions made, or null if it referred to anything not set
+	 */
+	private static String substitute(String text, Scope scope) {
+		Matcher m = SUBSTITUTION.matcher(text);
+		StringBuffer sb = new StringBuffer();
+		boolean undefined = false;
+		while (m.find()) {
+			String value = lookup(m.group(1), m.group(2), scope);
+			if (value == null) {
+				undefined = true;
+				value = "";
+			}
+			m.appendReplacement(sb, Matcher.quoteReplacement(value));
+		}
+		m.appendTail(sb);
+		return undefined ? null : sb.toString();
+	}
+
+	private static String lookup(String source, String name, Scope scope) {
+		Properties p;
+		switch (source) {
+		case "jobParameters":
+			p = scope.jobParameters;
+			break;
+		case "jobProperties":
+			p = scope.jobProperties;
+			break;
+		case "systemProperties":
+			p = System.getProperties();
+			break;
+		default:
+			p = scope.partitionPlan;
+			break;
+		}
+		return p != null ? p.getProperty(name) : null;
+	}
+
+	private static String nonNull(String s) {
+		return s != null ? s : "";
+	}
+
+	private static Element parse(String jobXMLName) throws Exception {
+		String resource = "META-INF/batch-jobs/" + jobXMLName + ".xml";
+		InputStream in = EmbeddedBatchRuntime.class.getClassLoader().getResourceAsStream(resource);
+		if (in == null) {
+			throw new IllegalArgumentException("No " + resource + " on the classpath");
+		}
+		try {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(true);
+			Document document = factory.newDocumentBuilder().parse(in);
+			return document.getDocumentElement();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static Element child(Element parent, String name) {
+		List<Element> found = children(parent, name);
+		return found.isEmpty() ? null : found.get(0);
+	}
+
+	private static List<Element> children(Element parent, String name) {
+		List<Element> found = new ArrayList<Element>();
+		for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+			if (n.getNodeType() == Node.ELEMENT_NODE && name.equals(n.getLocalName())) {
+				found.add((Element) n);
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.benchmarks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Resource-local transactions on an EntityManager, with the synchronizations registered with each,
+ * much as TransactionSynchronizationRegistry has them for a global transaction.  Stands in for the
+ * container's transactions outside the server, e.g. one per partition in EmbeddedBatchRuntime.
+ */
+public class LocalTransaction implements TransactionSynchronizationRegistry {
+
+	/**
+	 * Something to run in a transaction
+	 */
+	public interface Work {
+		void run() throws Exception;
+	}
+
+	final EntityManager em;
+	private final List<Synchronization> synchronizations = new ArrayList<Synchronization>();
+	private final Map<Object, Object> resources = new LinkedHashMap<Object, Object>();
+
+	public LocalTransaction(EntityManager em) {
+		this.em = em;
+	}
+
+	public void begin() {
+		em.getTransaction().begin();
+	}
+
+	public void commit() {
+		EntityTransaction tx = em.getTransaction();
+		boolean committed = false;
+		try {
+			for (int i = 0; i < synchronizations.size(); i++) {
+				synchronizations.get(i).beforeCompletion();
+			}
+			tx.commit();
+			committed = true;
+		} finally {
+			if (tx.isActive()) {
+				tx.rollback();
+			}
+			completed(committed ? Status.STATUS_COMMITTED : Status.STATUS_ROLLEDBACK);
+		}
+	}
+
+	public void rollback() {
+		EntityTransaction tx = em.getTransaction();
+		if (tx.isActive()) {
+			tx.rollback();
+			completed(Status.STATUS_ROLLEDBACK);
+		}
+	}
+
+	public void run(Work work) throws Exception {
+		begin();
+		try {
+			work.run();
+			commit();
+		} finally {
+			rollback();
+		}
+	}
+
+	private void completed(int status) {
+		List<Synchronization> ended = new ArrayList<Synchronization>(synchronizations);
+		synchronizations.clear();
+		resources.clear();
+		for (Synchronization s : ended) {
+			s.afterCompletion(status);
+		}
+	}
+
+	@Override
+	public Object getTransactionKey() {
+		return em.getTransaction().isActive() ? this : null;
+	}
+
+	@Override
+	public void putResource(Object key, Object value) {
+		resources.put(key, value);
+	}
+
+	@Override
+	public Object getResource(Object key) {
+		return resources.get(key);
+	}
+
+	@Override
+	public void registerInterposedSynchronization(Synchronization sync) {
+		synchronizations.add(sync);
+	}
+
+	@Override
+	public int getTransactionStatus() {
+		EntityTransaction tx = em.getTransaction();
+		if (!tx.isActive()) {
+			return Status.STATUS_NO_TRANSACTION;
+		}
+		return tx.getRollbackOnly() ? Status.STATUS_MARKED_ROLLBACK : Status.STATUS_ACTIVE;
+	}
+
+	@Override
+	public void setRollbackOnly() {
+		em.getTransaction().setRollbackOnly();
+	}
+
+	@Override
+	public boolean getRollbackOnly() {
+		return em.getTransaction().getRollbackOnly();
+	}
+}
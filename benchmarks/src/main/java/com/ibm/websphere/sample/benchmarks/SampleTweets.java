@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tweets the benchmarks work on, read from the captured tweets shipped with the sample
+ * so the payloads are as long, and have the same mix of characters, as real ones.
+ * The directory is <code>../sample-data/snatched-tweets</code> (which is where it is when running
+ * from the benchmarks directory) unless the <code>tweets.dir</code> system property says otherwise.
+ */
+public class SampleTweets {
+
+	private static List<String> lines;
+
+	/**
+	 * @return Every captured tweet, one JSON line each, in file order
+	 * @throws IOException If the capture files can't be read
+	 */
+	public static synchronized List<String> lines() throws IOException {
+		if (lines == null) {
+			File dir = new File(System.getProperty("tweets.dir", "../sample-data/snatched-tweets"));
+			File[] files = dir.listFiles((d, name) -> name.endsWith(".dat"));
+			if (files == null || files.length == 0) {
+				throw new IOException("No captured tweets in " + dir.getAbsolutePath() + ", set tweets.dir");
+			}
+			Arrays.sort(files);
+			List<String> read = new ArrayList<String>();
+			for (File file : files) {
+				// Read the way MultiTextFileLineReader does
+				BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charset.defaultCharset()));
+				try {
+					String line;
+					while ((line = in.readLine()) != null) {
+						if (!line.trim().isEmpty()) {
+							read.add(line);
+						}
+					}
+				} finally {
+					in.close();
+				}
+			}
+			lines = read;
+		}
+		return lines;
+	}
+}
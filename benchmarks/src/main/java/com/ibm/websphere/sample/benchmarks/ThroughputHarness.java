@@ -0,0 +1,262 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import com.ibm.websphere.sample.batch.PipelineMetrics;
+import com.ibm.websphere.sample.snatcher.TweetCorpusGenerator;
+
+/**
+ * Runs TweetFileProcessing from start to end, outside the server, for every combination of chunk size,
+ * partition count and writer mode asked for, and prints the records per second, the time the step took,
+ * the peak heap and the size of the database for each.  Each run gets a new Derby database (and a JVM
+ * that has already run the job once, so it is warmed up), so the numbers can be compared with each other
+ * and with a later run after a change.  These system properties set it up:
+ * <ul>
+ * <li>harness.input - directory of tweet files to read; if not set, harness.records tweets are
+ * generated into a temporary directory by TweetCorpusGenerator, which takes any generate.* properties</li>
+ * <li>harness.records - default 100000</li>
+ * <li>harness.chunkSizes - default 10,100,1000</li>
+ * <li>harness.partitions - default 1,2,4</li>
+ * <li>harness.writerModes - persist (persistAnalysis=true) and/or skip (persistAnalysis=false), default both</li>
+ * <li>harness.db - memory (default) or disk, for a database in a temporary directory</li>
+ * <li>harness.warmups - runs of the first combination before the measured ones (default 1)</li>
+ * <li>harness.csv - a file to add the results to, as CSV</li>
+ * </ul>
+ */
+public class ThroughputHarness {
+
+	private static final double MB = 1024.0 * 1024.0;
+
+	private final File input;
+	private final boolean onDisk;
+	private int databases = 0;
+
+	/**
+	 * The measurements from one run
+	 */
+	static class Run {
+		int chunkSize;
+		int partitions;
+		String writerMode;
+		String status;
+		long records;
+		double jobSeconds;
+		double stepSeconds;
+		long peakHeap;
+		long dbBytes;
+		Map<String, Double> latencyMillis;
+
+		double recordsPerSecond() {
+			return stepSeconds > 0 ? records / stepSeconds : 0;
+		}
+	}
+
+	ThroughputHarness(File input, boolean onDisk) {
+		this.input = input;
+		this.onDisk = onDisk;
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<Integer> chunkSizes = integers(System.getProperty("harness.chunkSizes", "10,100,1000"));
+		List<Integer> partitions = integers(System.getProperty("harness.partitions", "1,2,4"));
+		String[] writerModes = System.getProperty("harness.writerModes", "persist,skip").split(",");
+		int warmups = Integer.getInteger("harness.warmups", 1);
+		boolean onDisk = "disk".equals(System.getProperty("harness.db", "memory"));
+		String csv = System.getProperty("harness.csv");
+
+		File input;
+		if (System.getProperty("harness.input") != null) {
+			input = new File(System.getProperty("harness.input"));
+		} else {
+			input = Files.createTempDirectory("harness-tweets").toFile();
+			Properties generate = new Properties();
+			generate.putAll(System.getProperties());
+			generate.setProperty("generate.records", System.getProperty("harness.records", "100000"));
+			System.out.println("Generating " + generate.getProperty("generate.records") + " tweets in " + input);
+			new TweetCorpusGenerator(generate).generate(input);
+		}
+
+		ThroughputHarness harness = new ThroughputHarness(input, onDisk);
+		for (int i = 0; i < warmups; i++) {
+			System.out.println("Warm-up run " + (i + 1) + " of " + warmups);
+			harness.run(chunkSizes.get(0), partitions.get(0), writerModes[0].trim());
+		}
+
+		List<Run> runs = new ArrayList<Run>();
+		for (int chunkSize : chunkSizes) {
+			for (int p : partitions) {
+				for (String writerMode : writerModes) {
+					Run run = harness.run(chunkSize, p, writerMode.trim());
+					runs.add(run);
+					System.out.println(String.format("chunk %d, %d partitions, %s: %s, %d records in %.1f s (%.0f records/s)",
+							chunkSize, p, run.writerMode, run.status, run.records, run.stepSeconds, run.recordsPerSecond()));
+				}
+			}
+		}
+
+		print(runs);
+		if (csv != null) {
+			append(new File(csv), runs);
+			System.out.println("Results added to " + csv);
+		}
+		if (System.getProperty("harness.input") == null) {
+			delete(input.toPath());
+		}
+	}
+
+	/**
+	 * Runs the job once against a new database
+	 */
+	Run run(int chunkSize, int partitions, String writerMode) throws Exception {
+		String name = "harness" + (++databases);
+		File dbDir = onDisk ? Files.createTempDirectory("harness-db").toFile() : null;
+		String url = onDisk ? "jdbc:derby:" + new File(dbDir, name).getPath() : "jdbc:derby:memory:" + name;
+
+		Properties parameters = new Properties();
+		parameters.setProperty("inputDir", input.getPath());
+		parameters.setProperty("chunkSize", Integer.toString(chunkSize));
+		parameters.setProperty("partitions", Integer.toString(partitions));
+		parameters.setProperty("persistAnalysis", Boolean.toString(writerMode.equals("persist")));
+		parameters.setProperty("useWatson", "false");
+
+		Run run = new Run();
+		run.chunkSize = chunkSize;
+		run.partitions = partitions;
+		run.writerMode = writerMode;
+
+		EntityManagerFactory emf = TweetDatabase.open(url);
+		try {
+			System.gc();
+			List<MemoryPoolMXBean> heap = new ArrayList<MemoryPoolMXBean>();
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+					pool.resetPeakUsage();
+					heap.add(pool);
+				}
+			}
+
+			EmbeddedBatchRuntime runtime = new EmbeddedBatchRuntime(emf);
+			try {
+				EmbeddedBatchRuntime.JobResult result = runtime.run("TweetFileProcessing", parameters);
+				for (MemoryPoolMXBean pool : heap) {
+					run.peakHeap += pool.getPeakUsage().getUsed();
+				}
+				if (result.getFailure() != null) {
+					result.getFailure().printStackTrace();
+				}
+				run.status = String.valueOf(result.getBatchStatus());
+				run.jobSeconds = result.getNanos() / 1e9;
+				for (long nanos : result.getStepNanos().values()) {
+					run.stepSeconds += nanos / 1e9;
+				}
+				PipelineMetrics.ExecutionMetrics metrics = runtime.getShared(PipelineMetrics.class).get(result.getExecutionId());
+				if (metrics != null) {
+					run.records = metrics.getItemsRead();
+					run.latencyMillis = metrics.getLatencyMillis();
+				}
+			} finally {
+				runtime.close();
+			}
+
+			EntityManager em = emf.createEntityManager();
+			try {
+				run.dbBytes = TweetDatabase.size(em);
+			} finally {
+				em.close();
+			}
+		} finally {
+			emf.close();
+			TweetDatabase.close(url);
+			if (dbDir != null) {
+				delete(dbDir.toPath());
+			}
+		}
+		return run;
+	}
+
+	private static void print(List<Run> runs) {
+		System.out.println();
+		System.out.println(String.format("%6s %5s %-8s %-9s %10s %9s %11s %9s %9s %9s %9s %9s",
+				"chunk", "parts", "writer", "status", "records", "step s", "records/s", "heap MB", "db MB",
+				"read p99", "write p99", "commit p99"));
+		for (Run run : runs) {
+			System.out.println(String.format("%6d %5d %-8s %-9s %10d %9.2f %11.0f %9.1f %9.1f %9.3f %9.3f %9.3f",
+					run.chunkSize, run.partitions, run.writerMode, run.status, run.records, run.stepSeconds,
+					run.recordsPerSecond(), run.peakHeap / MB, run.dbBytes / MB,
+					latency(run, "read.p99"), latency(run, "write.p99"), latency(run, "commit.p99")));
+		}
+		System.out.println("(latencies in milliseconds)");
+	}
+
+	private static void append(File csv, List<Run> runs) throws IOException {
+		boolean header = !csv.exists() || csv.length() == 0;
+		PrintWriter out = new PrintWriter(new FileWriter(csv, true));
+		try {
+			if (header) {
+				out.println("chunkSize,partitions,writerMode,status,records,jobSeconds,stepSeconds,recordsPerSecond,peakHeapBytes,dbBytes,"
+						+ "readP50Millis,readP99Millis,processP50Millis,processP99Millis,writeP50Millis,writeP99Millis,commitP50Millis,commitP99Millis");
+			}
+			for (Run run : runs) {
+				out.println(String.format("%d,%d,%s,%s,%d,%.3f,%.3f,%.1f,%d,%d,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f",
+						run.chunkSize, run.partitions, run.writerMode, run.status, run.records, run.jobSeconds, run.stepSeconds,
+						run.recordsPerSecond(), run.peakHeap, run.dbBytes,
+						latency(run, "read.p50"), latency(run, "read.p99"), latency(run, "process.p50"), latency(run, "process.p99"),
+						latency(run, "write.p50"), latency(run, "write.p99"), latency(run, "commit.p50"), latency(run, "commit.p99")));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static double latency(Run run, String name) {
+		Double millis = run.latencyMillis != null ? run.latencyMillis.get(name) : null;
+		return millis != null ? millis : 0.0;
+	}
+
+	private static List<Integer> integers(String list) {
+		List<Integer> values = new ArrayList<Integer>();
+		for (String s : list.split(",")) {
+			values.add(Integer.parseInt(s.trim()));
+		}
+		return values;
+	}
+
+	private static void delete(Path dir) throws IOException {
+		try (Stream<Path> paths = Files.walk(dir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.benchmarks;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+/**
+ * The application's tweet-persister persistence unit outside the server: an embedded Derby
+ * database in place of jdbc/tweetstorage, and local transactions in place of JTA.
+ */
+public class TweetDatabase {
+
+	/**
+	 * @param url The Derby URL, e.g. <code>jdbc:derby:memory:tweets</code> (";create=true" is added)
+	 * @return An EntityManagerFactory on a newly created schema
+	 */
+	public static EntityManagerFactory open(String url) {
+		Map<String, String> properties = new HashMap<String, String>();
+		properties.put("javax.persistence.transactionType", "RESOURCE_LOCAL");
+		properties.put("javax.persistence.jtaDataSource", "");
+		properties.put("javax.persistence.jdbc.driver", "org.apache.derby.jdbc.EmbeddedDriver");
+		properties.put("javax.persistence.jdbc.url", url + ";create=true");
+		properties.put("javax.persistence.schema-generation.database.action", "drop-and-create");
+		properties.put("javax.persistence.schema-generation.scripts.action", "none");
+		properties.put("eclipselink.logging.level", "WARNING");
+		return Persistence.createEntityManagerFactory("tweet-persister", properties);
+	}
+
+	/**
+	 * @param em An EntityManager on the database
+	 * @return The bytes allocated to the TWITTER tables and their indexes
+	 */
+	public static long size(EntityManager em) {
+		Object bytes = em.createNativeQuery("SELECT SUM(sp.NUMALLOCATEDPAGES * sp.PAGESIZE)"
+				+ " FROM SYS.SYSSCHEMAS s, SYS.SYSTABLES t, TABLE (SYSCS_DIAG.SPACE_TABLE(s.SCHEMANAME, t.TABLENAME)) sp"
+				+ " WHERE s.SCHEMAID = t.SCHEMAID AND s.SCHEMANAME = 'TWITTER' AND t.TABLETYPE = 'T'").getSingleResult();
+		return bytes != null ? ((Number) bytes).longValue() : 0;
+	}
+
+	/**
+	 * Drops an in-memory database, or shuts down one on disk
+	 * @param url The URL the database was opened with
+	 */
+	public static void close(String url) {
+		try {
+			DriverManager.getConnection(url + (url.startsWith("jdbc:derby:memory:") ? ";drop=true" : ";shutdown=true"));
+		} catch (SQLException e) {
+			// Derby reports a successful drop or shutdown as an exception
+		}
+	}
+}
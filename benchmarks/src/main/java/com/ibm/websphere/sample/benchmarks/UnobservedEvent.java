@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.benchmarks;
+
+import java.lang.annotation.Annotation;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import javax.enterprise.event.Event;
+import javax.enterprise.event.NotificationOptions;
+import javax.enterprise.util.TypeLiteral;
+
+/**
+ * Stands in for a CDI event outside the server, with no one observing it
+ */
+public class UnobservedEvent<T> implements Event<T> {
+
+	@Override
+	public void fire(T event) {
+	}
+
+	@Override
+	public <U extends T> CompletionStage<U> fireAsync(U event) {
+		return CompletableFuture.completedFuture(event);
+	}
+
+	@Override
+	public <U extends T> CompletionStage<U> fireAsync(U event, NotificationOptions options) {
+		return CompletableFuture.completedFuture(event);
+	}
+
+	@Override
+	public Event<T> select(Annotation... qualifiers) {
+		return this;
+	}
+
+	@Override
+	public <U extends T> Event<U> select(Class<U> subtype, Annotation... qualifiers) {
+		return new UnobservedEvent<U>();
+	}
+
+	@Override
+	public <U extends T> Event<U> select(TypeLiteral<U> subtype, Annotation... qualifiers) {
+		return new UnobservedEvent<U>();
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.websphere.sample.benchmarks.SampleTweets;
+import com.ibm.websphere.sample.common.CreationDateFormat;
+
+/**
+ * Reading and writing the creation_date of the sample tweets with CreationDateFormat, against the
+ * DateTimeFormatter it replaced (<code>parseFormatter</code>, <code>formatFormatter</code>).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreationDateBenchmark {
+
+	private static final DateTimeFormatter formatter =
+			DateTimeFormatter.ofPattern(CreationDateFormat.PATTERN, Locale.ENGLISH).withZone(CreationDateFormat.ZONE);
+
+	private List<String> dates;
+	private long[] millis;
+	private int next;
+
+	@Setup
+	public void setup() throws IOException {
+		dates = new ArrayList<String>();
+		for (String line : SampleTweets.lines()) {
+			JsonReader reader = Json.createReader(new StringReader(line));
+			dates.add(reader.readObject().getString("creation_date"));
+			reader.close();
+		}
+		millis = new long[dates.size()];
+		for (int i = 0; i < millis.length; i++) {
+			millis[i] = CreationDateFormat.parse(dates.get(i));
+		}
+	}
+
+	private int next() {
+		int i = next;
+		next = (next + 1) % millis.length;
+		return i;
+	}
+
+	@Benchmark
+	public long parse() {
+		return CreationDateFormat.parse(dates.get(next()));
+	}
+
+	@Benchmark
+	public long parseFormatter() {
+		return ZonedDateTime.parse(dates.get(next()), formatter).toInstant().toEpochMilli();
+	}
+
+	@Benchmark
+	public String format() {
+		return CreationDateFormat.format(millis[next()]);
+	}
+
+	@Benchmark
+	public String formatFormatter() {
+		return formatter.format(Instant.ofEpochMilli(millis[next()]));
+	}
+}
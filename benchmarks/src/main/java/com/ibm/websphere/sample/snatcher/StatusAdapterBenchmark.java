@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.snatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.JsonObject;
+import javax.json.bind.Jsonb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.websphere.sample.benchmarks.SampleTweets;
+import com.ibm.websphere.sample.twitter4j.ReplayStatusSource;
+
+import twitter4j.Status;
+
+/**
+ * The snatcher's side of every tweet: flattening the twitter4j Status with StatusAdapter,
+ * and the whole of serializing it with JSON-B as the EncodingPipeline does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatusAdapterBenchmark {
+
+	private List<Status> statuses;
+	private int next;
+	private StatusAdapter adapter;
+	private Jsonb jsonb;
+
+	@Setup
+	public void setup() throws Exception {
+		statuses = new ArrayList<Status>();
+		for (String line : SampleTweets.lines()) {
+			statuses.add(ReplayStatusSource.parseCapture(line));
+		}
+		adapter = new StatusAdapter();
+		jsonb = EncodedStatus.createJsonb();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		jsonb.close();
+	}
+
+	private Status nextStatus() {
+		Status status = statuses.get(next);
+		next = (next + 1) % statuses.size();
+		return status;
+	}
+
+	@Benchmark
+	public JsonObject adaptToJson() throws Exception {
+		return adapter.adaptToJson(nextStatus());
+	}
+
+	@Benchmark
+	public EncodedStatus encode() {
+		return EncodedStatus.encode(jsonb, nextStatus());
+	}
+}
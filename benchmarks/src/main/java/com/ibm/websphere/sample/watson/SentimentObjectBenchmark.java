@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.watson;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creating the SentimentObject every tweet gets, neutral when Watson isn't used and
+ * otherwise from a label and score, and mapping the score to an emoji on its own.
+ * The scores cycle through every emoji band.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SentimentObjectBenchmark {
+
+	private static final double[] SCORES = { -0.95, -0.7, -0.45, -0.1, 0.0, 0.2, 0.45, 0.75, 0.95 };
+	private static final String[] LABELS = { "negative", "negative", "negative", "neutral", "neutral",
+			"neutral", "positive", "positive", "positive" };
+
+	private int next;
+
+	// Just the emoji mapping, without creating an object
+	private final SentimentObject mapped = new SentimentObject();
+
+	@Benchmark
+	public SentimentObject neutral() {
+		return new SentimentObject();
+	}
+
+	@Benchmark
+	public SentimentObject scored() {
+		int i = next;
+		next = (i + 1) % SCORES.length;
+		return new SentimentObject(LABELS[i], SCORES[i]);
+	}
+
+	@Benchmark
+	public String emoji() {
+		int i = next;
+		next = (i + 1) % SCORES.length;
+		mapped.setSentimentScore(SCORES[i]);
+		mapped.setSentimentEmoji();
+		return mapped.getSentimentEmoji();
+	}
+}
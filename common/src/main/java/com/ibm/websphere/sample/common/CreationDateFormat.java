@@ -0,0 +1,277 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.common;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads and writes the creation_date of a tweet, "yyyy/MM/dd HH:mm:ss z" in America/New_York time
+ * (e.g. "2018/10/23 19:25:27 EDT"), without going through a pattern-based formatter for every tweet.
+ * The snatcher writes dates with it and the application reads them back with it, so the two can't drift apart.
+ * <p>
+ * Zone abbreviations are resolved to zones by DateTimeFormatter, and the abbreviation picks the offset
+ * when a local time happens twice as the clocks go back (01:30 EST is not 01:30 EDT).  Each zone keeps
+ * hold of its current offset until the next daylight saving change, so the zone rules are only consulted
+ * when the tweets cross one.  Anything not laid out as expected goes to DateTimeFormatter, which reads or
+ * rejects it as before.
+ */
+public final class CreationDateFormat {
+
+    public static final String PATTERN = "yyyy/MM/dd HH:mm:ss z";
+
+    /** The zone the snatcher writes in */
+    public static final ZoneId ZONE = ZoneId.of("America/New_York");
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern(PATTERN, Locale.ENGLISH).withZone(ZONE);
+    private static final DateTimeFormatter zoneName = DateTimeFormatter.ofPattern("z", Locale.ENGLISH);
+
+    // Where the zone abbreviation starts
+    private static final int ZONE_START = 20;
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+    private static final long MILLIS_PER_DAY = SECONDS_PER_DAY * 1000L;
+    // Days from 0000-03-01 to 1970-01-01, for the civil date arithmetic
+    private static final long DAYS_0000_TO_1970 = 719468;
+
+    /**
+     * A stretch of time with the same offset in a zone, from (inclusive) until (exclusive)
+     */
+    private static final class Period {
+        final long from;
+        final long until;
+        final long offsetMillis;
+        final String abbreviation;
+
+        Period(long from, long until, long offsetMillis, String abbreviation) {
+            this.from = from;
+            this.until = until;
+            this.offsetMillis = offsetMillis;
+            this.abbreviation = abbreviation;
+        }
+    }
+
+    /**
+     * A zone abbreviation, the zone it stands for and the last stretch of time it was read in
+     */
+    private static final class Zone {
+        final String abbreviation;
+        final ZoneId id;
+        volatile Period lastPeriod;
+
+        Zone(String abbreviation, ZoneId id) {
+            this.abbreviation = abbreviation;
+            this.id = id;
+        }
+    }
+
+    private static final Map<String, Zone> zones = new ConcurrentHashMap<String, Zone>();
+    private static volatile Zone lastZone;
+    private static volatile Period lastPeriod;
+
+    private CreationDateFormat() {
+    }
+
+    /**
+     * Reads a creation_date
+     * @param text The date as written by the snatcher
+     * @return Milliseconds since the epoch
+     * @throws java.time.format.DateTimeException if it isn't a date in the expected format
+     */
+    public static long parse(String text) {
+        int length = text.length();
+        if (length > ZONE_START && text.charAt(4) == '/' && text.charAt(7) == '/' && text.charAt(10) == ' '
+                && text.charAt(13) == ':' && text.charAt(16) == ':' && text.charAt(19) == ' ') {
+            int year = digits(text, 0, 4);
+            int month = digits(text, 5, 2);
+            int day = digits(text, 8, 2);
+            int hour = digits(text, 11, 2);
+            int minute = digits(text, 14, 2);
+            int second = digits(text, 17, 2);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= lengthOfMonth(year, month)
+                    && hour >= 0 && hour < 24 && minute >= 0 && minute < 60 && second >= 0 && second < 60) {
+                Zone zone = zoneOf(text, length);
+                if (zone != null) {
+                    long local = (epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second) * 1000;
+                    Period period = zone.lastPeriod;
+                    if (period != null) {
+                        long millis = local - period.offsetMillis;
+                        if (millis >= period.from && millis < period.until) {
+                            return millis;
+                        }
+                    }
+                    LocalDateTime dateTime = LocalDateTime.of(year, month, day, hour, minute, second);
+                    for (ZoneOffset offset : zone.id.getRules().getValidOffsets(dateTime)) {
+                        long millis = dateTime.toInstant(offset).toEpochMilli();
+                        period = periodOf(zone.id, millis);
+                        if (period.abbreviation.equals(zone.abbreviation)) {
+                            zone.lastPeriod = period;
+                            return millis;
+                        }
+                    }
+                }
+            }
+        }
+        return ZonedDateTime.parse(text, formatter).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Writes a creation_date, in America/New_York time
+     * @param millis Milliseconds since the epoch
+     * @return The date as the snatcher writes it
+     */
+    public static String format(long millis) {
+        Period period = lastPeriod;
+        if (period == null || millis < period.from || millis >= period.until) {
+            period = periodOf(ZONE, millis);
+            lastPeriod = period;
+        }
+        long local = millis + period.offsetMillis;
+        long epochDay = Math.floorDiv(local, MILLIS_PER_DAY);
+        int secondOfDay = (int) (Math.floorMod(local, MILLIS_PER_DAY) / 1000);
+
+        // Civil date from the day count (Howard Hinnant's civil_from_days)
+        long z = epochDay + DAYS_0000_TO_1970;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return formatter.format(Instant.ofEpochMilli(millis));
+        }
+
+        String abbreviation = period.abbreviation;
+        char[] chars = new char[ZONE_START + abbreviation.length()];
+        put(chars, 0, (int) year, 4);
+        chars[4] = '/';
+        put(chars, 5, month, 2);
+        chars[7] = '/';
+        put(chars, 8, day, 2);
+        chars[10] = ' ';
+        put(chars, 11, secondOfDay / 3600, 2);
+        chars[13] = ':';
+        put(chars, 14, secondOfDay / 60 % 60, 2);
+        chars[16] = ':';
+        put(chars, 17, secondOfDay % 60, 2);
+        chars[19] = ' ';
+        abbreviation.getChars(0, abbreviation.length(), chars, ZONE_START);
+        return new String(chars);
+    }
+
+    /**
+     * @return The value of count decimal digits starting at start, or -1 if they aren't all digits
+     */
+    private static int digits(String text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void put(char[] chars, int start, int value, int count) {
+        for (int i = start + count - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * The zone named at the end of text, almost always the same one as last time
+     * @return null if there's no such zone
+     */
+    private static Zone zoneOf(String text, int length) {
+        Zone zone = lastZone;
+        int n = length - ZONE_START;
+        if (zone != null && zone.abbreviation.length() == n && text.regionMatches(ZONE_START, zone.abbreviation, 0, n)) {
+            return zone;
+        }
+        String abbreviation = text.substring(ZONE_START);
+        zone = zones.get(abbreviation);
+        if (zone == null) {
+            ZoneId id;
+            try {
+                id = zoneName.parse(abbreviation, ZoneId::from);
+            } catch (RuntimeException e) {
+                return null;
+            }
+            zone = new Zone(abbreviation, id);
+            // Don't let odd input fill the cache
+            if (zones.size() < 64) {
+                zones.put(abbreviation, zone);
+            }
+        }
+        lastZone = zone;
+        return zone;
+    }
+
+    private static Period periodOf(ZoneId zone, long millis) {
+        ZoneRules rules = zone.getRules();
+        Instant instant = Instant.ofEpochMilli(millis);
+        ZoneOffset offset = rules.getOffset(instant);
+        ZoneOffsetTransition previous = rules.previousTransition(instant);
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        // Only trust a transition as a boundary if it's next to this offset; otherwise this instant alone
+        long from = previous != null && previous.getOffsetAfter().equals(offset) ? previous.toEpochSecond() * 1000
+                : previous == null ? Long.MIN_VALUE : millis;
+        long until = next != null && next.getOffsetBefore().equals(offset) ? next.toEpochSecond() * 1000
+                : next == null ? Long.MAX_VALUE : millis + 1;
+        return new Period(from, until, offset.getTotalSeconds() * 1000L, zoneName.format(instant.atZone(zone)));
+    }
+
+    /**
+     * Days from 1970-01-01 to the date (Howard Hinnant's days_from_civil)
+     */
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+        case 2:
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        case 4:
+        case 6:
+        case 9:
+        case 11:
+            return 30;
+        default:
+            return 31;
+        }
+    }
+}
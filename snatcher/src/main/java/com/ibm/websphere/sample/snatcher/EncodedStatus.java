@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.snatcher;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.json.bind.JsonbConfig;
+
+import twitter4j.Status;
+
+/**
+ * A tweet already serialized to the line written to the tweet file, along with the
+ * facts the file's TweetFileIndex needs, so serializing can happen apart from writing.
+ */
+public class EncodedStatus {
+
+	/**
+	 * Stands in for a tweet that could not be serialized, so it can be skipped in order
+	 */
+	static final EncodedStatus FAILED = new EncodedStatus(null, 0, 0);
+
+	final byte[] line;
+	final long statusId;
+	final long createdAt;
+
+	private EncodedStatus(byte[] line, long statusId, long createdAt) {
+		this.line = line;
+		this.statusId = statusId;
+		this.createdAt = createdAt;
+	}
+
+	/**
+	 * @return A Jsonb set up to serialize tweets the way this sample stores them.  Jsonb instances
+	 * are costly to create, so create one per thread and reuse it.
+	 */
+	public static Jsonb createJsonb() {
+		// Use Adapter to serialize to JSON in a manner specific to this sample.
+		return JsonbBuilder.create(new JsonbConfig()
+				.withNullValues(true)
+				.withAdapters(new StatusAdapter()));
+	}
+
+	/**
+	 * Serializes a tweet as UTF-8.
+	 * @param jsonb A Jsonb from createJsonb(), not shared with other threads
+	 * @param status The tweet as received
+	 * @return The serialized tweet
+	 */
+	public static EncodedStatus encode(Jsonb jsonb, Status status) {
+		//
+		// if quoted, or a retweet use the original tweet instead
+		//
+		// I wonder why a recursive approach wasn't used instead of checking each 
+		// but only to a single-layer of quoting/retweeting.  Maybe because the counts
+		// are included as separate properties?
+		//
+		status = StatusCoalescer.original(status);
+
+		byte[] line = jsonb.toJson(status, Status.class).getBytes(StandardCharsets.UTF_8);
+		return new EncodedStatus(line, status.getId(), status.getCreatedAt().getTime());
+	}
+}
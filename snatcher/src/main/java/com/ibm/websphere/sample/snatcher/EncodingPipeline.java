@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.snatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.json.bind.Jsonb;
+
+import twitter4j.Status;
+
+/**
+ * Spreads the JSON serialization of tweets over several threads while keeping them in their
+ * original order in the tweet file.
+ * <p>
+ * Each tweet handed to write() gets the next sequence number and a slot in a ring buffer.
+ * Tweets are serialized in slices by a pool of encoder threads, each with its own Jsonb, into their
+ * slots.  The calling thread remains the only writer: it takes serialized tweets from the ring in
+ * sequence order, as far as they are ready, and hands them to the TweetStatusFileWriter.
+ * When the ring is full it waits for the oldest slot to be filled.
+ * <p>
+ * With a single thread, tweets are simply serialized and written by the calling thread.
+ */
+public class EncodingPipeline {
+
+	private static final int SLICE = 64;
+	private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private final TweetStatusFileWriter writer;
+	private final ExecutorService encoders;
+	private final ThreadLocal<Jsonb> jsonb = ThreadLocal.withInitial(EncodedStatus::createJsonb);
+	private final AtomicReferenceArray<EncodedStatus> ring;
+	private final int mask;
+	private final List<EncodedStatus> ready = new ArrayList<EncodedStatus>();
+
+	// Both only touched by the writing thread
+	private long nextSequence = 0;
+	private long nextToWrite = 0;
+
+	/**
+	 * @param writer Where to write the tweets
+	 * @param threads How many encoder threads to use
+	 * @param ringSize Most tweets being serialized at once; rounded up to a power of two
+	 */
+	public EncodingPipeline(TweetStatusFileWriter writer, int threads, int ringSize) {
+		this.writer = writer;
+		int size = Integer.highestOneBit(Math.max(ringSize, SLICE) - 1) << 1;
+		this.ring = new AtomicReferenceArray<EncodedStatus>(size);
+		this.mask = size - 1;
+		if (threads > 1) {
+			AtomicInteger count = new AtomicInteger();
+			encoders = Executors.newFixedThreadPool(threads, r -> {
+				Thread t = new Thread(r, "tweet-encoder-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+		} else {
+			encoders = null;
+		}
+	}
+
+	/**
+	 * Serializes a batch of tweets and writes those that are ready, in order.
+	 * Some tweets of this batch may only be written by a later call, or by finish().
+	 * @param statuses The tweets to write
+	 */
+	public void write(List<Status> statuses) {
+		if (encoders == null) {
+			writer.write(statuses);
+			return;
+		}
+		for (int from = 0; from < statuses.size(); from += SLICE) {
+			List<Status> slice = statuses.subList(from, Math.min(from + SLICE, statuses.size()));
+			while (nextSequence + slice.size() - nextToWrite > ring.length()) {
+				// Ring is full, make room
+				awaitNext();
+				writeReady();
+			}
+			long first = nextSequence;
+			nextSequence += slice.size();
+			Status[] tweets = slice.toArray(new Status[slice.size()]);
+			encoders.execute(() -> encode(first, tweets));
+		}
+		writeReady();
+	}
+
+	/**
+	 * Waits for every tweet handed to write() to be serialized, and writes them.
+	 */
+	public void finish() {
+		while (nextToWrite < nextSequence) {
+			awaitNext();
+			writeReady();
+		}
+	}
+
+	/**
+	 * Writes out what's left and stops the encoder threads.
+	 */
+	public void close() {
+		finish();
+		if (encoders != null) {
+			encoders.shutdown();
+		}
+	}
+
+	private void encode(long first, Status[] tweets) {
+		Jsonb encoder = jsonb.get();
+		for (int i = 0; i < tweets.length; i++) {
+			EncodedStatus encoded;
+			try {
+				encoded = EncodedStatus.encode(encoder, tweets[i]);
+			} catch (Exception e) {
+				e.printStackTrace();
+				encoded = EncodedStatus.FAILED;
+			}
+			ring.lazySet((int) ((first + i) & mask), encoded);
+		}
+	}
+
+	private void awaitNext() {
+		int slot = (int) (nextToWrite & mask);
+		while (ring.get(slot) == null) {
+			LockSupport.parkNanos(WAIT_NANOS);
+		}
+	}
+
+	private void writeReady() {
+		ready.clear();
+		while (nextToWrite < nextSequence) {
+			int slot = (int) (nextToWrite & mask);
+			EncodedStatus encoded = ring.get(slot);
+			if (encoded == null) {
+				break;
+			}
+			ring.set(slot, null);
+			ready.add(encoded);
+			nextToWrite++;
+		}
+		writer.writeEncoded(ready);
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.snatcher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Announces each tweet file as it is closed, by appending its full path as a line to a
+ * spool manifest file.  The analyzer application watches the manifest (see SpoolTrigger there)
+ * and runs a small job over just the new files, so tweets are analyzed minutes after capture
+ * instead of whenever someone next runs the job over the whole directory.
+ * <p>
+ * A file is only listed once it and its index are completely written, and each line is synced
+ * to disk before moving on, so whatever reads the manifest never sees a partial file.
+ */
+public class SpoolManifest {
+
+	private final File manifest;
+
+	/**
+	 * @param manifest The manifest file to append to, created if needed
+	 */
+	public SpoolManifest(File manifest) {
+		this.manifest = manifest;
+	}
+
+	/**
+	 * Adds a closed tweet file to the manifest.
+	 * @param dataFile The tweet file just closed
+	 * @throws IOException For errors writing to the manifest
+	 */
+	public void publish(File dataFile) throws IOException {
+		byte[] line = (dataFile.getCanonicalPath() + "\n").getBytes(StandardCharsets.UTF_8);
+		try (FileOutputStream out = new FileOutputStream(manifest, true)) {
+			out.write(line);
+			out.getFD().sync();
+		}
+	}
+}
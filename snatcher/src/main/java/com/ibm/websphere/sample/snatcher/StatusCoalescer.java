@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.snatcher;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import twitter4j.Status;
+
+/**
+ * Collapses the many copies of a popular tweet that arrive as it gets retweeted and quoted.
+ * <p>
+ * Since the original tweet is what gets written (see TweetStatusFileWriter), every retweet of a viral
+ * tweet would otherwise write the same record again with slightly higher counts.  Instead, tweets are
+ * held for a time window, keyed by the status ID of the original, keeping only the copy with the highest
+ * retweet and favorite counts.  At the end of each window the held tweets are released to be written,
+ * once each.  The number held is capped: when full, the least recently updated one is released early.
+ */
+public class StatusCoalescer {
+
+	private final long windowMillis;
+	private final LinkedHashMap<Long, Status> held;
+	private final List<Status> released = new ArrayList<Status>();
+	private long windowStart = System.currentTimeMillis();
+
+	private long seen = 0;
+	private long emitted = 0;
+
+	/**
+	 * @param windowMillis How long to hold tweets before writing them
+	 * @param capacity The most tweets to hold at once
+	 */
+	public StatusCoalescer(long windowMillis, final int capacity) {
+		this.windowMillis = windowMillis;
+		this.held = new LinkedHashMap<Long, Status>(Math.min(capacity, 1 << 16), 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Status> eldest) {
+				if (size() > capacity) {
+					released.add(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Takes in a batch of tweets and hands back those that should be written now.
+	 * @param batch The tweets just received
+	 * @return The tweets to write: any released early to make room, plus all held ones if the window is over
+	 */
+	public List<Status> offer(List<Status> batch) {
+		released.clear();
+		for (Status status : batch) {
+			seen++;
+			long id = original(status).getId();
+			Status current = held.get(id);
+			if (current == null || popularity(status) >= popularity(current)) {
+				held.put(id, status);
+			}
+		}
+		if (System.currentTimeMillis() - windowStart >= windowMillis) {
+			drainHeld();
+		}
+		emitted += released.size();
+		return released;
+	}
+
+	/**
+	 * @return All the tweets still held, to be written before stopping
+	 */
+	public List<Status> flush() {
+		released.clear();
+		drainHeld();
+		emitted += released.size();
+		return released;
+	}
+
+	@Override
+	public String toString() {
+		return "received=" + seen + " written=" + emitted + " held=" + held.size();
+	}
+
+	private void drainHeld() {
+		released.addAll(held.values());
+		held.clear();
+		windowStart = System.currentTimeMillis();
+	}
+
+	/**
+	 * The tweet that gets written for a status: the quoted or retweeted original, if there is one.
+	 * Matches the substitution TweetStatusFileWriter makes.
+	 */
+	static Status original(Status status) {
+		Status original = status;
+		if (status.getQuotedStatus() != null) {
+			original = status.getQuotedStatus();
+		}
+		if (status.getRetweetedStatus() != null) {
+			original = status.getRetweetedStatus();
+		}
+		return original;
+	}
+
+	private static long popularity(Status status) {
+		Status original = original(status);
+		return (long) original.getRetweetCount() + original.getFavoriteCount();
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.snatcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import twitter4j.Status;
+
+/**
+ * The bounded hand-off between the thread receiving tweets from Twitter and the thread writing them to disk.
+ * <p>
+ * The consumer takes tweets in batches, waiting only as long as it takes for the first one to show up.
+ * When the queue is full the configured OverflowPolicy decides what happens to the next tweet: the
+ * producer can wait for room, the oldest queued tweet can be dropped, or tweets can be spilled to a
+ * file and handed to the consumer, in arrival order, once it catches up.
+ */
+public class StatusQueue {
+
+	/**
+	 * What to do with a new tweet when the queue is full
+	 */
+	public enum OverflowPolicy {
+		/** Wait for the consumer to make room (slows down the stream) */
+		BLOCK,
+		/** Throw away the oldest queued tweet */
+		DROP_OLDEST,
+		/** Serialize the tweet to the spill file until the consumer catches up */
+		SPILL;
+
+		/**
+		 * @param s "block", "drop-oldest" or "spill", in any case
+		 * @return The matching policy
+		 */
+		public static OverflowPolicy parse(String s) {
+			return valueOf(s.trim().toUpperCase().replace('-', '_'));
+		}
+	}
+
+	private final ArrayBlockingQueue<Status> queue;
+	private final OverflowPolicy policy;
+	private final File spillFile;
+
+	// Guards the spill file and the spill positions
+	private final Object spillLock = new Object();
+	private RandomAccessFile spill;
+	private long spillReadPos = 0;
+	private long spillWritePos = 0;
+	private long spillPending = 0;
+
+	private final AtomicLong enqueued = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong spilled = new AtomicLong();
+	private final AtomicLong taken = new AtomicLong();
+
+	/**
+	 * @param capacity How many tweets can be held in memory
+	 * @param policy What to do when the queue is full
+	 * @param spillFile Where to spill to, only used with OverflowPolicy.SPILL
+	 */
+	public StatusQueue(int capacity, OverflowPolicy policy, File spillFile) {
+		this.queue = new ArrayBlockingQueue<Status>(capacity);
+		this.policy = policy;
+		this.spillFile = spillFile;
+	}
+
+	/**
+	 * Adds a tweet, applying the overflow policy if the queue is full.
+	 * @param status The tweet
+	 * @throws InterruptedException If interrupted while waiting for room (BLOCK only)
+	 */
+	public void put(Status status) throws InterruptedException {
+		enqueued.incrementAndGet();
+		switch (policy) {
+		case BLOCK:
+			queue.put(status);
+			break;
+		case DROP_OLDEST:
+			while (!queue.offer(status)) {
+				if (queue.poll() != null) {
+					dropped.incrementAndGet();
+				}
+			}
+			break;
+		case SPILL:
+			synchronized (spillLock) {
+				// Once spilling, keep spilling until the consumer has read it all back, to keep the order
+				if (spillPending > 0 || !queue.offer(status)) {
+					try {
+						writeSpill(status);
+					} catch (IOException e) {
+						dropped.incrementAndGet();
+						e.printStackTrace();
+					}
+				}
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Moves up to max tweets into batch, waiting up to maxWaitMillis for the first one.
+	 * @param batch The list to add the tweets to
+	 * @param max The largest number of tweets to take
+	 * @param maxWaitMillis How long to wait if there's nothing to take
+	 * @return How many tweets were taken
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public int drain(List<Status> batch, int max, long maxWaitMillis) throws InterruptedException {
+		int n = queue.drainTo(batch, max);
+		if (n == 0 && !hasSpilled()) {
+			Status first = queue.poll(maxWaitMillis, TimeUnit.MILLISECONDS);
+			if (first != null) {
+				batch.add(first);
+				n = 1 + queue.drainTo(batch, max - 1);
+			}
+		}
+		if (n < max && hasSpilled()) {
+			n += readSpill(batch, max - n);
+		}
+		taken.addAndGet(n);
+		return n;
+	}
+
+	/** @return Tweets handed to the queue so far */
+	public long getEnqueued() {
+		return enqueued.get();
+	}
+
+	/** @return Tweets thrown away because the queue was full (or the spill file couldn't be written) */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/** @return Tweets that went through the spill file */
+	public long getSpilled() {
+		return spilled.get();
+	}
+
+	/** @return Tweets received but not yet taken by the consumer */
+	public long getLag() {
+		return enqueued.get() - dropped.get() - taken.get();
+	}
+
+	@Override
+	public String toString() {
+		return "enqueued=" + getEnqueued() + " dropped=" + getDropped() + " spilled=" + getSpilled() + " lag=" + getLag();
+	}
+
+	/**
+	 * Removes the spill file, if there is one
+	 */
+	public void close() throws IOException {
+		synchronized (spillLock) {
+			if (spill != null) {
+				spill.close();
+				spill = null;
+				spillFile.delete();
+			}
+		}
+	}
+
+	private boolean hasSpilled() {
+		synchronized (spillLock) {
+			return spillPending > 0;
+		}
+	}
+
+	private void writeSpill(Status status) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+		ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		oos.writeObject(status);
+		oos.close();
+		if (spill == null) {
+			spill = new RandomAccessFile(spillFile, "rw");
+			spill.setLength(0);
+		}
+		spill.seek(spillWritePos);
+		spill.writeInt(bytes.size());
+		spill.write(bytes.toByteArray());
+		spillWritePos = spill.getFilePointer();
+		spillPending++;
+		spilled.incrementAndGet();
+	}
+
+	private int readSpill(List<Status> batch, int max) {
+		synchronized (spillLock) {
+			int n = 0;
+			try {
+				while (n < max && spillPending > 0) {
+					spill.seek(spillReadPos);
+					byte[] bytes = new byte[spill.readInt()];
+					spill.readFully(bytes);
+					ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+					batch.add((Status) ois.readObject());
+					spillReadPos = spill.getFilePointer();
+					spillPending--;
+					n++;
+				}
+			} catch (IOException | ClassNotFoundException e) {
+				// Can't trust the rest of the file, so give up on what's left in it
+				e.printStackTrace();
+				dropped.addAndGet(spillPending);
+				spillPending = 0;
+			}
+			if (spillPending == 0) {
+				// All caught up, start the file over
+				spillReadPos = 0;
+				spillWritePos = 0;
+				try {
+					spill.setLength(0);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			return n;
+		}
+	}
+}
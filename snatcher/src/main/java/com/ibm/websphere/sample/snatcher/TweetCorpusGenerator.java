@@ -0,0 +1,433 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.snatcher;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+import com.ibm.websphere.sample.common.CreationDateFormat;
+
+/**
+ * A stand-alone Java program that makes up tweets, rather than snatching them, and writes them in
+ * the same files TweetSnatcher would (one StatusAdapter JSON line per tweet, with a TweetFileIndex
+ * sidecar), so the analyzer can be tried on as many tweets as needed.  The only argument is the
+ * directory to write to (default generated-tweets).  The corpus is shaped with these system properties:
+ * <ul>
+ * <li>generate.records - tweets to write in all (default 100000)</li>
+ * <li>generate.files - files to spread them over (default one per million tweets)</li>
+ * <li>generate.fileSkew - how unevenly, the n-th largest file getting a share proportional to 1/n^fileSkew (default 0, evenly)</li>
+ * <li>generate.duplicateRate - fraction of tweets written again exactly as before, as overlapping captures would (default 0.02)</li>
+ * <li>generate.retweetRate - fraction of tweets that are an earlier one again with higher retweet and favorite counts,
+ * as the snatcher sees when a tweet is retweeted or quoted (default 0.15)</li>
+ * <li>generate.textMean and generate.textMax - mean and greatest length of the text (default 110 and 280)</li>
+ * <li>generate.emojiRate - chance of each word being an emoji (default 0.03)</li>
+ * <li>generate.unicodeRate - chance of each word being accented, Cyrillic, CJK and so on (default 0.05)</li>
+ * <li>generate.accounts - distinct accounts tweeting (default 10000)</li>
+ * <li>generate.accountSkew - Zipf exponent of tweets per account (default 1.0, 0 for all alike)</li>
+ * <li>generate.start - creation time of the first tweet (default 2018-10-23T00:00:00Z)</li>
+ * <li>generate.tweetsPerSecond - spacing of the creation times (default 10)</li>
+ * <li>generate.gzip - gzip the files (default false)</li>
+ * <li>generate.indexEvery - as snatcher.indexEvery (default 1000)</li>
+ * <li>generate.threads - files written at once (default the number of processors)</li>
+ * <li>generate.seed - the same seed and properties always make the same files, however many threads (default 0)</li>
+ * </ul>
+ */
+public class TweetCorpusGenerator {
+
+	// Status IDs start with the creation time in milliseconds since Twitter's epoch
+	private static final long TWEPOCH = 1288834974657L;
+	private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+	private static final int BUFFER_SIZE = 256 * 1024;
+	private static final double TEXT_SIGMA = 0.5;
+	private static final double URL_RATE = 0.3;
+	private static final double HASHTAG_RATE = 0.06;
+	private static final double MENTION_RATE = 0.06;
+	private static final double QUOTE_RATE = 0.02;
+	private static final double NEWLINE_RATE = 0.01;
+	private static final double UNKNOWN_LOCATION_RATE = 0.2;
+	// Duplicates and retweets are of one of this many tweets written just before
+	private static final int RECENT = 4096;
+
+	private static final String[] WORDS = { "MTA", "subway", "train", "bus", "delay", "delays", "service",
+			"station", "signal", "problems", "again", "today", "morning", "commute", "late", "express", "local",
+			"uptown", "downtown", "Brooklyn", "Queens", "Bronx", "Manhattan", "platform", "track", "work",
+			"weekend", "fare", "MetroCard", "congestion", "pricing", "governor", "mayor", "budget", "the", "a",
+			"is", "on", "at", "to", "of", "and", "for", "in", "my", "this", "why", "how", "still", "never",
+			"finally", "thanks", "great", "terrible", "crowded", "packed", "stuck", "waiting", "minutes", "hour",
+			"line", "L", "A", "C", "E", "F", "G", "N", "Q", "R", "2", "3", "4", "5", "6", "7", "LIRR",
+			"Metro-North", "&amp;", "rush", "repairs", "shuttle", "elevator", "closed", "&gt;" };
+	private static final String[] HASHTAGS = { "#MTA", "#subway", "#NYC", "#commute", "#LIRR", "#MetroNorth",
+			"#LTrain", "#transit", "#SecondAvenueSubway", "#FixTheSubway" };
+	private static final String[] MENTIONS = { "@MTA", "@NYCTSubway", "@NYCTBus", "@LIRR", "@MetroNorth",
+			"@NYCMayor", "@NYGovCuomo", "@CityCouncilNYC" };
+	private static final String[] UNICODE = { "café", "señor", "mañana", "próxima", "estación", "naïve", "Ärger",
+			"Straße", "метро", "поезд", "задержка", "地铁", "延误", "車站", "電車", "遅延", "지하철", "مترو", "רכבת",
+			"Ελλάδα" };
+	private static final String[] EMOJI = { "😡", "😠", "🙁", "😶", "🙂", "😃", "😁", "🚇", "🚆", "🚌", "🚉", "⏰",
+			"🙄", "😤", "😭", "😂", "👍", "👎", "❤️", "🔥", "🗽", "💸", "🤬", "✨" };
+	private static final String[] FIRST_NAMES = { "Alex", "Maria", "James", "Priya", "Wei", "Fatima", "Carlos",
+			"Olga", "Kwame", "Yuki", "Sam", "Noor", "David", "Ana", "Chen", "Grace", "Luis", "Aisha", "Tom", "Mei" };
+	private static final String[] LAST_NAMES = { "Smith", "Garcia", "Chen", "Khan", "Johnson", "Rossi",
+			"Nguyen", "Cohen", "Okafor", "Kim", "Lopez", "Ivanova", "Brown", "Patel", "Murphy", "Silva" };
+	private static final String[] LOCATIONS = { "New York, NY", "Brooklyn, NY", "Queens, NY", "Bronx, NY",
+			"Manhattan", "Staten Island, NY", "Jersey City, NJ", "Hoboken, NJ", "Long Island, NY", "Westchester",
+			"NYC", "Cambridge, MA", "Washington, DC", "Nueva York", "Earth", "" };
+	private static final String[] SITES = { "www.mta.info", "twitter.com", "www.nytimes.com", "ny.curbed.com",
+			"www.instagram.com", "www.amny.com", "nypost.com", "www.youtube.com" };
+	private static final char[] URL_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+	private final long records;
+	private final int files;
+	private final double fileSkew;
+	private final double duplicateRate;
+	private final double retweetRate;
+	private final int textMean;
+	private final int textMax;
+	private final double emojiRate;
+	private final double unicodeRate;
+	private final long accounts;
+	private final double accountSkew;
+	private final long startMillis;
+	private final double tweetsPerSecond;
+	private final boolean gzip;
+	private final int indexEvery;
+	private final int threads;
+	private final long seed;
+
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	/**
+	 * A tweet as written, kept to be written again as a duplicate or retweet
+	 */
+	private static class Tweet {
+		long statusId;
+		long createdAt;
+		String text;
+		long retweets;
+		long favorites;
+		long account;
+	}
+
+	/**
+	 * @param props The generate.* properties shaping the corpus (see the class description)
+	 */
+	public TweetCorpusGenerator(Properties props) {
+		records = Long.parseLong(props.getProperty("generate.records", "100000"));
+		files = Integer.parseInt(props.getProperty("generate.files", Long.toString(Math.max(1, (records + 999999) / 1000000))));
+		fileSkew = Double.parseDouble(props.getProperty("generate.fileSkew", "0"));
+		duplicateRate = Double.parseDouble(props.getProperty("generate.duplicateRate", "0.02"));
+		retweetRate = Double.parseDouble(props.getProperty("generate.retweetRate", "0.15"));
+		textMean = Integer.parseInt(props.getProperty("generate.textMean", "110"));
+		textMax = Integer.parseInt(props.getProperty("generate.textMax", "280"));
+		emojiRate = Double.parseDouble(props.getProperty("generate.emojiRate", "0.03"));
+		unicodeRate = Double.parseDouble(props.getProperty("generate.unicodeRate", "0.05"));
+		accounts = Long.parseLong(props.getProperty("generate.accounts", "10000"));
+		accountSkew = Double.parseDouble(props.getProperty("generate.accountSkew", "1.0"));
+		startMillis = Instant.parse(props.getProperty("generate.start", "2018-10-23T00:00:00Z")).toEpochMilli();
+		tweetsPerSecond = Double.parseDouble(props.getProperty("generate.tweetsPerSecond", "10"));
+		gzip = Boolean.parseBoolean(props.getProperty("generate.gzip", "false"));
+		indexEvery = Integer.parseInt(props.getProperty("generate.indexEvery", "1000"));
+		threads = Integer.parseInt(props.getProperty("generate.threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+		seed = Long.parseLong(props.getProperty("generate.seed", "0"));
+		if (records < 0 || files < 1 || textMax < 1 || accounts < 1 || tweetsPerSecond <= 0) {
+			throw new IllegalArgumentException("generate.records, files, textMax, accounts and tweetsPerSecond must be positive");
+		}
+	}
+
+	/**
+	 * Writes tweets to files
+	 * @param args The first argument is optional and is the directory to write to, which
+	 * defaults to generated-tweets
+	 * @throws Exception Anything that goes wrong...
+	 */
+	public static void main(String[] args) throws Exception {
+		File dir = new File(args.length > 0 ? args[0] : "generated-tweets");
+		TweetCorpusGenerator generator = new TweetCorpusGenerator(System.getProperties());
+		long started = System.nanoTime();
+		List<File> written = generator.generate(dir);
+		double seconds = (System.nanoTime() - started) / 1e9;
+		System.out.println(String.format("Wrote %d tweets (%d bytes) to %d files in %s in %.1f seconds (%.0f tweets/second)",
+				generator.written.get(), generator.bytesWritten.get(), written.size(), dir, seconds, generator.written.get() / seconds));
+	}
+
+	/**
+	 * Writes the corpus, several files at a time
+	 * @param dir The directory to write to, created if need be
+	 * @return The files written, in order
+	 * @throws Exception If a file can't be written
+	 */
+	public List<File> generate(File dir) throws Exception {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Unable to create " + dir);
+		}
+		long[] sizes = fileSizes();
+		int width = Math.max(2, Integer.toString(files - 1).length());
+		ExecutorService writers = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files)));
+		try {
+			List<Future<File>> results = new ArrayList<Future<File>>(files);
+			long first = 0;
+			for (int i = 0; i < files; i++) {
+				final int fileNumber = i;
+				final long firstRecord = first;
+				final long size = sizes[i];
+				final File file = new File(dir, String.format("tweets%0" + width + "d.dat", i) + (gzip ? ".gz" : ""));
+				results.add(writers.submit(() -> writeFile(file, fileNumber, firstRecord, size)));
+				first += size;
+			}
+			List<File> written = new ArrayList<File>(files);
+			for (Future<File> result : results) {
+				written.add(result.get());
+			}
+			return written;
+		} finally {
+			writers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Shares the records out between the files, in proportion to 1/n^fileSkew, with the
+	 * shares shuffled so the largest file isn't always the first.
+	 */
+	private long[] fileSizes() {
+		double[] weights = new double[files];
+		double total = 0;
+		for (int i = 0; i < files; i++) {
+			weights[i] = 1.0 / Math.pow(i + 1, fileSkew);
+			total += weights[i];
+		}
+		List<Long> shares = new ArrayList<Long>(files);
+		long assigned = 0;
+		for (int i = 0; i < files; i++) {
+			long share = (long) Math.floor(records * weights[i] / total);
+			shares.add(share);
+			assigned += share;
+		}
+		// Rounding leaves a few over, give them to the largest
+		shares.set(0, shares.get(0) + (records - assigned));
+		Collections.shuffle(shares, new Random(seed));
+		long[] sizes = new long[files];
+		for (int i = 0; i < files; i++) {
+			sizes[i] = shares.get(i);
+		}
+		return sizes;
+	}
+
+	/**
+	 * Writes one file, and its index.  Each file has its own Random, seeded from the seed and
+	 * the file's number, so the output doesn't depend on which thread writes it or when.
+	 */
+	private File writeFile(File file, int fileNumber, long firstRecord, long size) throws IOException {
+		Random random = new Random(mix(seed + fileNumber));
+		JsonGeneratorFactory factory = Json.createGeneratorFactory(null);
+		ByteArrayOutputStream line = new ByteArrayOutputStream(1024);
+		StringBuilder text = new StringBuilder(textMax + 32);
+		Tweet[] recent = new Tweet[RECENT];
+		int recentCount = 0;
+
+		TweetFileIndex index = new TweetFileIndex(file, indexEvery, gzip);
+		long bytes = 0;
+		OutputStream out = new FileOutputStream(file);
+		try {
+			if (gzip) {
+				out = new GZIPOutputStream(out, BUFFER_SIZE);
+			}
+			out = new BufferedOutputStream(out, BUFFER_SIZE);
+			for (long r = 0; r < size; r++) {
+				Tweet tweet;
+				double kind = random.nextDouble();
+				if (recentCount > 0 && kind < duplicateRate) {
+					tweet = recent[random.nextInt(Math.min(recentCount, RECENT))];
+				} else if (recentCount > 0 && kind < duplicateRate + retweetRate) {
+					int slot = random.nextInt(Math.min(recentCount, RECENT));
+					Tweet original = recent[slot];
+					tweet = new Tweet();
+					tweet.statusId = original.statusId;
+					tweet.createdAt = original.createdAt;
+					tweet.text = original.text;
+					tweet.account = original.account;
+					tweet.retweets = original.retweets + 1 + popularity(random, 1);
+					tweet.favorites = original.favorites + popularity(random, 2);
+					// Later retweets carry on from these counts
+					recent[slot] = tweet;
+				} else {
+					long global = firstRecord + r;
+					tweet = new Tweet();
+					tweet.createdAt = startMillis + (long) (global * 1000 / tweetsPerSecond);
+					tweet.statusId = ((tweet.createdAt - TWEPOCH) << 22) | (global & 0x3FFFFF);
+					tweet.text = text(random, text);
+					tweet.account = zipf(random, accounts, accountSkew);
+					tweet.retweets = popularity(random, 2);
+					tweet.favorites = tweet.retweets + popularity(random, 4);
+					recent[recentCount++ % RECENT] = tweet;
+				}
+
+				line.reset();
+				encode(factory, line, tweet);
+				index.add(bytes, tweet.statusId, tweet.createdAt);
+				line.writeTo(out);
+				out.write(NEWLINE);
+				bytes += line.size() + NEWLINE.length;
+			}
+		} finally {
+			out.close();
+		}
+		index.write(bytes);
+		written.addAndGet(size);
+		bytesWritten.addAndGet(bytes);
+		System.out.println("Wrote " + file.getName() + " (" + size + " tweets)");
+		return file;
+	}
+
+	/**
+	 * Writes the tweet as StatusAdapter would, field for field, with the JSON-P generator JSON-B uses
+	 */
+	private void encode(JsonGeneratorFactory factory, ByteArrayOutputStream line, Tweet tweet) {
+		long h = mix(seed ^ mix(tweet.account));
+		String first = FIRST_NAMES[(int) ((h >>> 8) % FIRST_NAMES.length)];
+		String last = LAST_NAMES[(int) ((h >>> 16) % LAST_NAMES.length)];
+		String location = ((h >>> 24) & 0xFFFF) < UNKNOWN_LOCATION_RATE * 0x10000
+				? StatusAdapter.UNKNOWN_LOCATION : LOCATIONS[(int) ((h >>> 40) % LOCATIONS.length)];
+		double u = (mix(h) >>> 11) * 0x1.0p-53;
+		long followers = Math.min(50000000L, (long) (50 * (Math.pow(1 - u, -1 / 1.1) - 1)));
+
+		JsonGenerator generator = factory.createGenerator(line, StandardCharsets.UTF_8);
+		generator.writeStartObject()
+				.write("status_id", tweet.statusId)
+				.write("creation_date", CreationDateFormat.format(tweet.createdAt))
+				.write("text", tweet.text)
+				.write("retweet_count", tweet.retweets)
+				.write("favorite_count", tweet.favorites)
+				// Spaced out so the IDs don't look sequential, but still one per account
+				.write("account_id", tweet.account * 1000003L + (h & 0xFFFF))
+				.write("real_name", first + " " + last)
+				.write("screen_name", first.toLowerCase() + "_" + last.toLowerCase() + Long.toString(tweet.account, 36))
+				.write("location", location)
+				.write("followers_count", followers)
+				.writeStartObject("urls");
+		int link = tweet.text.lastIndexOf("https://t.co/");
+		if (link >= 0) {
+			String url = tweet.text.substring(link);
+			generator.write(url, "https://" + SITES[(int) ((h >>> 56) % SITES.length)] + "/" + url.substring(13));
+		}
+		generator.writeEnd().writeEnd();
+		generator.close();
+	}
+
+	/**
+	 * Makes up the text of a tweet, of a length drawn from a log-normal distribution
+	 */
+	private String text(Random random, StringBuilder sb) {
+		int target = (int) Math.round(textMean * Math.exp(TEXT_SIGMA * random.nextGaussian() - TEXT_SIGMA * TEXT_SIGMA / 2));
+		target = Math.max(1, Math.min(textMax, target));
+		boolean url = random.nextDouble() < URL_RATE && target > 30;
+		// t.co links are always 23 characters
+		int room = url ? target - 24 : target;
+
+		sb.setLength(0);
+		while (true) {
+			String word = word(random);
+			if (sb.length() > 0 && sb.length() + 1 + word.length() > room) {
+				break;
+			}
+			if (sb.length() > 0) {
+				sb.append(random.nextDouble() < NEWLINE_RATE ? '\n' : ' ');
+			}
+			sb.append(word);
+			if (sb.length() >= room) {
+				break;
+			}
+		}
+		if (url) {
+			sb.append(" https://t.co/");
+			for (int i = 0; i < 10; i++) {
+				sb.append(URL_CHARS[random.nextInt(URL_CHARS.length)]);
+			}
+		}
+		return sb.toString();
+	}
+
+	private String word(Random random) {
+		double r = random.nextDouble();
+		String word;
+		if (r < emojiRate) {
+			return EMOJI[random.nextInt(EMOJI.length)];
+		} else if (r < emojiRate + unicodeRate) {
+			word = UNICODE[random.nextInt(UNICODE.length)];
+		} else if (r < emojiRate + unicodeRate + HASHTAG_RATE) {
+			return HASHTAGS[random.nextInt(HASHTAGS.length)];
+		} else if (r < emojiRate + unicodeRate + HASHTAG_RATE + MENTION_RATE) {
+			return MENTIONS[random.nextInt(MENTIONS.length)];
+		} else {
+			word = WORDS[random.nextInt(WORDS.length)];
+		}
+		return random.nextDouble() < QUOTE_RATE ? "\"" + word + "\"" : word;
+	}
+
+	/**
+	 * Retweet and favorite counts: mostly none, a few very many
+	 */
+	private static long popularity(Random random, double scale) {
+		return Math.min(1000000L, (long) (scale * (Math.pow(1 - random.nextDouble(), -1 / 1.2) - 1)));
+	}
+
+	/**
+	 * Draws from 1 to n, with the chance of k falling as 1/k^s (s of 0 for all alike)
+	 */
+	private static long zipf(Random random, long n, double s) {
+		double u = random.nextDouble();
+		double k;
+		if (s == 0) {
+			k = 1 + u * n;
+		} else if (Math.abs(s - 1) < 1e-9) {
+			k = Math.pow(n + 1, u);
+		} else {
+			double e = 1 - s;
+			k = Math.pow(1 + u * (Math.pow(n + 1, e) - 1), 1 / e);
+		}
+		return Math.max(1, Math.min(n, (long) k));
+	}
+
+	/**
+	 * Scrambles a number (the SplitMix64 finalizer), to derive stable pseudo-random values from it
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
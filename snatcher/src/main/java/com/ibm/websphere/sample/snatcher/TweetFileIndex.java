@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.snatcher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObject;
+import javax.json.JsonWriter;
+
+/**
+ * Collects the facts about a tweet file as it is written, and writes them to a small JSON
+ * sidecar file (the data file's name plus ".idx") once the data file is closed.
+ * <p>
+ * The sidecar holds the record count, the range of status IDs and creation dates in the file,
+ * and the byte offset (into the uncompressed data) of every K-th record, so a reader can plan
+ * splits, skip files it has already seen, or seek to a record without opening the data.
+ */
+public class TweetFileIndex {
+
+	/**
+	 * Extension added to the data file's name to name its index
+	 */
+	public static final String EXTENSION = ".idx";
+
+	// Json.createArrayBuilder() looks the provider up again on every call
+	private static final JsonBuilderFactory builders = Json.createBuilderFactory(null);
+
+	private final File dataFile;
+	private final int offsetEvery;
+	private final boolean compressed;
+	private final JsonArrayBuilder offsets = builders.createArrayBuilder();
+
+	private long records = 0;
+	private long minStatusId = Long.MAX_VALUE;
+	private long maxStatusId = Long.MIN_VALUE;
+	private long minCreated = Long.MAX_VALUE;
+	private long maxCreated = Long.MIN_VALUE;
+
+	/**
+	 * @param dataFile The tweet file being indexed
+	 * @param offsetEvery Record the offset of every this many records
+	 * @param compressed Whether the data file is gzipped
+	 */
+	public TweetFileIndex(File dataFile, int offsetEvery, boolean compressed) {
+		this.dataFile = dataFile;
+		this.offsetEvery = offsetEvery;
+		this.compressed = compressed;
+	}
+
+	/**
+	 * Notes a record about to be written.
+	 * @param offset The (uncompressed) byte offset the record starts at
+	 * @param statusId The record's status ID
+	 * @param createdAt The record's creation time, in epoch millis
+	 */
+	public void add(long offset, long statusId, long createdAt) {
+		if (records % offsetEvery == 0) {
+			offsets.add(builders.createArrayBuilder().add(records).add(offset));
+		}
+		records++;
+		minStatusId = Math.min(minStatusId, statusId);
+		maxStatusId = Math.max(maxStatusId, statusId);
+		minCreated = Math.min(minCreated, createdAt);
+		maxCreated = Math.max(maxCreated, createdAt);
+	}
+
+	/**
+	 * @return The number of records noted so far
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * Writes the sidecar file next to the data file
+	 * @param bytes The total (uncompressed) size of the data
+	 * @throws IOException If the sidecar can't be written
+	 */
+	public void write(long bytes) throws IOException {
+		JsonObject index = builders.createObjectBuilder()
+				.add("file", dataFile.getName())
+				.add("compressed", compressed)
+				.add("records", records)
+				.add("bytes", bytes)
+				.add("min_status_id", records > 0 ? minStatusId : 0)
+				.add("max_status_id", records > 0 ? maxStatusId : 0)
+				.add("min_creation_date", records > 0 ? Instant.ofEpochMilli(minCreated).toString() : "")
+				.add("max_creation_date", records > 0 ? Instant.ofEpochMilli(maxCreated).toString() : "")
+				.add("offset_every", offsetEvery)
+				.add("offsets", offsets)
+				.build();
+
+		File target = new File(dataFile.getPath() + EXTENSION);
+		File temp = new File(target.getPath() + ".tmp");
+		OutputStream os = new FileOutputStream(temp);
+		try {
+			JsonWriter writer = Json.createWriter(os);
+			writer.writeObject(index);
+			writer.close();
+		} finally {
+			os.close();
+		}
+		if (!temp.renameTo(target)) {
+			throw new IOException("Unable to rename " + temp + " to " + target);
+		}
+	}
+}
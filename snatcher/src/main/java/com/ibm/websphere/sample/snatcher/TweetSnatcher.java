@@ -17,8 +17,11 @@
 package com.ibm.websphere.sample.snatcher;
 
 import java.io.BufferedInputStream;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
+import com.ibm.websphere.sample.twitter4j.ReplayStatusSource;
 import com.ibm.websphere.sample.twitter4j.TwitterManager;
 
 import twitter4j.Status;
@@ -29,13 +32,39 @@ import twitter4j.Status;
  * The twitter4j Status object is flattened and written to a file.
  * You must provide an input parameter that points to a properties file containing
  * the tokens required to connect to Twitter.
+ * <p>
+ * Tweets are handed from the Twitter stream to the writing thread through a bounded StatusQueue,
+ * tuned with these system properties:
+ * <ul>
+ * <li>snatcher.queueCapacity - tweets held in memory (default 10000)</li>
+ * <li>snatcher.batchSize - most tweets written per pass (default 500)</li>
+ * <li>snatcher.batchWaitMillis - longest wait for a tweet before checking for Enter again (default 1000)</li>
+ * <li>snatcher.overflow - block, drop-oldest or spill, when the queue is full (default block)</li>
+ * <li>snatcher.spillFile - file used by the spill policy (default tweets-spill.bin)</li>
+ * </ul>
+ * See TweetStatusFileWriter for the properties controlling how often output is flushed.
+ * <p>
+ * Tweets are serialized to JSON by an EncodingPipeline of <code>snatcher.encoderThreads</code>
+ * threads (default the number of processors, 1 to serialize on the writing thread), with up to
+ * <code>snatcher.encodeRing</code> (default 8192) tweets in flight, and written in the order received.
+ * <p>
+ * Copies of the same original tweet are collapsed by a StatusCoalescer, holding tweets for
+ * <code>snatcher.dedupWindowMillis</code> (default 60000, 0 to turn it off) and at most
+ * <code>snatcher.dedupCapacity</code> (default 100000) of them at a time.
+ * <p>
+ * To drive the snatcher without Twitter, e.g. to measure its throughput, set <code>snatcher.replay</code>
+ * to a capture file or directory of them; no properties file is needed then.  The replay is tuned with
+ * <code>replay.rate</code> (tweets per second, default 100, 0 for flat out), <code>replay.burst</code>
+ * (multiplier:durationMillis:periodMillis), <code>replay.jitter</code> (0 to 1), <code>replay.loops</code>
+ * and <code>replay.seed</code>; see ReplayStatusSource.  The snatcher stops by itself once the replay
+ * is over and prints the rate it achieved.
  * @author Cassandra Newcomer
  * @author David Follis
  */
 public class TweetSnatcher {
 	
 	static private TwitterManager tm;
-	static private ConcurrentLinkedQueue<Status> clq = new ConcurrentLinkedQueue<Status>();
+	static private StatusQueue queue;
 
 	/**
 	 * Subscribes to tweets and writes them to a file
@@ -47,31 +76,60 @@ public class TweetSnatcher {
 	 */
 	public static void main(String[] args) throws Exception {
 
-		if (args.length==0) {
+		String replay = System.getProperty("snatcher.replay");
+
+		if (args.length==0 && replay==null) {
 			System.out.println("First argument must be the full path of the twitter properties file");
 			return;
 		}
 		
-		String twitterPropFile = args[0];
-		String inputFilter = null;
+		boolean done = false;
 		
-		if (args.length==2) {
-			inputFilter = args[1];
+		int queueCapacity = Integer.getInteger("snatcher.queueCapacity", 10000);
+		int batchSize = Integer.getInteger("snatcher.batchSize", 500);
+		long batchWaitMillis = Long.getLong("snatcher.batchWaitMillis", 1000L);
+		StatusQueue.OverflowPolicy overflow = StatusQueue.OverflowPolicy.parse(System.getProperty("snatcher.overflow", "block"));
+		File spillFile = new File(System.getProperty("snatcher.spillFile", "tweets-spill.bin"));
+		System.out.println("Queueing up to " + queueCapacity + " tweets, overflow policy " + overflow);
+		queue = new StatusQueue(queueCapacity, overflow, spillFile);
+
+		long dedupWindowMillis = Long.getLong("snatcher.dedupWindowMillis", 60000L);
+		int dedupCapacity = Integer.getInteger("snatcher.dedupCapacity", 100000);
+		StatusCoalescer coalescer = dedupWindowMillis > 0 ? new StatusCoalescer(dedupWindowMillis, dedupCapacity) : null;
+
+		if (replay != null) {
+			System.out.println("Replaying tweets from: "+replay);
+			ReplayStatusSource source = new ReplayStatusSource(new File(replay),
+					Double.parseDouble(System.getProperty("replay.rate", "100")),
+					System.getProperty("replay.burst"),
+					Double.parseDouble(System.getProperty("replay.jitter", "0")),
+					Integer.getInteger("replay.loops", 1),
+					Long.getLong("replay.seed", 0L));
+			tm = new TwitterManager(source, queue);
 		} else {
-			inputFilter = new String("MTA,#MTA,@MTA");			
+			String twitterPropFile = args[0];
+			String inputFilter = null;
+
+			if (args.length==2) {
+				inputFilter = args[1];
+			} else {
+				inputFilter = new String("MTA,#MTA,@MTA");			
+			}
+
+			System.out.println("Using twitter properties from: "+twitterPropFile);
+			System.out.println("Using tweet filters:  "+inputFilter);
+			String[] filter = inputFilter.split(",");
+			tm = new TwitterManager(twitterPropFile, filter, queue);
 		}
-		
-		boolean done = false;
-				
-		System.out.println("Using twitter properties from: "+twitterPropFile);
-		System.out.println("Using tweet filters:  "+inputFilter);
 		System.out.println("Press Return/Enter to stop");
-		
-		String[] filter = inputFilter.split(",");
-    	tm = new TwitterManager(twitterPropFile, filter, clq);
+		long started = System.nanoTime();
+		long written = 0;
        	tm.start();
        	
        	TweetStatusFileWriter tsfw = new TweetStatusFileWriter();
+       	EncodingPipeline pipeline = new EncodingPipeline(tsfw,
+       			Integer.getInteger("snatcher.encoderThreads", Runtime.getRuntime().availableProcessors()),
+       			Integer.getInteger("snatcher.encodeRing", 8192));
        	
        	BufferedInputStream bis = null;
        	try {
@@ -83,23 +141,46 @@ public class TweetSnatcher {
        		System.out.println("Kill with Ctrl+C or kill (or other OS) command.");
        	}
        	
-    	Status status = null;
+    	List<Status> batch = new ArrayList<Status>(batchSize);
     	while (!done) {
-    		synchronized(clq){
-        	   clq.wait();
-    		}
-        	status = clq.poll();
-        	tsfw.write(status);
+    		batch.clear();
+    		written += queue.drain(batch, batchSize, batchWaitMillis);
+    		pipeline.write(coalescer != null ? coalescer.offer(batch) : batch);
+    		tsfw.syncIfDue();
         	
         	if (bis != null && bis.available()!=0) {
         		done = true;
         	}
+        	if (tm.isFinished() && queue.getLag() == 0) {
+        		// A replay has run out of tweets
+        		done = true;
+        	}
         	
     	}
-    	
-    	tsfw.close();
 
     	tm.stop();
+
+    	// Write out whatever was still queued when we were told to stop
+    	batch.clear();
+    	int n;
+    	while ((n = queue.drain(batch, batchSize, 0)) > 0) {
+    		written += n;
+    		pipeline.write(coalescer != null ? coalescer.offer(batch) : batch);
+    		batch.clear();
+    	}
+    	if (coalescer != null) {
+    		pipeline.write(coalescer.flush());
+    	}
+    	
+    	pipeline.close();
+    	tsfw.close();
+    	queue.close();
+    	double seconds = (System.nanoTime() - started) / 1e9;
+    	System.out.println("\nQueue statistics: " + queue);
+    	if (coalescer != null) {
+    		System.out.println("Coalescing statistics: " + coalescer);
+    	}
+    	System.out.println(String.format("Handled %d tweets in %.1f seconds (%.0f tweets/second)", written, seconds, written / seconds));
 		
 	}
 
@@ -16,111 +16,241 @@
  */
 package com.ibm.websphere.sample.snatcher;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import javax.json.bind.Jsonb;
-import javax.json.bind.JsonbBuilder;
-import javax.json.bind.JsonbConfig;
 
 import twitter4j.Status;
-import twitter4j.TwitterObjectFactory;
 
 /**
- * Writes a tweet to a file.  A new file is created for tweets within the same minute.
+ * Writes tweets to a file, rolling over to a new file once the current one reaches
+ * <code>snatcher.rollBytes</code> (default 64MB, uncompressed) or <code>snatcher.rollRecords</code>
+ * tweets (default 0, no limit), or has been open for <code>snatcher.rollMillis</code> (default an hour),
+ * whichever comes first.  Files are gzipped as they are written if <code>snatcher.gzip</code> is true.
+ * A TweetFileIndex sidecar is written next to each file when it is closed, recording every
+ * <code>snatcher.indexEvery</code>-th (default 1000) record's offset.
  * As tweets are written, a dot (.) is printed so you can see progress.
  * When a new file is opened, the timestamp is printed.  
+ * <p>
+ * Lines are buffered and written out as a group, followed by an fsync, once
+ * <code>snatcher.syncEveryRecords</code> tweets (default 1000) have been written or
+ * <code>snatcher.syncEveryMillis</code> (default 1000) have passed, whichever comes first.
+ * Set <code>snatcher.fsync=false</code> to leave syncing to the operating system.
+ * <p>
+ * If <code>snatcher.spool</code> names a file, each tweet file is added to it as a SpoolManifest
+ * once closed, for the analyzer to pick up.
  * @author David Follis
  */
 public class TweetStatusFileWriter {
 	
-    private SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd__HH-mm");
-    private String ext = ".dat";
-    private String stringCurrentDate = null;
+    private static final DateTimeFormatter fileNameFormatter =
+    		DateTimeFormatter.ofPattern("yyyy-MM-dd__HH-mm-ss").withZone(ZoneId.systemDefault());
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final String ext = ".dat";
+    private final long rollBytes = Long.getLong("snatcher.rollBytes", 64L * 1024 * 1024);
+    private final long rollRecords = Long.getLong("snatcher.rollRecords", 0L);
+    private final long rollMillis = Long.getLong("snatcher.rollMillis", 60 * 60 * 1000L);
+    private final boolean gzip = Boolean.parseBoolean(System.getProperty("snatcher.gzip", "false"));
+    private final int indexEvery = Integer.getInteger("snatcher.indexEvery", 1000);
+    private final File fileDir = new File("tweets/");
+    private final int syncEveryRecords = Integer.getInteger("snatcher.syncEveryRecords", 1000);
+    private final long syncEveryMillis = Long.getLong("snatcher.syncEveryMillis", 1000L);
+    private final boolean fsync = Boolean.parseBoolean(System.getProperty("snatcher.fsync", "true"));
+    private final SpoolManifest spool = System.getProperty("snatcher.spool") != null
+    		? new SpoolManifest(new File(System.getProperty("snatcher.spool"))) : null;
+
+    private final Jsonb jsonb = EncodedStatus.createJsonb();
+
+    private File currentFile;
+    private long openedAt;
+    private long bytesWritten;
+    private TweetFileIndex index;
     private FileOutputStream fos;
-    private PrintWriter pw;
+    private FileChannel channel;
+    private OutputStream out;
+    private int unsyncedRecords = 0;
+    private long lastSync = System.currentTimeMillis();
 
     /**
      * Default constructor
      */
     public TweetStatusFileWriter() {
-    	
+    	if (!fileDir.exists()) {
+    		fileDir.mkdir();
+    	}
     }
     
     /**
-     * Writes a twitter4j Status object to a file.  One file per minute.
+     * Writes a twitter4j Status object to a file.
      * @param status  The twitter4j Status object to write
      */
     public void write(Status status) {
-    	
     	try {
-    		File fileDir = new File("tweets/");
-    		if (!fileDir.exists()) {
-    			fileDir.mkdir();
+    		append(status);
+    		System.out.print(".");  // So user can see something's happening
+    		syncIfDue();
+    	} catch (Exception e) {
+    		e.printStackTrace();
+    	} 
+    }
+
+    /**
+     * Writes a batch of twitter4j Status objects, with a single progress update and sync check.
+     * @param statuses The twitter4j Status objects to write
+     */
+    public void write(List<Status> statuses) {
+    	if (statuses.isEmpty()) {
+    		return;
+    	}
+    	StringBuilder dots = new StringBuilder(statuses.size());
+    	for (Status status : statuses) {
+    		try {
+    			append(status);
+    			dots.append('.');
+    		} catch (Exception e) {
+    			e.printStackTrace();
     		}
+    	}
+    	System.out.print(dots);  // So user can see something's happening
+    	try {
+    		syncIfDue();
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	}
+    }
 
-    		Date date = new Date();
-    		String stringDate = sdf.format(date);
-    		
-    		if (stringCurrentDate==null) {
-    			// first time here
-    			stringCurrentDate = sdf.format(date);
-    			System.out.print(stringCurrentDate+" ");
-    			fos = new FileOutputStream("tweets/tweetArchive-" + stringDate + ext);
-    			pw = new PrintWriter(fos, true);
-    		} else if (!(stringDate.equals(stringCurrentDate))) {
-    			// new file
-    			System.out.print("\n"+stringDate+" ");
-    			stringCurrentDate = sdf.format(date);
-    			fos.close();
-    			pw.close();
-    			fos = new FileOutputStream("tweets/tweetArchive-" + stringDate + ext);
-    			pw = new PrintWriter(fos, true);
+    /**
+     * Writes a batch of tweets already serialized, e.g. by an EncodingPipeline, in the order given.
+     * @param encoded The serialized tweets to write
+     */
+    public void writeEncoded(List<EncodedStatus> encoded) {
+    	if (encoded.isEmpty()) {
+    		return;
+    	}
+    	StringBuilder dots = new StringBuilder(encoded.size());
+    	for (EncodedStatus line : encoded) {
+    		if (line == EncodedStatus.FAILED) {
+    			continue;
     		}
-    		
-    		Status quotedStatus = status.getQuotedStatus();
-    		Status retweetStatus = status.getRetweetedStatus();
-    		
-    		//
-    		// if quoted, or a retweet use the original tweet instead
-    		//
-    		// I wonder why a recursive approach wasn't used instead of checking each 
-    		// but only to a single-layer of quoting/retweeting.  Maybe because the counts
-    		// are included as separate properties?
-    		//
-    		if (quotedStatus!=null) {
-    			status = quotedStatus;
+    		try {
+    			append(line);
+    			dots.append('.');
+    		} catch (Exception e) {
+    			e.printStackTrace();
     		}
-    		if (retweetStatus!=null) {
-    			status = retweetStatus;
- 			}    		
-    		
-    		System.out.print(".");  // So user can see something's happening
-    		
-    		
-    		// Use Adapter to serialize to JSON in a manner specific to this sample.
-
-    		Jsonb jsonb = JsonbBuilder.create(new JsonbConfig()
-    				.withNullValues(true)
-    			    .withAdapters(new StatusAdapter()));
-    		
-    		pw.println(jsonb.toJson(status,Status.class));
-
-    	} catch (Exception e) {
+    	}
+    	System.out.print(dots);  // So user can see something's happening
+    	try {
+    		syncIfDue();
+    	} catch (IOException e) {
     		e.printStackTrace();
-    	} 
-  }
+    	}
+    }
+
+    /**
+     * Writes out buffered tweets if the sync interval has passed, and closes the current file if it
+     * has been open for rollMillis, even though nothing new arrived.  Meant to be called periodically,
+     * so that the last file before the stream goes quiet is closed, indexed and spooled in time.
+     */
+    public void syncIfDue() throws IOException {
+    	if (out != null && System.currentTimeMillis() - openedAt >= rollMillis) {
+    		closeFile();
+    		System.out.print("\n");
+    		return;
+    	}
+    	if (out != null && unsyncedRecords > 0
+    			&& (unsyncedRecords >= syncEveryRecords || System.currentTimeMillis() - lastSync >= syncEveryMillis)) {
+    		sync();
+    	}
+    }
 
     /**
      * Closes the last open file
      * @throws Exception Anything bad that happens
      */
     public void close() throws Exception {
-    	fos.close();
-    	pw.close();
+    	closeFile();
+    }
+
+    private void append(Status status) throws Exception {
+    	append(EncodedStatus.encode(jsonb, status));
+    }
+
+    private void append(EncodedStatus encoded) throws Exception {
+    	long now = System.currentTimeMillis();
+    	if (out != null && (now - openedAt >= rollMillis || bytesWritten >= rollBytes
+    			|| (rollRecords > 0 && index.getRecords() >= rollRecords))) {
+    		closeFile();
+    		System.out.print("\n");
+    	}
+    	if (out == null) {
+    		openFile(now);
+    	}
+
+    	index.add(bytesWritten, encoded.statusId, encoded.createdAt);
+    	out.write(encoded.line);
+    	out.write(NEWLINE);
+    	bytesWritten += encoded.line.length + NEWLINE.length;
+    	unsyncedRecords++;
+    }
+
+    private void openFile(long now) throws IOException {
+    	String stringDate = fileNameFormatter.format(Instant.ofEpochMilli(now));
+    	String name = "tweetArchive-" + stringDate;
+    	String suffix = ext + (gzip ? ".gz" : "");
+    	File file = new File(fileDir, name + suffix);
+    	// Busy streams can fill more than one file a second
+    	for (int n = 1; file.exists(); n++) {
+    		file = new File(fileDir, name + "_" + n + suffix);
+    	}
+    	System.out.print(stringDate + " ");
+    	fos = new FileOutputStream(file);
+    	channel = fos.getChannel();
+    	BufferedOutputStream buffered = new BufferedOutputStream(fos, BUFFER_SIZE);
+    	out = gzip ? new GZIPOutputStream(buffered, BUFFER_SIZE, true) : buffered;
+    	currentFile = file;
+    	openedAt = now;
+    	bytesWritten = 0;
+    	index = new TweetFileIndex(file, indexEvery, gzip);
+    }
+
+    private void sync() throws IOException {
+    	out.flush();
+    	if (fsync) {
+    		channel.force(false);
+    	}
+    	unsyncedRecords = 0;
+    	lastSync = System.currentTimeMillis();
+    }
+
+    private void closeFile() throws IOException {
+    	if (out != null) {
+    		if (gzip) {
+    			((GZIPOutputStream) out).finish();
+    		}
+    		sync();
+    		out.close();
+    		out = null;
+    		channel = null;
+    		fos = null;
+    		index.write(bytesWritten);
+    		if (spool != null) {
+    			spool.publish(currentFile);
+    		}
+    	}
     }
 	
 }
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.twitter4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+import twitter4j.Status;
+import twitter4j.StatusListener;
+import twitter4j.TwitterObjectFactory;
+
+/**
+ * Replays tweets captured earlier by the snatcher (the ".dat" or ".dat.gz" files it writes, or files
+ * in the same format from a generator) as if they were arriving from Twitter, so the snatcher can be
+ * driven offline at a chosen rate.
+ * <p>
+ * Tweets are delivered at <code>rate</code> per second on average (0 for as fast as possible).  A burst
+ * profile multiplies the rate for part of each period, and jitter randomly stretches or shrinks each
+ * gap between tweets by up to the given fraction, seeded so runs can be repeated.  The files are played
+ * through <code>loops</code> times, in name order, with their original status IDs.
+ */
+public class ReplayStatusSource implements StatusSource {
+
+	private static final DateTimeFormatter captureFormat =
+			DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss z", Locale.ENGLISH);
+	private static final DateTimeFormatter twitterFormat =
+			DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss Z yyyy", Locale.ENGLISH);
+	// If we fall further behind schedule than this, stop trying to catch up
+	private static final long MAX_LAG_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final List<File> files;
+	private final double rate;
+	private final double burstMultiplier;
+	private final long burstMillis;
+	private final long burstPeriodMillis;
+	private final double jitter;
+	private final int loops;
+	private final Random random;
+
+	private volatile boolean stopped = false;
+	private volatile boolean finished = false;
+	private Thread thread;
+	private long skipped = 0;
+
+	/**
+	 * @param input A capture file, or a directory of them
+	 * @param rate Average tweets per second, 0 for as fast as possible
+	 * @param burst Burst profile "multiplier:durationMillis:periodMillis", e.g. "10:5000:60000" for ten
+	 *        times the rate during the first five seconds of every minute, or null for none
+	 * @param jitter Largest fraction (0 to 1) by which any gap between tweets is randomly changed
+	 * @param loops How many times to play the files through
+	 * @param seed Seed for the jitter
+	 */
+	public ReplayStatusSource(File input, double rate, String burst, double jitter, int loops, long seed) {
+		this.files = captureFiles(input);
+		this.rate = rate;
+		if (burst != null && !burst.isEmpty()) {
+			String[] parts = burst.split(":");
+			if (parts.length != 3) {
+				throw new IllegalArgumentException("Burst profile must be multiplier:durationMillis:periodMillis, not " + burst);
+			}
+			this.burstMultiplier = Double.parseDouble(parts[0]);
+			this.burstMillis = Long.parseLong(parts[1]);
+			this.burstPeriodMillis = Long.parseLong(parts[2]);
+		} else {
+			this.burstMultiplier = 1;
+			this.burstMillis = 0;
+			this.burstPeriodMillis = 1;
+		}
+		this.jitter = jitter;
+		this.loops = loops;
+		this.random = new Random(seed);
+	}
+
+	@Override
+	public void start(final StatusListener listener) throws Exception {
+		if (files.isEmpty()) {
+			throw new IllegalArgumentException("No capture files to replay");
+		}
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					replay(listener);
+				} catch (Exception e) {
+					listener.onException(e);
+				} finally {
+					finished = true;
+				}
+			}
+		}, "tweet-replay");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void stop() {
+		stopped = true;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	@Override
+	public boolean isFinished() {
+		return finished;
+	}
+
+	private void replay(StatusListener listener) throws IOException {
+		long start = System.nanoTime();
+		long next = start;
+		for (int loop = 0; loop < loops && !stopped; loop++) {
+			for (File file : files) {
+				BufferedReader br = open(file);
+				try {
+					String line;
+					while (!stopped && (line = br.readLine()) != null) {
+						Status status = toStatus(line);
+						if (status == null) {
+							continue;
+						}
+						if (rate > 0) {
+							next = pace(start, next);
+						}
+						listener.onStatus(status);
+					}
+				} finally {
+					br.close();
+				}
+			}
+		}
+		if (skipped > 0) {
+			System.out.println("\nReplay skipped " + skipped + " unreadable lines");
+		}
+	}
+
+	/**
+	 * Waits until the next tweet is due
+	 * @return When the tweet after that is due
+	 */
+	private long pace(long start, long due) {
+		double currentRate = rate;
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(due - start);
+		if (elapsedMillis % burstPeriodMillis < burstMillis) {
+			currentRate *= burstMultiplier;
+		}
+		double gap = 1e9 / currentRate;
+		if (jitter > 0) {
+			gap *= 1 + jitter * (2 * random.nextDouble() - 1);
+		}
+		long now = System.nanoTime();
+		if (now - due > MAX_LAG_NANOS) {
+			due = now;
+		}
+		while (!stopped && due - now > 0) {
+			LockSupport.parkNanos(due - now);
+			now = System.nanoTime();
+		}
+		return due + (long) gap;
+	}
+
+	/**
+	 * @return The Status for one line of a capture file, or null if the line can't be read
+	 */
+	private Status toStatus(String line) {
+		try {
+			return parseCapture(line);
+		} catch (Exception e) {
+			skipped++;
+			return null;
+		}
+	}
+
+	/**
+	 * Rebuilds a twitter4j Status from one line of a capture file, by turning it back into
+	 * the JSON Twitter itself would have sent.
+	 * @param line One line of a capture file
+	 * @return The Status
+	 * @throws Exception If the line isn't a captured tweet
+	 */
+	public static Status parseCapture(String line) throws Exception {
+		JsonReader reader = Json.createReader(new StringReader(line));
+		JsonObject captured = reader.readObject();
+		reader.close();
+		String createdAt = twitterFormat.format(ZonedDateTime.parse(captured.getString("creation_date"), captureFormat));
+		String text = captured.getString("text");
+		JsonArrayBuilder urls = Json.createArrayBuilder();
+		JsonObject expandedUrls = captured.getJsonObject("urls");
+		if (expandedUrls != null) {
+			for (String url : expandedUrls.keySet()) {
+				int start = Math.max(0, text.indexOf(url));
+				urls.add(Json.createObjectBuilder()
+						.add("url", url)
+						.add("expanded_url", expandedUrls.getString(url))
+						.add("display_url", url)
+						.add("indices", Json.createArrayBuilder().add(start).add(start + url.length())));
+			}
+		}
+		JsonObject twitter = Json.createObjectBuilder()
+				.add("id", captured.getJsonNumber("status_id").longValue())
+				.add("created_at", createdAt)
+				.add("text", text)
+				.add("retweet_count", captured.getJsonNumber("retweet_count").longValue())
+				.add("favorite_count", captured.getJsonNumber("favorite_count").longValue())
+				.add("user", Json.createObjectBuilder()
+						.add("id", captured.getJsonNumber("account_id").longValue())
+						.add("name", captured.getString("real_name", ""))
+						.add("screen_name", captured.getString("screen_name", ""))
+						.add("location", captured.getString("location", ""))
+						.add("followers_count", captured.getJsonNumber("followers_count").longValue()))
+				.add("entities", Json.createObjectBuilder().add("urls", urls))
+				.build();
+		return TwitterObjectFactory.createStatus(twitter.toString());
+	}
+
+	private static BufferedReader open(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		if (file.getName().endsWith(".gz")) {
+			in = new GZIPInputStream(in, 64 * 1024);
+		}
+		return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+	}
+
+	private static List<File> captureFiles(File input) {
+		List<File> found = new ArrayList<File>();
+		if (input.isDirectory()) {
+			File[] all = input.listFiles();
+			if (all != null) {
+				Arrays.sort(all);
+				for (File f : all) {
+					if (f.isFile() && (f.getName().endsWith(".dat") || f.getName().endsWith(".dat.gz"))) {
+						found.add(f);
+					}
+				}
+			}
+		} else if (input.isFile()) {
+			found.add(input);
+		}
+		return found;
+	}
+}
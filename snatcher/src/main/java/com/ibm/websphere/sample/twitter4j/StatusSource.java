@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.twitter4j;
+
+import twitter4j.StatusListener;
+
+/**
+ * Somewhere tweets come from: the live Twitter stream, or a replay of tweets captured earlier.
+ * A source delivers tweets on its own thread(s), by calling the listener it was started with.
+ */
+public interface StatusSource {
+
+	/**
+	 * Starts delivering tweets
+	 * @param listener Where to deliver them
+	 * @throws Exception If the source can't be started
+	 */
+	void start(StatusListener listener) throws Exception;
+
+	/**
+	 * Stops delivering tweets and releases any threads the source created
+	 */
+	void stop();
+
+	/**
+	 * @return true once the source has no more tweets to deliver (never, for a live stream)
+	 */
+	boolean isFinished();
+}
@@ -16,31 +16,20 @@
  */
 package com.ibm.websphere.sample.twitter4j;
 
-import java.io.FileInputStream;
-import java.io.InputStream;
-import java.util.Properties;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import com.ibm.websphere.sample.snatcher.StatusQueue;
 
-import twitter4j.FilterQuery;
-import twitter4j.Status;
 import twitter4j.StatusListener;
-import twitter4j.TwitterStream;
-import twitter4j.TwitterStreamFactory;
-import twitter4j.conf.PropertyConfiguration;
 
 /**
- * This class wraps the code needed to interact with Twitter
+ * This class wraps the code needed to interact with Twitter, or with whatever other
+ * StatusSource the tweets should come from.
  * @author Cassandra Newcomer
  * @author David Follis
  */
 public class TwitterManager {
 
-	private String propertiesFile;
-	private String[] filterString;
-	private ConcurrentLinkedQueue<Status> clq;
-	
-	private Properties props = new Properties();
-	private TwitterStream twitterStream;
+	private StatusSource source;
+	private StatusQueue queue;
 	
 	/**
 	 * Constructor that gets the stuff needed to connect to twitter, plus establish a shared queue
@@ -48,39 +37,30 @@ public class TwitterManager {
 	 * @param propFile A properties file containing the authorization tokens to connect to Twitter
 	 * @param filter An array of Strings used to filter tweets (i.e. "MTA","#MTA" or,
 	 * if you want some serious volume, "realDonaldTrump".  
-	 * @param queue The ConcurrentLinkedQueue used to communicate with the thread processing the tweets
+	 * @param statusQueue The StatusQueue used to communicate with the thread processing the tweets
 	 * @throws Exception Anything that goes wrong, probably problems with the properties file
 	 */
-	public TwitterManager(String propFile, String[] filter, ConcurrentLinkedQueue<Status> queue) throws Exception {
-		propertiesFile=propFile;
-		filterString = filter;
-		clq = queue;
-		InputStream input = new FileInputStream(propertiesFile);
-		props.load(input);
+	public TwitterManager(String propFile, String[] filter, StatusQueue statusQueue) throws Exception {
+		this(new TwitterStreamSource(propFile, filter), statusQueue);
+	}
+
+	/**
+	 * Constructor taking tweets from any StatusSource, e.g. a ReplayStatusSource.
+	 * @param statusSource Where the tweets come from
+	 * @param statusQueue The StatusQueue used to communicate with the thread processing the tweets
+	 */
+	public TwitterManager(StatusSource statusSource, StatusQueue statusQueue) {
+		source = statusSource;
+		queue = statusQueue;
 	}
 	
 	/**
 	 * Fires up the Tweet Status Listener and gives it the shared queue to put tweet Status objects in.
-	 * Note that we filter location roughly around New York City.  
+	 * @throws Exception If the source can't be started
 	 */
-	public void start() {
-
-		double NYC_LAT_SOUTH = 39.3682;
-		double NYC_LONG_WEST = -75.9374;
-		double NYC_LAT_NORTH = 42.0329;
-		double NYC_LONG_EAST = -71.7187;
-
-    	PropertyConfiguration pc = new PropertyConfiguration(props);
-    	TwitterStreamFactory tsf = new TwitterStreamFactory(pc);
-    	twitterStream = tsf.getInstance();
-        StatusListener sl = new TwitterStatusListener(clq);
-        twitterStream.addListener(sl);
-        FilterQuery tweetFilterQuery = new FilterQuery();
-        tweetFilterQuery.track(filterString)
-                .locations(new double[][] { new double[] {NYC_LAT_SOUTH, NYC_LONG_WEST}, new double[] {NYC_LAT_NORTH, NYC_LONG_EAST}})
-                .language(new String[] { "en" });
-        twitterStream.filter(tweetFilterQuery);
-
+	public void start() throws Exception {
+        StatusListener sl = new TwitterStatusListener(queue);
+        source.start(sl);
 	}
 	
 	/**
@@ -89,8 +69,14 @@ public class TwitterManager {
 	 * past the end of the user of this class and those threads might hang around forever...
 	 */
 	public void stop() {
-    	twitterStream.cleanUp();
-    	twitterStream.shutdown();
+		source.stop();
+	}
+
+	/**
+	 * @return true once the source has delivered all the tweets it has (never, for a live stream)
+	 */
+	public boolean isFinished() {
+		return source.isFinished();
 	}
 	
 }
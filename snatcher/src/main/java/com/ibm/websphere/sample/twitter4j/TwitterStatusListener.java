@@ -16,10 +16,10 @@
  */
 package com.ibm.websphere.sample.twitter4j;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.ibm.websphere.sample.snatcher.StatusQueue;
 
 import twitter4j.StallWarning;
 import twitter4j.Status;
@@ -34,15 +34,15 @@ import twitter4j.StatusListener;
 public class TwitterStatusListener implements StatusListener {
 
 	private static final Logger log = Logger.getLogger( TwitterStatusListener.class.getName() );
-	private ConcurrentLinkedQueue<Status> clq;
+	private StatusQueue queue;
 	
 	/**
 	 * Constructor to create the listener and save the shared queue used to communicate with whoever
 	 * wants these tweets
-	 * @param concurrentlinkedQueue The shared queue used to communicate with the consumer of these tweets
+	 * @param statusQueue The shared queue used to communicate with the consumer of these tweets
 	 */
-	public TwitterStatusListener(ConcurrentLinkedQueue<Status> concurrentlinkedQueue) {
-		clq = concurrentlinkedQueue;
+	public TwitterStatusListener(StatusQueue statusQueue) {
+		queue = statusQueue;
 	}
 	
 	@Override
@@ -65,11 +65,10 @@ public class TwitterStatusListener implements StatusListener {
 
 	@Override
 	public void onStatus(Status status) {
-		try {			  
-		      clq.add(status);     // put the tweet on the queue
-		      synchronized(clq) {
-		           clq.notify();   // wake up whoever is waiting for these
-		      }
+		try {
+		      queue.put(status);     // put the tweet on the queue, the consumer picks it up from there
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		} catch (Exception e) {
 			System.out.println("exceptional!");  // oh dear...
 			e.printStackTrace();
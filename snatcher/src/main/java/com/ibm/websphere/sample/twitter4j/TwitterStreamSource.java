@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ *
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.twitter4j;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Properties;
+
+import twitter4j.FilterQuery;
+import twitter4j.StatusListener;
+import twitter4j.TwitterStream;
+import twitter4j.TwitterStreamFactory;
+import twitter4j.conf.PropertyConfiguration;
+
+/**
+ * The live Twitter stream, filtered by a set of track strings and roughly to the New York City area.
+ * @author Cassandra Newcomer
+ * @author David Follis
+ */
+public class TwitterStreamSource implements StatusSource {
+
+	private String[] filterString;
+	private Properties props = new Properties();
+	private TwitterStream twitterStream;
+
+	/**
+	 * @param propFile A properties file containing the authorization tokens to connect to Twitter
+	 * @param filter An array of Strings used to filter tweets
+	 * @throws Exception Anything that goes wrong, probably problems with the properties file
+	 */
+	public TwitterStreamSource(String propFile, String[] filter) throws Exception {
+		filterString = filter;
+		InputStream input = new FileInputStream(propFile);
+		try {
+			props.load(input);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Connects to Twitter, filtering location roughly around New York City.
+	 */
+	@Override
+	public void start(StatusListener listener) {
+
+		double NYC_LAT_SOUTH = 39.3682;
+		double NYC_LONG_WEST = -75.9374;
+		double NYC_LAT_NORTH = 42.0329;
+		double NYC_LONG_EAST = -71.7187;
+
+    	PropertyConfiguration pc = new PropertyConfiguration(props);
+    	TwitterStreamFactory tsf = new TwitterStreamFactory(pc);
+    	twitterStream = tsf.getInstance();
+        twitterStream.addListener(listener);
+        FilterQuery tweetFilterQuery = new FilterQuery();
+        tweetFilterQuery.track(filterString)
+                .locations(new double[][] { new double[] {NYC_LAT_SOUTH, NYC_LONG_WEST}, new double[] {NYC_LAT_NORTH, NYC_LONG_EAST}})
+                .language(new String[] { "en" });
+        twitterStream.filter(tweetFilterQuery);
+	}
+
+	/**
+	 * Shuts down the tweet listener (which tears down the threads it creates).
+	 */
+	@Override
+	public void stop() {
+    	twitterStream.cleanUp();
+    	twitterStream.shutdown();
+	}
+
+	@Override
+	public boolean isFinished() {
+		return false;
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.batch.api.BatchProperty;
+import javax.batch.api.chunk.ItemReader;
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+
+import com.ibm.websphere.sample.jpa.TweetDataObject;
+
+/**
+ * This class implements a JSR-352 ItemReader, reading the tweets created within its partition's
+ * range [from, until) a page at a time, in creation date and then status ID order.  Each page
+ * starts after the last tweet handed out, which is also the checkpoint, so the reader picks up
+ * where it left off whether or not AgedTweetWriter has removed the tweets before it yet.  A
+ * checkpoint from before from is ignored, so the reader never strays outside its range.
+ */
+@Dependent
+public class AgedTweetReader implements ItemReader {
+
+	@Inject
+	@BatchProperty(name = "from")
+	String fromProp;
+
+	@Inject
+	@BatchProperty(name = "until")
+	String untilProp;
+
+	@Inject
+	@BatchProperty(name = "pageSize")
+	String pageSizeProp;
+
+	@PersistenceContext(unitName = "tweet-persister")
+	EntityManager entityManager;
+
+	private Date from;
+	private Date until;
+	private int pageSize;
+
+	// The last tweet handed out
+	private Date lastDate;
+	private long lastId;
+
+	private List<TweetDataObject> page = Collections.emptyList();
+	private int next;
+
+	@Override
+	public void open(Serializable checkpoint) throws Exception {
+		from = new Date(Long.parseLong(fromProp));
+		until = new Date(Long.parseLong(untilProp));
+		pageSize = Math.max(1, Integer.parseInt(pageSizeProp));
+		// A retry reopens the reader, so forget what the rolled back chunk read
+		lastDate = null;
+		page = Collections.emptyList();
+		next = 0;
+		if (checkpoint != null) {
+			long[] last = (long[]) checkpoint;
+			if (last[0] >= from.getTime()) {
+				lastDate = new Date(last[0]);
+				lastId = last[1];
+			}
+		}
+	}
+
+	@Override
+	public Object readItem() throws Exception {
+		if (next == page.size()) {
+			page = nextPage();
+			next = 0;
+			if (page.isEmpty()) {
+				return null;
+			}
+		}
+		TweetDataObject tweet = page.get(next++);
+		lastDate = tweet.getCreationDate();
+		lastId = tweet.getStatusId();
+		return tweet;
+	}
+
+	private List<TweetDataObject> nextPage() {
+		TypedQuery<TweetDataObject> query;
+		if (lastDate == null) {
+			query = entityManager.createQuery("SELECT t FROM TweetDataObject t WHERE t.creationDate >= :from"
+					+ " AND t.creationDate < :until ORDER BY t.creationDate, t.statusId", TweetDataObject.class)
+					.setParameter("from", from);
+		} else {
+			// The first condition lets Derby start the index scan at the last tweet, the last one steps past it
+			query = entityManager.createQuery("SELECT t FROM TweetDataObject t WHERE t.creationDate >= :last"
+					+ " AND t.creationDate < :until AND (t.creationDate > :last OR t.statusId > :lastId)"
+					+ " ORDER BY t.creationDate, t.statusId", TweetDataObject.class)
+					.setParameter("last", lastDate).setParameter("lastId", lastId);
+		}
+		return query.setParameter("until", until).setMaxResults(pageSize).getResultList();
+	}
+
+	@Override
+	public Serializable checkpointInfo() throws Exception {
+		return lastDate != null ? new long[] { lastDate.getTime(), lastId } : null;
+	}
+
+	@Override
+	public void close() throws Exception {
+		page = Collections.emptyList();
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import javax.batch.api.BatchProperty;
+import javax.batch.api.chunk.ItemWriter;
+import javax.enterprise.context.Dependent;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+
+import com.ibm.websphere.sample.jpa.AccountDailyRollupKey;
+import com.ibm.websphere.sample.jpa.AccountDailyRollupObject;
+import com.ibm.websphere.sample.jpa.TweetDataObject;
+
+/**
+ * This class implements a JSR-352 ItemWriter for the TweetRetention job.  Each chunk of aged
+ * tweets is folded into the per-account daily rollups and then deleted, along with the tweets'
+ * hashtags, mentions and links, all in the chunk's transaction.
+ * <p>
+ * If archiveDir is set the tweets are first appended to archiveFile in that directory, one JSON
+ * line per tweet in the snatcher's format, so an archive can be read back in by TweetFileProcessing.
+ * Each chunk is its own gzip member, synced to disk before the tweets are deleted.  The checkpoint
+ * holds the archive's length after the last committed chunk, and a restart cuts off anything written
+ * after it, so a chunk that was rolled back doesn't leave its tweets in the archive twice.
+ * <p>
+ * Each chunk fires a TweetsRemovedEvent listing the tweets it removed.
+ */
+@Dependent
+public class AgedTweetWriter implements ItemWriter {
+
+    private static final Logger log = Logger.getLogger( AgedTweetWriter.class.getName() );
+
+    private static final String[] TAG_ENTITIES = { "HashtagObject", "MentionObject", "UrlObject" };
+
+    // Rollup keys are kept in this order, so partitions lock rollup rows in the same order
+    private static final Comparator<AccountDailyRollupKey> ROLLUP_ORDER = Comparator.comparing(AccountDailyRollupKey::getDay)
+            .thenComparingLong(AccountDailyRollupKey::getAccountId).thenComparing(AccountDailyRollupKey::getSentimentLabel);
+
+    @Inject
+    @BatchProperty(name = "archiveDir")
+    String archiveDir;
+
+    @Inject
+    @BatchProperty(name = "archiveFile")
+    String archiveFile;
+
+    @PersistenceContext(unitName = "tweet-persister")
+    EntityManager entityManager;
+
+    @Inject
+    Event<TweetsRemovedEvent> tweetsRemoved;
+
+    private File archive;
+    private long archiveLength;
+    private Jsonb jsonb;
+
+    /**
+     * Where the archive stood after the last committed chunk
+     */
+    static class ArchiveCheckpoint implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String fileName;
+        final long length;
+
+        ArchiveCheckpoint(String fileName, long length) {
+            this.fileName = fileName;
+            this.length = length;
+        }
+    }
+
+    /**
+     * @see ItemWriter#open(Serializable)
+     */
+    public void open(Serializable checkpoint) throws Exception {
+        if (archiveDir == null || archiveDir.isEmpty()) {
+            log.log(Level.FINE, "Not archiving removed tweets");
+            return;
+        }
+        File dir = new File(archiveDir);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create archive directory " + dir);
+        }
+        archive = new File(dir, archiveFile);
+        archiveLength = archive.length();
+        if (checkpoint != null) {
+            ArchiveCheckpoint last = (ArchiveCheckpoint) checkpoint;
+            if (last.fileName.equals(archive.getName()) && archiveLength > last.length) {
+                log.log(Level.INFO, "Cutting " + archive + " back to " + last.length + " bytes, dropping an uncommitted chunk");
+                try (RandomAccessFile raf = new RandomAccessFile(archive, "rw")) {
+                    raf.setLength(last.length);
+                }
+                archiveLength = last.length;
+            }
+        }
+        jsonb = JsonbBuilder.create();
+    }
+
+    /**
+     * @see ItemWriter#close()
+     */
+    public void close() throws Exception {
+        if (jsonb != null) {
+            jsonb.close();
+            jsonb = null;
+        }
+    }
+
+    /**
+     * Archive, fold and delete a chunk of aged tweets
+     */
+    public void writeItems(List<java.lang.Object> items) throws Exception {
+        List<Long> ids = new ArrayList<Long>(items.size());
+        Map<AccountDailyRollupKey, AccountDailyRollupObject> rollups = new TreeMap<AccountDailyRollupKey, AccountDailyRollupObject>(ROLLUP_ORDER);
+        for (int i = 0; i < items.size(); i++) {
+            TweetDataObject tweet = (TweetDataObject) items.get(i);
+            ids.add(tweet.getStatusId());
+            AccountDailyRollupKey key = AccountDailyRollupObject.keyFor(tweet);
+            AccountDailyRollupObject delta = rollups.get(key);
+            if (delta == null) {
+                delta = new AccountDailyRollupObject(key);
+                rollups.put(key, delta);
+            }
+            delta.add(tweet);
+        }
+
+        if (archive != null) {
+            archive(items);
+        }
+
+        // Rows are locked as they are read so partitions folding the same account and day can't lose each other's updates
+        for (Map.Entry<AccountDailyRollupKey, AccountDailyRollupObject> entry : rollups.entrySet()) {
+            AccountDailyRollupObject row = entityManager.find(AccountDailyRollupObject.class, entry.getKey(), LockModeType.PESSIMISTIC_WRITE);
+            if (row != null) {
+                row.add(entry.getValue());
+            } else {
+                entityManager.persist(entry.getValue());
+            }
+        }
+
+        for (String entity : TAG_ENTITIES) {
+            entityManager.createQuery("DELETE FROM " + entity + " g WHERE g.statusId IN :ids").setParameter("ids", ids).executeUpdate();
+        }
+        int deleted = entityManager.createQuery("DELETE FROM TweetDataObject t WHERE t.statusId IN :ids").setParameter("ids", ids).executeUpdate();
+        log.log(Level.FINE, "Removed " + deleted + " tweets into " + rollups.size() + " rollup rows");
+        tweetsRemoved.fire(new TweetsRemovedEvent(ids));
+    }
+
+    /**
+     * Appends the chunk to the archive as a gzip member of its own and syncs it to disk
+     * @param items The chunk's tweets
+     */
+    private void archive(List<java.lang.Object> items) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(archive, true)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(out, 64 * 1024);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), 64 * 1024);
+            for (int i = 0; i < items.size(); i++) {
+                writer.write(jsonb.toJson(items.get(i)));
+                writer.write('\n');
+            }
+            writer.flush();
+            gzip.finish();
+            out.getFD().sync();
+            archiveLength = out.getChannel().position();
+        }
+    }
+
+    /**
+     * @see ItemWriter#checkpointInfo()
+     */
+    public Serializable checkpointInfo() {
+        return archive != null ? new ArchiveCheckpoint(archive.getName(), archiveLength) : null;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * MultiTextFileLineReader's reading between one checkpoint and the next, i.e. one chunk's reads.
+ */
+@Name("com.ibm.websphere.sample.ChunkRead")
+@Label("Tweet Chunk Read")
+@Category({ "Tweet Analyzer", "Reader" })
+@Description("Tweets read by the batch reader for one chunk, from one checkpoint to the next")
+@Threshold("0 ms")
+class ChunkReadEvent extends jdk.jfr.Event {
+
+    @Label("Items")
+    int items;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytes;
+
+    @Label("Current File")
+    String file;
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * TweetObjectJPAWriter wrote a chunk of tweets, up to the flush but not including the commit.
+ */
+@Name("com.ibm.websphere.sample.ChunkWrite")
+@Label("Tweet Chunk Write")
+@Category({ "Tweet Analyzer", "Writer" })
+@Description("Writing one chunk of tweets and its rollup changes, up to the flush")
+@Threshold("0 ms")
+class ChunkWriteEvent extends jdk.jfr.Event {
+
+    @Label("Items")
+    int items;
+
+    @Label("Inserted")
+    int inserted;
+
+    @Label("Updated")
+    int updated;
+
+    @Label("Rollup Rows")
+    int rollupRows;
+}
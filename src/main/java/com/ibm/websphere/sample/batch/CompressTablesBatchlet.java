@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Resource;
+import javax.batch.api.AbstractBatchlet;
+import javax.batch.api.BatchProperty;
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import javax.sql.DataSource;
+
+/**
+ * Gives the space freed by the TweetRetention job's deletes back to the file system.  Derby
+ * reuses a table's free pages but never shrinks its files by itself, so each of the tables the
+ * job deletes from is compressed with SYSCS_UTIL.SYSCS_COMPRESS_TABLE once at least
+ * minFreeFraction of its pages (counting its indexes) are free.  Compressing rebuilds the table
+ * and holds an exclusive lock on it meanwhile, so it is skipped when compress is false.
+ */
+@Dependent
+public class CompressTablesBatchlet extends AbstractBatchlet {
+
+    private static final Logger log = Logger.getLogger( CompressTablesBatchlet.class.getName() );
+
+    private static final String SCHEMA = "TWITTER";
+    private static final String[] TABLES = { "TWEETS", "TWEET_HASHTAGS", "TWEET_MENTIONS", "TWEET_URLS" };
+
+    @Inject
+    @BatchProperty(name = "compress")
+    String compressProp;
+
+    @Inject
+    @BatchProperty(name = "minFreeFraction")
+    String minFreeFractionProp;
+
+    @Resource(lookup = "jdbc/tweetstorage")
+    DataSource dataSource;
+
+    private volatile boolean stopped;
+
+    @Override
+    public String process() throws Exception {
+        if (!Boolean.parseBoolean(compressProp)) {
+            log.log(Level.INFO, "Table compression disabled");
+            return "SKIPPED";
+        }
+        double minFreeFraction = Double.parseDouble(minFreeFractionProp);
+        int compressed = 0;
+        try (Connection conn = dataSource.getConnection()) {
+            for (String table : TABLES) {
+                if (stopped) {
+                    return "STOPPED";
+                }
+                double free = freeFraction(conn, table);
+                if (free < minFreeFraction) {
+                    log.log(Level.INFO, String.format("Not compressing %s.%s, %.0f%% free", SCHEMA, table, free * 100));
+                    continue;
+                }
+                log.log(Level.INFO, String.format("Compressing %s.%s, %.0f%% free", SCHEMA, table, free * 100));
+                try (CallableStatement cs = conn.prepareCall("CALL SYSCS_UTIL.SYSCS_COMPRESS_TABLE(?, ?, 1)")) {
+                    cs.setString(1, SCHEMA);
+                    cs.setString(2, table);
+                    cs.execute();
+                }
+                compressed++;
+            }
+        }
+        return "COMPRESSED " + compressed;
+    }
+
+    /**
+     * @return The fraction of the table's pages, and its indexes', that are free
+     */
+    private double freeFraction(Connection conn, String table) throws SQLException {
+        try (Statement s = conn.createStatement();
+                ResultSet rs = s.executeQuery("SELECT SUM(NUMFREEPAGES), SUM(NUMALLOCATEDPAGES + NUMFREEPAGES)"
+                        + " FROM TABLE (SYSCS_DIAG.SPACE_TABLE('" + SCHEMA + "', '" + table + "')) T")) {
+            if (!rs.next() || rs.getLong(2) == 0) {
+                return 0.0;
+            }
+            return (double) rs.getLong(1) / rs.getLong(2);
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        stopped = true;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * TweetObjectJPAWriter inserted a tweet, or updated the counts of one already stored.
+ */
+@Name("com.ibm.websphere.sample.EntityUpsert")
+@Label("Tweet Upsert")
+@Category({ "Tweet Analyzer", "Writer" })
+@Description("Looking up a tweet and then inserting it, or updating its retweet and favorite counts")
+@Threshold("5 ms")
+class EntityUpsertEvent extends jdk.jfr.Event {
+
+    @Label("Status ID")
+    long statusId;
+
+    @Label("Inserted")
+    @Description("True for a new tweet, false for an update of one already stored")
+    boolean inserted;
+}
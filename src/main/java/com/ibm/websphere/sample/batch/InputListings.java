@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+
+import com.ibm.websphere.sample.jpa.InputListingKey;
+import com.ibm.websphere.sample.jpa.InputListingObject;
+
+/**
+ * Keeps the lists of files MultiTextFileLineReader reads in TWITTER.INPUT_LISTINGS, one per job instance
+ * and listing, so a checkpoint can refer to its listing by digest instead of carrying it.  Listings are
+ * kept for LISTING_DAYS days, long enough for any failed instance worth restarting to be restarted.
+ */
+@ApplicationScoped
+public class InputListings {
+    private final static Logger logger = Logger.getLogger("sample");
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    static final long LISTING_DAYS = 30;
+
+    @PersistenceContext(unitName = "tweet-persister")
+    EntityManager entityManager;
+
+    /**
+     * @param files A list of files
+     * @return The hex SHA-256 of the files' names, sizes and modification times, one file per line, which
+     * changes if any file is added, removed, reordered or rewritten
+     */
+    public static String digest(String[] files) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (String file : files) {
+                File f = new File(file);
+                sha.update((file + '\t' + f.length() + '\t' + f.lastModified() + '\n').getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : sha.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Saves a listing, unless the job instance has saved it already, and forgets listings past keeping
+     * @param jobInstanceId The job instance
+     * @param digest The listing's digest
+     * @param files The files
+     */
+    @Transactional
+    public void save(long jobInstanceId, String digest, String[] files) {
+        InputListingKey key = new InputListingKey(jobInstanceId, digest);
+        if (entityManager.find(InputListingObject.class, key) != null) {
+            return;
+        }
+        Date now = new Date();
+        entityManager.persist(new InputListingObject(key, files, now));
+        int pruned = entityManager.createQuery("DELETE FROM InputListingObject l WHERE l.created < :before")
+                .setParameter("before", new Date(now.getTime() - LISTING_DAYS * MILLIS_PER_DAY)).executeUpdate();
+        if (pruned > 0) {
+            logger.info("Forgot " + pruned + " input listings older than " + LISTING_DAYS + " days");
+        }
+    }
+
+    /**
+     * @param jobInstanceId The job instance
+     * @param digest The listing's digest
+     * @return The files, or null if the listing isn't kept
+     */
+    public String[] load(long jobInstanceId, String digest) {
+        InputListingObject listing = entityManager.find(InputListingObject.class, new InputListingKey(jobInstanceId, digest));
+        return listing != null ? listing.getFiles() : null;
+    }
+}
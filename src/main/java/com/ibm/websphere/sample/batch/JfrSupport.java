@@ -14,21 +14,26 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package com.ibm.websphere.sample.startup;
+package com.ibm.websphere.sample.batch;
 
-import java.util.logging.Logger;
-import javax.batch.operations.JobOperator;
-import javax.batch.runtime.BatchRuntime;
+/**
+ * Says whether this JVM has JDK Flight Recorder, so the batch artifacts only touch their JFR event
+ * classes where it does.  Event classes are only loaded once first used, so on a JVM without JFR
+ * the events are simply never created.
+ */
+final class JfrSupport {
+
+    static final boolean AVAILABLE = detect();
+
+    private JfrSupport() {
+    }
 
-public class TestJobStarter {
-    private final static Logger logger = Logger.getLogger("sample");
-    public void beginJob() {
+    private static boolean detect() {
         try {
-            JobOperator jobOperator = BatchRuntime.getJobOperator();
-            jobOperator.start("TweetFileProcessing", null);
-        } catch (Exception e) {
-            logger.info("Something's wrong with TestJobStarter!");
-            e.printStackTrace();
+            Class<?> recorder = Class.forName("jdk.jfr.FlightRecorder");
+            return (Boolean) recorder.getMethod("isAvailable").invoke(null);
+        } catch (Throwable t) {
+            return false;
         }
     }
 }
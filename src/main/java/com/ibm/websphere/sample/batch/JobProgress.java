@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Where the readers of running jobs publish how far through their input they are, for the job
+ * progress REST resource.  Each reader (one per partition) registers a ReaderProgress and updates
+ * it whenever it checkpoints.  A reader reopened to retry a chunk gets back the ReaderProgress it
+ * registered before, so it is only counted once.  Only the most recent executions are remembered.
+ */
+@ApplicationScoped
+public class JobProgress {
+
+    private static final int MAX_EXECUTIONS = 20;
+
+    /**
+     * One reader's position, as of its last checkpoint
+     */
+    public static class ReaderProgress {
+        private volatile String currentFile;
+        private volatile int fileIndex;
+        private volatile int files;
+        private volatile long totalBytes;
+        private volatile long bytesRead;
+
+        void update(String currentFile, int fileIndex, int files, long totalBytes, long bytesRead) {
+            this.currentFile = currentFile;
+            this.fileIndex = fileIndex;
+            this.files = files;
+            this.totalBytes = totalBytes;
+            this.bytesRead = bytesRead;
+        }
+
+        public String getCurrentFile() {
+            return currentFile;
+        }
+
+        public int getFileIndex() {
+            return fileIndex;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * @return Bytes of input read so far; for gzipped files, only counted once the whole file is read
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+    }
+
+    private final Map<Long, Map<String, ReaderProgress>> executions = new LinkedHashMap<Long, Map<String, ReaderProgress>>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Map<String, ReaderProgress>> eldest) {
+            return size() > MAX_EXECUTIONS;
+        }
+    };
+
+    /**
+     * @param executionId The reader's job execution
+     * @param reader Tells the execution's readers apart, the same each time a reader is opened
+     * @return The ReaderProgress for the reader to keep up to date, new unless it registered before
+     */
+    public synchronized ReaderProgress register(long executionId, String reader) {
+        Map<String, ReaderProgress> readers = executions.get(executionId);
+        if (readers == null) {
+            readers = new LinkedHashMap<String, ReaderProgress>();
+            executions.put(executionId, readers);
+        }
+        ReaderProgress progress = readers.get(reader);
+        if (progress == null) {
+            progress = new ReaderProgress();
+            readers.put(reader, progress);
+        }
+        return progress;
+    }
+
+    /**
+     * @param executionId A job execution
+     * @return Its readers' progress, empty if none have started (or it's been forgotten)
+     */
+    public synchronized List<ReaderProgress> get(long executionId) {
+        Map<String, ReaderProgress> readers = executions.get(executionId);
+        return readers != null ? new ArrayList<ReaderProgress>(readers.values()) : new ArrayList<ReaderProgress>();
+    }
+}
@@ -16,19 +16,27 @@
  */
 package com.ibm.websphere.sample.batch;
 
-import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
 import javax.batch.api.BatchProperty;
 import javax.batch.api.chunk.ItemReader;
+import javax.batch.runtime.context.JobContext;
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 import javax.json.bind.Jsonb;
@@ -40,6 +48,18 @@ import com.ibm.websphere.sample.jpa.TweetDataObject;
 /**
  * An implementation of ItemReader that reads serialized serialized objects from a directory 
  * of files (ending in a specific file extension like ".json") containing such things.
+ * Files ending in the extension plus ".gz" are read too, decompressing them as they are read.
+ * If the inputFiles property is set (a list of files separated by the path separator), just
+ * those files are read, in that order, instead of the whole directory.
+ * The list of files is saved once, through InputListings, when the reader starts; checkpoints
+ * only hold its digest and the position in it, so they stay the same size however many files
+ * there are.  On restart the inputs are listed again, and if they no longer match the digest
+ * (a file was added, removed or rewritten since) the saved listing is read instead, with a warning.
+ * Checkpoints also hold the byte offset reached in the current file, so a restart seeks straight
+ * back to it; gzipped files can't be sought in, so for them the records already read are skipped.
+ * At each checkpoint, how far through the files it has got is published to JobProgress.
+ * Where the JVM has Flight Recorder, FileOpenedEvent and ChunkReadEvent are emitted as files
+ * are opened and at each checkpoint.
  * 
  * @author Cassandra Newcomer
  * @author David Follis
@@ -57,52 +77,80 @@ public class MultiTextFileLineReader implements ItemReader {
 	@BatchProperty(name = "inputExt")
 	String inputExt;
 
+	@Inject
+	@BatchProperty(name = "inputFiles")
+	String inputFiles;
+
+	@Inject
+	JobContext jobContext;
+
+	@Inject
+	JobProgress jobProgress;
+
+	@Inject
+	InputListings inputListings;
+
 	private ReaderState rs;
+	private String[] files;
+
+	private JobProgress.ReaderProgress progress;
+	private long totalBytes;
+	// Size of the files before the current one, and how much of the current one has been read
+	private long bytesBeforeCurrentFile;
+	private long currentFileBytesRead;
+	private boolean currentFileCompressed;
+
+	// Reads since the last checkpoint, for the ChunkReadEvent
+	private ChunkReadEvent chunkRead;
+	private int itemsSinceCheckpoint;
+	private long bytesAtCheckpoint;
 
 
-	private FileReader fr;
-	private BufferedReader br;
+	private LineInput lines;
+	private Jsonb jsonb;
 
 	/**
-	 * An inner class used to contain information needed for a restart.
-	 * We are assuming the contents of the directory don't change across a restart/rollback. 
+	 * A class used to contain information needed for a restart: which listing of files is being
+	 * read, identified by its digest, and how far through it we are, both as a record number and
+	 * as the byte offset just past that record.
 	 */
-	private class ReaderState implements Serializable {
+	private static class ReaderState implements Serializable {
 
-		private static final long serialVersionUID = -5400406421952921947L;
+		private static final long serialVersionUID = 2L;
 
 		// Since we use 0-indexed counting, we want to increment to 0 along with opening the first new file, so start at -1 
 		private static final int NOT_READ_ANYTHING_YET = -1;
 
-		private LinkedList<String> listOfFiles;
+		private String listingDigest;
 		private int currentFileIndex = NOT_READ_ANYTHING_YET;
 		private int currentRecord;
 		private boolean noMoreInputFiles = false;
+		// Bytes of the current file's (uncompressed) text read, -1 if not known
+		private long currentOffset;
 
-		public void listOfFiles(LinkedList<String> l) {
-			listOfFiles = l;
-		}
-		public String[] listOfFiles() {
-			return (String[])listOfFiles.toArray(new String[0]);
-		}
-
-		public void incrementCurrentFileIndex() {
-			++currentFileIndex;
-		}
 		public void incrementCurrentRecord() {
 			++currentRecord;
 		}
 
-		private void writeObject(java.io.ObjectOutputStream stream) throws IOException {
-			stream.writeObject(listOfFiles);
+		private void writeObject(ObjectOutputStream stream) throws IOException {
+			stream.writeUTF(listingDigest);
 			stream.writeInt(currentFileIndex);
 			stream.writeInt(currentRecord);
+			stream.writeBoolean(noMoreInputFiles);
+			stream.writeLong(currentOffset);
 		}
 
-		private void readObject(java.io.ObjectInputStream stream) throws IOException, ClassNotFoundException {
-			listOfFiles = (LinkedList<String>)stream.readObject();
+		private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+			listingDigest = stream.readUTF();
 			currentFileIndex = stream.readInt();
 			currentRecord = stream.readInt();
+			noMoreInputFiles = stream.readBoolean();
+			try {
+				currentOffset = stream.readLong();
+			} catch (EOFException e) {
+				// Checkpointed before offsets were kept, so the records will be skipped instead
+				currentOffset = -1;
+			}
 		}
 
 
@@ -110,19 +158,81 @@ public class MultiTextFileLineReader implements ItemReader {
 
 	@Override
 	public Serializable checkpointInfo() throws Exception {
-		log.log(Level.FINE, "Checkpointing at file index # "+ rs.currentFileIndex +
-				" after record # " + rs.currentRecord);                
+		if (log.isLoggable(Level.FINE)) {
+			log.log(Level.FINE, "Checkpointing at file index # "+ rs.currentFileIndex +
+					" after record # " + rs.currentRecord);                
+		}
 
+		publishProgress();
+		endChunkRead();
 		return rs;
 	}
 
+	private void beginChunkRead() {
+		itemsSinceCheckpoint = 0;
+		bytesAtCheckpoint = bytesBeforeCurrentFile + currentFileBytesRead;
+		if (JfrSupport.AVAILABLE) {
+			chunkRead = new ChunkReadEvent();
+			chunkRead.begin();
+		}
+	}
+
+	private void endChunkRead() {
+		if (chunkRead != null && chunkRead.shouldCommit()) {
+			chunkRead.items = itemsSinceCheckpoint;
+			chunkRead.bytes = bytesBeforeCurrentFile + currentFileBytesRead - bytesAtCheckpoint;
+			chunkRead.file = rs.noMoreInputFiles ? null : files[rs.currentFileIndex];
+			chunkRead.commit();
+		}
+		beginChunkRead();
+	}
+
+	private void publishProgress() {
+		String current = rs.currentFileIndex >= 0 && rs.currentFileIndex < files.length ? files[rs.currentFileIndex] : null;
+		long bytesRead = rs.noMoreInputFiles ? totalBytes : bytesBeforeCurrentFile + currentFileBytesRead;
+		progress.update(current, rs.currentFileIndex, files.length, totalBytes, bytesRead);
+	}
+
+	private void startProgress() {
+		// Partitions read different files, so the listing tells them apart
+		progress = jobProgress.register(jobContext.getExecutionId(), rs.listingDigest);
+		totalBytes = 0;
+		bytesBeforeCurrentFile = 0;
+		for (int i = 0; i < files.length; i++) {
+			long length = new File(files[i]).length();
+			totalBytes += length;
+			if (i < rs.currentFileIndex) {
+				bytesBeforeCurrentFile += length;
+			}
+		}
+		currentFileBytesRead = 0;
+	}
+
+	/**
+	 * Reads a line of the current file, noting the offset just past it for the checkpoint and, for
+	 * plain files, the progress through the file (the position in a gzipped file isn't known).
+	 * @return The line, or null at the end of the file
+	 * @throws IOException For errors reading the file
+	 */
+	private String nextLine() throws IOException {
+		String line = lines.readLine();
+		if (line != null) {
+			rs.currentOffset = lines.getPosition();
+			if (!currentFileCompressed) {
+				currentFileBytesRead = rs.currentOffset;
+			}
+		}
+		return line;
+	}
+
 	@Override
 	public void close() throws Exception {
-		if (br != null) {
-			br.close();
+		if (lines != null) {
+			lines.close();
 		}
-		if (fr != null) {
-			fr.close();
+		if (jsonb != null) {
+			jsonb.close();
+			jsonb = null;
 		}
 
 	}
@@ -130,45 +240,122 @@ public class MultiTextFileLineReader implements ItemReader {
 	@Override
 	public void open(Serializable arg0) throws Exception {
 
+		String[] inputs = listInputs();
+		String digest = InputListings.digest(inputs);
+
 		if (arg0!=null) {
 			// Restarting from a checkpoint, so get our saved status
 			rs = (ReaderState)arg0;
+			files = inputs;
+			if (!digest.equals(rs.listingDigest)) {
+				files = savedListing();
+			}
+			if (rs.currentFileIndex >= files.length) {
+				rs.noMoreInputFiles = true;
+			}
+			startProgress();
+			if (rs.noMoreInputFiles) {
+				log.log(Level.INFO, "No more files");
+				publishProgress();
+				beginChunkRead();
+				return;
+			}
 			// Open up the then-current file to read
-			fr = new FileReader(rs.listOfFiles()[rs.currentFileIndex]);
-			br = new BufferedReader(fr);
-			// Skim through the file to get to last record read at the last checkpoint
-			int recNum = 0;
-			while (recNum < rs.currentRecord) {
-				// Read and discard record we've already processed
-				String line = br.readLine();
-				++recNum;
+			String path = files[rs.currentFileIndex];
+			if (!path.endsWith(".gz") && rs.currentOffset > 0 && atLineStart(path, rs.currentOffset)) {
+				// Seek straight to where the last checkpoint was taken
+				lines = openFile(path, rs.currentOffset);
+				currentFileBytesRead = rs.currentOffset;
+			} else {
+				lines = openFile(path, 0);
+				// Skim through the file to get to last record read at the last checkpoint
+				int recNum = 0;
+				while (recNum < rs.currentRecord) {
+					// Read and discard record we've already processed
+					nextLine();
+					++recNum;
+				}
 			}
 
-			log.log(Level.INFO, "reading file # " + rs.currentFileIndex + ", starting after record # "+rs.currentRecord + " file = " + rs.listOfFiles()[rs.currentFileIndex]);                
+			log.log(Level.INFO, "reading file # " + rs.currentFileIndex + ", starting after record # "+rs.currentRecord + " file = " + files[rs.currentFileIndex]);                
+			beginChunkRead();
 
 		} else {
 			// Starting from scratch
 			rs = new ReaderState();
+			rs.listingDigest = digest;
+			files = inputs;
+			if (inputListings != null) {
+				inputListings.save(jobContext.getInstanceId(), digest, files);
+			}
+			startProgress();
+			setupNextFile();
+			beginChunkRead();
+		}
+	}
 
-			// Get the list of files from the input directory
-			File sourceFolder = new File(inputDir);
-			File[] listOfFiles = sourceFolder.listFiles();
-			if (listOfFiles != null) {
-				LinkedList<String> ll = new LinkedList<String>();
-				for (int i=0;i<listOfFiles.length;++i) {
-					if ((listOfFiles[i].isFile()) && (listOfFiles[i].getName().endsWith(inputExt))) {
-						ll.add(listOfFiles[i].getCanonicalPath());
-					}
+	/**
+	 * Lists the files to read: the inputFiles we were given, in that order, or else the files in
+	 * inputDir with the input extension, sorted so they are listed the same way on restart.
+	 * @return The canonical paths of the files
+	 * @throws IOException For errors resolving a path
+	 */
+	private String[] listInputs() throws IOException {
+		List<String> ll = new ArrayList<String>();
+		if (inputFiles != null && !inputFiles.isEmpty()) {
+			// Just the files we were given, e.g. those the snatcher has newly closed
+			for (String name : inputFiles.split(File.pathSeparator)) {
+				File f = new File(name);
+				if (f.isFile()) {
+					ll.add(f.getCanonicalPath());
+				} else if (!name.isEmpty()) {
+					log.log(Level.WARNING, "Skipping input file " + name + ", it does not exist");
 				}
-				rs.listOfFiles(ll);
-			} else {
-				String excMessage = "Bad input directory. Directory: " + inputDir + " unable to be opened as source of stored tweet files";
-				log.log(Level.SEVERE, excMessage);
-				throw new IllegalArgumentException(excMessage);
 			}
+			return ll.toArray(new String[ll.size()]);
+		}
 
-			setupNextFile();
+		// Get the list of files from the input directory
+		File sourceFolder = new File(inputDir);
+		File[] listOfFiles = sourceFolder.listFiles();
+		if (listOfFiles == null) {
+			String excMessage = "Bad input directory. Directory: " + inputDir + " unable to be opened as source of stored tweet files";
+			log.log(Level.SEVERE, excMessage);
+			throw new IllegalArgumentException(excMessage);
+		}
+		for (int i=0;i<listOfFiles.length;++i) {
+			String name = listOfFiles[i].getName();
+			if ((listOfFiles[i].isFile()) && (name.endsWith(inputExt) || name.endsWith(inputExt + ".gz"))) {
+				ll.add(listOfFiles[i].getCanonicalPath());
+			}
 		}
+		String[] names = ll.toArray(new String[ll.size()]);
+		Arrays.sort(names);
+		return names;
+	}
+
+	/**
+	 * Gets the listing the checkpoint was taken against, when the inputs no longer match it.
+	 * @return The files, which must all still exist from the current one on
+	 */
+	private String[] savedListing() {
+		String[] saved = inputListings != null ? inputListings.load(jobContext.getInstanceId(), rs.listingDigest) : null;
+		if (saved == null) {
+			String excMessage = "The input files have changed since the checkpoint was taken and the listing it was taken against, " +
+					rs.listingDigest + ", is no longer kept";
+			log.log(Level.SEVERE, excMessage);
+			throw new IllegalStateException(excMessage);
+		}
+		log.log(Level.WARNING, "The input files have changed since the checkpoint was taken, so reading the " + saved.length +
+				" files listed when the job started");
+		for (int i = Math.max(rs.currentFileIndex, 0); i < saved.length; i++) {
+			if (!new File(saved[i]).isFile()) {
+				String excMessage = "Input file " + saved[i] + " was removed before it had been read";
+				log.log(Level.SEVERE, excMessage);
+				throw new IllegalStateException(excMessage);
+			}
+		}
+		return saved;
 	}
 
 	/**
@@ -186,18 +373,18 @@ public class MultiTextFileLineReader implements ItemReader {
 
 		while (!rs.noMoreInputFiles && line == null) {
 			try {
-				line = br.readLine();      	
+				line = nextLine();
 				if (line == null) {
 					setupNextFile();
 				} 
 			} catch (IOException iox) {
-				br.close();
-				fr.close();
+				lines.close();
 				throw new RuntimeException("Caught exception in readItem", iox);
 			}
 		}
 		
 		if (line != null) {
+			itemsSinceCheckpoint++;
 			rs.incrementCurrentRecord();
 			return deserialize(line);
 		} else {
@@ -205,8 +392,12 @@ public class MultiTextFileLineReader implements ItemReader {
 		}
 	}
 
-	private TweetDataObject deserialize(String line) {
-		Jsonb jsonb = JsonbBuilder.create();
+	// Package-private for the benchmarks
+	TweetDataObject deserialize(String line) {
+		if (jsonb == null) {
+			// Costly to create, so one for all the lines
+			jsonb = JsonbBuilder.create();
+		}
 		return jsonb.fromJson(line, TweetDataObject.class);
 	}
 
@@ -217,22 +408,160 @@ public class MultiTextFileLineReader implements ItemReader {
 	 */
 	private void setupNextFile() throws IOException {
 		
-		// Close previous readers
-		if (br != null) {
-			br.close();
-		} if (fr != null) {
-			fr.close();
+		// Close previous reader
+		if (lines != null) {
+			lines.close();
 		}
 		
-		if (++rs.currentFileIndex < rs.listOfFiles().length) {
-			String s = rs.listOfFiles()[rs.currentFileIndex];
-			fr = new FileReader(s);
-			br = new BufferedReader(fr);        
+		if (rs.currentFileIndex >= 0) {
+			bytesBeforeCurrentFile += new File(files[rs.currentFileIndex]).length();
+			currentFileBytesRead = 0;
+		}
+		if (++rs.currentFileIndex < files.length) {
+			String s = files[rs.currentFileIndex];
+			FileOpenedEvent opened = null;
+			if (JfrSupport.AVAILABLE) {
+				opened = new FileOpenedEvent();
+				opened.begin();
+			}
+			lines = openFile(s, 0);
+			if (opened != null && opened.shouldCommit()) {
+				opened.path = s;
+				opened.fileIndex = rs.currentFileIndex;
+				opened.size = new File(s).length();
+				opened.compressed = currentFileCompressed;
+				opened.commit();
+			}
 			log.log(Level.INFO, "reading "+s);                
 			rs.currentRecord = 0;  // new file, reset the record number to zero
+			rs.currentOffset = 0;
 		} else {
 			log.log(Level.INFO, "No more files");
 			rs.noMoreInputFiles = true;
 		}
-	}    
+		publishProgress();
+	}
+
+	/**
+	 * Opens a file for reading, decompressing it on the fly if it is gzipped (ends with ".gz").
+	 * @param path The file to open
+	 * @param offset Where to start reading a plain file, 0 for gzipped ones
+	 * @return A reader over the file's lines, in the platform's default encoding like FileReader
+	 * @throws IOException For errors opening the file
+	 */
+	private LineInput openFile(String path, long offset) throws IOException {
+		currentFileCompressed = path.endsWith(".gz");
+		FileInputStream fis = new FileInputStream(path);
+		InputStream in = fis;
+		try {
+			if (currentFileCompressed) {
+				in = new GZIPInputStream(fis, 64 * 1024);
+			} else {
+				fis.getChannel().position(offset);
+			}
+		} catch (IOException e) {
+			fis.close();
+			throw e;
+		}
+		return new LineInput(in, Charset.defaultCharset(), offset);
+	}
+
+	/**
+	 * @return Whether a checkpointed offset still falls just after a line in the file, so it's safe to seek to
+	 */
+	private static boolean atLineStart(String path, long offset) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(path, "r")) {
+			if (offset > raf.length()) {
+				log.log(Level.WARNING, path + " is shorter than when the checkpoint was taken, skipping records instead");
+				return false;
+			}
+			raf.seek(offset - 1);
+			if (raf.read() != '\n') {
+				log.log(Level.WARNING, path + " has changed since the checkpoint was taken, skipping records instead");
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Reads lines of text from a stream, counting the bytes consumed so a restart can seek back to the
+	 * same place.  Lines end with \n or \r\n, and the charset must encode \n as that one byte, as
+	 * UTF-8 and the single-byte charsets do.
+	 */
+	private static class LineInput implements Closeable {
+		private final InputStream in;
+		private final Charset charset;
+		private final byte[] buffer = new byte[16 * 1024];
+		private int next;
+		private int limit;
+		// Holds a line that runs across buffer refills
+		private byte[] line = new byte[4 * 1024];
+		private long position;
+
+		LineInput(InputStream in, Charset charset, long position) {
+			this.in = in;
+			this.charset = charset;
+			this.position = position;
+		}
+
+		/**
+		 * @return The bytes read up to the end of the last line returned
+		 */
+		long getPosition() {
+			return position;
+		}
+
+		/**
+		 * @return The next line, without its line end, or null at the end of the stream
+		 */
+		String readLine() throws IOException {
+			int length = 0;
+			while (true) {
+				if (next == limit) {
+					limit = Math.max(in.read(buffer), 0);
+					next = 0;
+					if (limit == 0) {
+						return length > 0 ? decode(line, 0, length) : null;
+					}
+				}
+				int end = next;
+				while (end < limit && buffer[end] != '\n') {
+					end++;
+				}
+				int n = end - next;
+				position += n;
+				if (end < limit && length == 0) {
+					// The whole line is in the buffer
+					String s = decode(buffer, next, n);
+					next = end + 1;
+					position++;
+					return s;
+				}
+				if (length + n > line.length) {
+					line = Arrays.copyOf(line, Math.max(line.length * 2, length + n));
+				}
+				System.arraycopy(buffer, next, line, length, n);
+				length += n;
+				next = end;
+				if (end < limit) {
+					next++;
+					position++;
+					return decode(line, 0, length);
+				}
+			}
+		}
+
+		private String decode(byte[] bytes, int offset, int length) {
+			if (length > 0 && bytes[offset + length - 1] == '\r') {
+				length--;
+			}
+			return new String(bytes, offset, length, charset);
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
 }
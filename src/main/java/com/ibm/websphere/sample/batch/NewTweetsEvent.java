@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.util.List;
+
+import com.ibm.websphere.sample.jpa.TweetDataObject;
+
+/**
+ * CDI event fired by TweetObjectJPAWriter once per chunk, listing the tweets the chunk
+ * inserted (tweets that were only updated are not included).  Observers interested only
+ * in committed data should observe it with <code>during = TransactionPhase.AFTER_SUCCESS</code>.
+ */
+public class NewTweetsEvent {
+
+    private final List<TweetDataObject> tweets;
+
+    /**
+     * @param tweets The tweets inserted by this chunk
+     */
+    public NewTweetsEvent(List<TweetDataObject> tweets) {
+        this.tweets = tweets;
+    }
+
+    /**
+     * @return The tweets inserted by this chunk
+     */
+    public List<TweetDataObject> getTweets() {
+        return tweets;
+    }
+}
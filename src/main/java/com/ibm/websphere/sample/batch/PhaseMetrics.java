@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latencies and counts for each phase of the chunk loop (read, process, write, commit and the
+ * chunk as a whole), as recorded by one partition's PipelineMetricsListener.
+ */
+public class PhaseMetrics {
+
+    final String partition;
+    final LatencyHistogram read = new LatencyHistogram();
+    final LatencyHistogram process = new LatencyHistogram();
+    final LatencyHistogram write = new LatencyHistogram();
+    final LatencyHistogram commit = new LatencyHistogram();
+    final LatencyHistogram chunk = new LatencyHistogram();
+    final AtomicLong itemsRead = new AtomicLong();
+    final AtomicLong itemsProcessed = new AtomicLong();
+    final AtomicLong itemsFiltered = new AtomicLong();
+    final AtomicLong itemsWritten = new AtomicLong();
+    final AtomicLong errors = new AtomicLong();
+
+    PhaseMetrics(String partition) {
+        this.partition = partition;
+    }
+
+    /**
+     * Adds this partition's figures into a total.
+     * @param total The figures to add to
+     */
+    void addTo(PhaseMetrics total) {
+        read.addTo(total.read);
+        process.addTo(total.process);
+        write.addTo(total.write);
+        commit.addTo(total.commit);
+        chunk.addTo(total.chunk);
+        total.itemsRead.addAndGet(itemsRead.get());
+        total.itemsProcessed.addAndGet(itemsProcessed.get());
+        total.itemsFiltered.addAndGet(itemsFiltered.get());
+        total.itemsWritten.addAndGet(itemsWritten.get());
+        total.errors.addAndGet(errors.get());
+    }
+}
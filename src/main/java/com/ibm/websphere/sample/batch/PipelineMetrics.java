@@ -0,0 +1,250 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+
+import com.ibm.websphere.sample.jpa.JobRunSummaryObject;
+
+/**
+ * Collects the per-phase latencies and counts recorded by PipelineMetricsListener for each job
+ * execution, one PhaseMetrics per partition.  Each execution is published over JMX as a
+ * PipelineMetricsMXBean while it is among the most recent few, and once the job ends its totals
+ * are written to TWITTER.JOB_RUN_SUMMARIES so runs can be compared with each other.
+ */
+@ApplicationScoped
+public class PipelineMetrics {
+    private final static Logger logger = Logger.getLogger("sample");
+
+    private static final int MAX_EXECUTIONS = 10;
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    @PersistenceContext(unitName = "tweet-persister")
+    EntityManager entityManager;
+
+    private final Map<Long, ExecutionMetrics> executions = new LinkedHashMap<Long, ExecutionMetrics>();
+
+    /**
+     * One execution's metrics, across its partitions
+     */
+    public static class ExecutionMetrics implements PipelineMetricsMXBean {
+        private final long executionId;
+        private final long startNanos = System.nanoTime();
+        private final Date started = new Date();
+        private final List<PhaseMetrics> partitions = new CopyOnWriteArrayList<PhaseMetrics>();
+        private volatile long endNanos = 0;
+        private ObjectName name;
+
+        ExecutionMetrics(long executionId) {
+            this.executionId = executionId;
+        }
+
+        PhaseMetrics total() {
+            PhaseMetrics total = new PhaseMetrics("total");
+            for (PhaseMetrics p : partitions) {
+                p.addTo(total);
+            }
+            return total;
+        }
+
+        double seconds() {
+            return ((endNanos != 0 ? endNanos : System.nanoTime()) - startNanos) / 1e9;
+        }
+
+        @Override
+        public long getExecutionId() {
+            return executionId;
+        }
+
+        @Override
+        public int getPartitions() {
+            return partitions.size();
+        }
+
+        @Override
+        public long getItemsRead() {
+            return total().itemsRead.get();
+        }
+
+        @Override
+        public long getItemsProcessed() {
+            return total().itemsProcessed.get();
+        }
+
+        @Override
+        public long getItemsFiltered() {
+            return total().itemsFiltered.get();
+        }
+
+        @Override
+        public long getItemsWritten() {
+            return total().itemsWritten.get();
+        }
+
+        @Override
+        public long getChunks() {
+            return total().chunk.getCount();
+        }
+
+        @Override
+        public long getErrors() {
+            return total().errors.get();
+        }
+
+        @Override
+        public double getItemsPerSecond() {
+            double seconds = seconds();
+            return seconds > 0 ? total().itemsWritten.get() / seconds : 0.0;
+        }
+
+        @Override
+        public Map<String, Double> getLatencyMillis() {
+            PhaseMetrics total = total();
+            Map<String, Double> latencies = new LinkedHashMap<String, Double>();
+            addLatencies(latencies, "read", total.read);
+            addLatencies(latencies, "process", total.process);
+            addLatencies(latencies, "write", total.write);
+            addLatencies(latencies, "commit", total.commit);
+            addLatencies(latencies, "chunk", total.chunk);
+            return latencies;
+        }
+
+        @Override
+        public Map<String, Long> getItemsWrittenByPartition() {
+            Map<String, Long> written = new LinkedHashMap<String, Long>();
+            for (PhaseMetrics p : partitions) {
+                written.put(p.partition, p.itemsWritten.get());
+            }
+            return written;
+        }
+
+        private static void addLatencies(Map<String, Double> latencies, String phase, LatencyHistogram h) {
+            latencies.put(phase + ".mean", h.getMean() / NANOS_PER_MILLI);
+            latencies.put(phase + ".p50", h.getPercentile(50) / NANOS_PER_MILLI);
+            latencies.put(phase + ".p90", h.getPercentile(90) / NANOS_PER_MILLI);
+            latencies.put(phase + ".p99", h.getPercentile(99) / NANOS_PER_MILLI);
+            latencies.put(phase + ".p999", h.getPercentile(99.9) / NANOS_PER_MILLI);
+            latencies.put(phase + ".max", h.getMax() / NANOS_PER_MILLI);
+        }
+    }
+
+    /**
+     * Sets up the metrics for a new partition (or the only one) of an execution.
+     * @param executionId The job execution
+     * @return The partition's metrics, for its listener to record into
+     */
+    public synchronized PhaseMetrics register(long executionId) {
+        ExecutionMetrics execution = executions.get(executionId);
+        if (execution == null) {
+            execution = new ExecutionMetrics(executionId);
+            executions.put(executionId, execution);
+            publish(execution);
+            if (executions.size() > MAX_EXECUTIONS) {
+                Long eldest = executions.keySet().iterator().next();
+                unpublish(executions.remove(eldest));
+            }
+        }
+        PhaseMetrics partition = new PhaseMetrics("partition-" + execution.partitions.size());
+        execution.partitions.add(partition);
+        return partition;
+    }
+
+    /**
+     * @param executionId A job execution
+     * @return Its metrics, or null if it recorded none (or has been forgotten)
+     */
+    public synchronized ExecutionMetrics get(long executionId) {
+        return executions.get(executionId);
+    }
+
+    /**
+     * Writes a summary row for an execution that has just ended, in its own transaction.
+     * @param executionId The job execution
+     * @param jobName The job's name
+     * @param batchStatus How it ended
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public void writeSummary(long executionId, String jobName, String batchStatus) {
+        ExecutionMetrics execution = get(executionId);
+        if (execution == null) {
+            return;
+        }
+        execution.endNanos = System.nanoTime();
+        PhaseMetrics total = execution.total();
+
+        JobRunSummaryObject summary = new JobRunSummaryObject(executionId, jobName, batchStatus, execution.started, new Date());
+        summary.setPartitions(execution.partitions.size());
+        summary.setCounts(total.itemsRead.get(), total.itemsProcessed.get(), total.itemsFiltered.get(),
+                total.itemsWritten.get(), total.chunk.getCount(), total.errors.get());
+        summary.setItemsPerSecond(execution.getItemsPerSecond());
+        summary.setReadMicros(micros(total.read.getPercentile(50)), micros(total.read.getPercentile(99)));
+        summary.setProcessMicros(micros(total.process.getPercentile(50)), micros(total.process.getPercentile(99)));
+        summary.setWriteMicros(micros(total.write.getPercentile(50)), micros(total.write.getPercentile(99)));
+        summary.setCommitMicros(micros(total.commit.getPercentile(50)), micros(total.commit.getPercentile(99)));
+        summary.setChunkMicros(micros(total.chunk.getPercentile(50)), micros(total.chunk.getPercentile(99)));
+        entityManager.persist(summary);
+        logger.info("Execution " + executionId + " summary: " + summary);
+    }
+
+    @PreDestroy
+    private synchronized void unpublishAll() {
+        for (ExecutionMetrics execution : executions.values()) {
+            unpublish(execution);
+        }
+        executions.clear();
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+    private void publish(ExecutionMetrics execution) {
+        try {
+            execution.name = new ObjectName("com.ibm.websphere.sample:type=TweetPipeline,execution=" + execution.executionId);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(execution, execution.name);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Unable to register pipeline metrics MBean for execution " + execution.executionId, e);
+            execution.name = null;
+        }
+    }
+
+    private void unpublish(ExecutionMetrics execution) {
+        if (execution.name != null) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.unregisterMBean(execution.name);
+            } catch (Exception e) {
+                logger.log(Level.FINE, "Unable to unregister " + execution.name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.util.List;
+
+import javax.batch.api.chunk.listener.ChunkListener;
+import javax.batch.api.chunk.listener.ItemProcessListener;
+import javax.batch.api.chunk.listener.ItemReadListener;
+import javax.batch.api.chunk.listener.ItemWriteListener;
+import javax.batch.runtime.context.JobContext;
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+
+/**
+ * Times each phase of the chunk loop, to show whether a run is bound by reading, by sentiment
+ * analysis or by database writes and commits.  Item reads and processing are timed per item;
+ * writes, commits (the time from the end of the write to the end of the chunk) and whole chunks
+ * are timed per chunk.  Recording is into the partition's own PhaseMetrics, from PipelineMetrics:
+ * a few nanosecond reads and atomic adds per item, with no logging.
+ */
+@Dependent
+public class PipelineMetricsListener implements ItemReadListener, ItemProcessListener, ItemWriteListener, ChunkListener {
+
+    @Inject
+    JobContext jobContext;
+
+    @Inject
+    PipelineMetrics pipelineMetrics;
+
+    private PhaseMetrics metrics;
+    private long chunkStart;
+    private long readStart;
+    private long processStart;
+    private long writeStart;
+    private long writeEnd;
+
+    private PhaseMetrics metrics() {
+        if (metrics == null) {
+            metrics = pipelineMetrics.register(jobContext.getExecutionId());
+        }
+        return metrics;
+    }
+
+    @Override
+    public void beforeChunk() throws Exception {
+        metrics();
+        chunkStart = System.nanoTime();
+        writeEnd = 0;
+    }
+
+    @Override
+    public void afterChunk() throws Exception {
+        long now = System.nanoTime();
+        metrics.chunk.record(now - chunkStart);
+        if (writeEnd != 0) {
+            metrics.commit.record(now - writeEnd);
+        }
+    }
+
+    @Override
+    public void onError(Exception ex) throws Exception {
+        metrics().errors.incrementAndGet();
+    }
+
+    @Override
+    public void beforeRead() throws Exception {
+        readStart = System.nanoTime();
+    }
+
+    @Override
+    public void afterRead(Object item) throws Exception {
+        if (item != null) {
+            metrics.read.record(System.nanoTime() - readStart);
+            metrics.itemsRead.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onReadError(Exception ex) throws Exception {
+        metrics().errors.incrementAndGet();
+    }
+
+    @Override
+    public void beforeProcess(Object item) throws Exception {
+        processStart = System.nanoTime();
+    }
+
+    @Override
+    public void afterProcess(Object item, Object result) throws Exception {
+        metrics.process.record(System.nanoTime() - processStart);
+        if (result != null) {
+            metrics.itemsProcessed.incrementAndGet();
+        } else {
+            metrics.itemsFiltered.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onProcessError(Object item, Exception ex) throws Exception {
+        metrics().errors.incrementAndGet();
+    }
+
+    @Override
+    public void beforeWrite(List<Object> items) throws Exception {
+        writeStart = System.nanoTime();
+    }
+
+    @Override
+    public void afterWrite(List<Object> items) throws Exception {
+        writeEnd = System.nanoTime();
+        metrics.write.record(writeEnd - writeStart);
+        metrics.itemsWritten.addAndGet(items.size());
+    }
+
+    @Override
+    public void onWriteError(List<Object> items, Exception ex) throws Exception {
+        metrics().errors.incrementAndGet();
+    }
+}
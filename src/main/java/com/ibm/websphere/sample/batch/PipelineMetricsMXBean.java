@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.util.Map;
+
+/**
+ * The JMX view of one job execution's pipeline metrics (see PipelineMetrics), registered as
+ * <code>com.ibm.websphere.sample:type=TweetPipeline,execution=&lt;executionId&gt;</code>.
+ * Figures are totals across the execution's partitions.
+ */
+public interface PipelineMetricsMXBean {
+
+    long getExecutionId();
+
+    int getPartitions();
+
+    long getItemsRead();
+
+    long getItemsProcessed();
+
+    long getItemsFiltered();
+
+    long getItemsWritten();
+
+    long getChunks();
+
+    long getErrors();
+
+    double getItemsPerSecond();
+
+    /**
+     * @return Latencies in milliseconds, keyed by phase (read, process, write, commit, chunk)
+     * and statistic (mean, p50, p90, p99, p999, max), e.g. "process.p99"
+     */
+    Map<String, Double> getLatencyMillis();
+
+    /**
+     * @return Items written by each partition, showing how evenly the work is spread
+     */
+    Map<String, Long> getItemsWrittenByPartition();
+}
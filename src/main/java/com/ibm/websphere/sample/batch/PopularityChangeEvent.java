@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.util.List;
+
+import com.ibm.websphere.sample.jpa.TweetDataObject;
+
+/**
+ * CDI event fired by TweetObjectJPAWriter once per chunk, listing the tweets that were
+ * inserted or whose popularity went up.  Observers interested only in committed data
+ * should observe it with <code>during = TransactionPhase.AFTER_SUCCESS</code>.
+ */
+public class PopularityChangeEvent {
+
+    private final List<TweetDataObject> tweets;
+
+    /**
+     * @param tweets The inserted or more popular tweets, as written by this chunk
+     */
+    public PopularityChangeEvent(List<TweetDataObject> tweets) {
+        this.tweets = tweets;
+    }
+
+    /**
+     * @return The inserted or more popular tweets, as written by this chunk
+     */
+    public List<TweetDataObject> getTweets() {
+        return tweets;
+    }
+}
@@ -32,7 +32,9 @@ import com.ibm.websphere.sample.watson.SentimentObject;
  * This class implements an ItemProcessor to process Twitter Status objects.
  * Selected fields from the Status object are moved into a JPA persistent object (TweetDataObject).
  * If Watson connection information is available, a SentimentObject will be created based on
- * Watson analysis of the tweet text.
+ * Watson analysis of the tweet text.  Where the JVM has Flight Recorder, calls to Watson taking
+ * longer than the SentimentCallEvent threshold are recorded.  The hashtags, mentions and links
+ * in the text are then picked out by TweetTagExtractor, for the writer to store.
  * 
  * @author Cassandra Newcomer
  * @author David Follis
@@ -73,6 +75,12 @@ public class SentimentAnalysisProcessor implements ItemProcessor {
 		
         // If we're set up to use Watson, get some sentiment analysis done
         if (useWatson) {
+            SentimentCallEvent call = null;
+            if (JfrSupport.AVAILABLE) {
+                call = new SentimentCallEvent();
+                call.begin();
+            }
+            boolean failed = false;
             try {
                 SentimentObject so = la.analyze(to.getTextContent());
                 to.setSentimentObject(so);
@@ -80,8 +88,19 @@ public class SentimentAnalysisProcessor implements ItemProcessor {
             	// Ah well, just use the default SentimentObject (neutral)
                 SentimentObject so = new SentimentObject();
                 to.setSentimentObject(so);
+                failed = true;
+            }
+            if (call != null && call.shouldCommit()) {
+                call.statusId = to.getStatusId();
+                call.sentimentLabel = to.getSentiment().getSentimentLabel();
+                call.failed = failed;
+                call.commit();
             }
         } 
+
+        // Pick out the hashtags, mentions and links now, so the writer just has to insert them
+        to.setTags(TweetTagExtractor.extract(to));
+        to.setExpandedUrls(null);
         
         return to;
 	}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * SentimentAnalysisProcessor asked Watson for the sentiment of a tweet.
+ */
+@Name("com.ibm.websphere.sample.SentimentCall")
+@Label("Sentiment Analysis Call")
+@Category({ "Tweet Analyzer", "Processor" })
+@Description("A call to the Watson Natural Language Understanding service for one tweet")
+@Threshold("20 ms")
+class SentimentCallEvent extends jdk.jfr.Event {
+
+    @Label("Status ID")
+    long statusId;
+
+    @Label("Sentiment Label")
+    String sentimentLabel;
+
+    @Label("Failed")
+    @Description("The call failed and the tweet was given a neutral sentiment")
+    boolean failed;
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+
+import com.ibm.websphere.sample.jpa.SentimentRollupKey;
+import com.ibm.websphere.sample.jpa.SentimentRollupObject;
+
+/**
+ * Fills TWITTER.SENTIMENT_ROLLUPS from TWITTER.TWEETS when it is empty, so a database that had tweets
+ * before the writer kept rollups (like the TweetAnalysisDB shipped with the sample) starts with rollups
+ * covering them, and the deltas the writer adds from then on land on rows that count their tweets.
+ * <p>
+ * Derby's TIMESTAMP holds the server's local time, so the query itself turns each creation time into
+ * UTC epoch seconds and counts the tweets per UTC hour, and each hour then goes into the hour and day
+ * buckets SentimentRollupObject.keyFor gives the writer.  A local time the clocks went back over is
+ * stored the same either side of the change, and is taken as the earlier one, just as JDBC reads it back.
+ */
+@ApplicationScoped
+public class SentimentRollupSeeder {
+    private final static Logger logger = Logger.getLogger("sample");
+
+    private static final int FLUSH_ROWS = 1000;
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000L;
+    private static final DateTimeFormatter SQL_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @PersistenceContext(unitName = "tweet-persister")
+    EntityManager entityManager;
+
+    /**
+     * Seeds the rollups, unless there are some already.  The tweets table is locked while it does, so
+     * writers that are part way through a chunk finish first and writers that start meanwhile wait.
+     * It commits on its own, before the caller goes on to start any jobs.
+     * @return The number of rollup rows created
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public int seedIfEmpty() {
+        entityManager.createNativeQuery("LOCK TABLE TWITTER.TWEETS IN SHARE MODE").executeUpdate();
+        entityManager.createNativeQuery("LOCK TABLE TWITTER.SENTIMENT_ROLLUPS IN EXCLUSIVE MODE").executeUpdate();
+        long existing = entityManager.createQuery("SELECT COUNT(r) FROM SentimentRollupObject r", Long.class).getSingleResult();
+        if (existing > 0) {
+            return 0;
+        }
+
+        String utcSeconds = utcSeconds(ZoneId.systemDefault());
+        @SuppressWarnings("unchecked")
+        List<Object[]> hours = entityManager.createNativeQuery("SELECT UTC_HOUR, SENTIMENT_LABEL, COUNT(*), SUM(SENTIMENT_SCORE),"
+                + " SUM(POPULARITY) FROM (SELECT " + utcSeconds + " / 3600 AS UTC_HOUR, SENTIMENT_LABEL, SENTIMENT_SCORE,"
+                + " POPULARITY FROM TWITTER.TWEETS WHERE CREATION_DATE IS NOT NULL) T GROUP BY UTC_HOUR, SENTIMENT_LABEL")
+                .getResultList();
+        if (hours.isEmpty()) {
+            return 0;
+        }
+
+        Map<SentimentRollupKey, SentimentRollupObject> rollups = new HashMap<SentimentRollupKey, SentimentRollupObject>();
+        long tweets = 0;
+        for (Object[] hour : hours) {
+            Date start = new Date(number(hour[0]).longValue() * MILLIS_PER_HOUR);
+            String label = (String) hour[1];
+            long count = number(hour[2]).longValue();
+            double score = number(hour[3]).doubleValue();
+            long popularity = number(hour[4]).longValue();
+            for (String granularity : new String[] { SentimentRollupObject.HOUR, SentimentRollupObject.DAY }) {
+                SentimentRollupKey key = SentimentRollupObject.keyFor(granularity, start, label);
+                SentimentRollupObject row = rollups.get(key);
+                if (row == null) {
+                    row = new SentimentRollupObject(key);
+                    rollups.put(key, row);
+                }
+                row.add(count, score, popularity);
+            }
+            tweets += count;
+        }
+
+        int persisted = 0;
+        for (SentimentRollupObject row : rollups.values()) {
+            entityManager.persist(row);
+            if (++persisted % FLUSH_ROWS == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        logger.info("Seeded " + persisted + " sentiment rollup rows from " + tweets + " existing tweets");
+        return persisted;
+    }
+
+    /**
+     * @param zone The time zone Derby takes TIMESTAMPs to be in, as JDBC does: the JVM's
+     * @return A Derby expression for CREATION_DATE's UTC epoch seconds.  TIMESTAMPDIFF counts the seconds
+     * that passed between two local times, offset changes and all, so it counts them from the epoch's
+     * local time.
+     */
+    private static String utcSeconds(ZoneId zone) {
+        LocalDateTime epoch = LocalDateTime.ofInstant(Instant.EPOCH, zone);
+        return "{fn TIMESTAMPDIFF(SQL_TSI_SECOND, TIMESTAMP('" + epoch.format(SQL_TIMESTAMP) + "'), CREATION_DATE)}";
+    }
+
+    private static Number number(Object value) {
+        return value != null ? (Number) value : Integer.valueOf(0);
+    }
+}
@@ -30,6 +30,8 @@ public class SimpleJobListener extends AbstractJobListener {
 
     @Inject JobContext ctx;
 
+    @Inject PipelineMetrics pipelineMetrics;
+
     /**
      * @see AbstractJobListener#AbstractJobListener()
      */
@@ -52,6 +54,11 @@ public class SimpleJobListener extends AbstractJobListener {
     @Override
     public void afterJob() {
         logger.warning("Job (instance,execution) = (" + ctx.getInstanceId() + "," + ctx.getExecutionId() + ") is finished execution.");
+        try {
+            pipelineMetrics.writeSummary(ctx.getExecutionId(), ctx.getJobName(), String.valueOf(ctx.getBatchStatus()));
+        } catch (Exception e) {
+            logger.info("Unable to write the run summary: " + e);
+        }
     }
 
 }
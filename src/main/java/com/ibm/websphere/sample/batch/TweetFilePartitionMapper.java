@@ -0,0 +1,234 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.batch.api.BatchProperty;
+import javax.batch.api.partition.PartitionMapper;
+import javax.batch.api.partition.PartitionPlan;
+import javax.batch.api.partition.PartitionPlanImpl;
+import javax.batch.runtime.context.JobContext;
+import javax.batch.runtime.context.StepContext;
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+
+/**
+ * Splits the tweet files to read into a number of partitions, each read, analyzed and written
+ * on its own thread.  The files are the inputFiles given, or else those in inputDir, just as
+ * MultiTextFileLineReader would pick them.  They are dealt out biggest first to whichever
+ * partition has the fewest bytes so far, so the partitions finish at about the same time, and
+ * each partition is handed its share through the inputFiles property of its plan.
+ * <p>
+ * There are never more partitions than files.  The files are saved in InputListings, and the
+ * listing's digest, the number of partitions and which partition each file went to in the step's
+ * persistent user data, so a restart hands each partition the same share of the files the job
+ * started with, however many files are there by then, and it can pick up from its own checkpoint.
+ */
+@Dependent
+public class TweetFilePartitionMapper implements PartitionMapper {
+
+	private static final Logger log = Logger.getLogger( TweetFilePartitionMapper.class.getName() );
+
+	@Inject
+	@BatchProperty(name = "inputDir")
+	String inputDir;
+
+	@Inject
+	@BatchProperty(name = "inputExt")
+	String inputExt;
+
+	@Inject
+	@BatchProperty(name = "inputFiles")
+	String inputFiles;
+
+	@Inject
+	@BatchProperty(name = "partitions")
+	String partitions;
+
+	@Inject
+	JobContext jobContext;
+
+	@Inject
+	StepContext stepContext;
+
+	@Inject
+	InputListings inputListings;
+
+	@Override
+	public PartitionPlan mapPartitions() throws Exception {
+		List<File> files;
+		int count;
+		int[] assigned;
+		Properties planned = (Properties) stepContext.getPersistentUserData();
+		if (planned != null) {
+			files = savedFiles(planned.getProperty("listing"));
+			count = Integer.parseInt(planned.getProperty("partitions"));
+			assigned = parseAssigned(planned.getProperty("assigned"), files.size());
+			log.log(Level.INFO, "Restarting the " + count + " partitions planned for the " + files.size() + " files listed when the job started");
+		} else {
+			files = listFiles();
+			count = Math.max(1, Math.min(files.size(), parsePartitions()));
+			assigned = deal(files, count);
+			String[] paths = new String[files.size()];
+			StringBuilder partitionOf = new StringBuilder();
+			for (int i = 0; i < paths.length; i++) {
+				paths[i] = files.get(i).getPath();
+				partitionOf.append(i > 0 ? "," : "").append(assigned[i]);
+			}
+			String digest = InputListings.digest(paths);
+			inputListings.save(jobContext.getInstanceId(), digest, paths);
+			planned = new Properties();
+			planned.setProperty("listing", digest);
+			planned.setProperty("partitions", String.valueOf(count));
+			planned.setProperty("assigned", partitionOf.toString());
+			stepContext.setPersistentUserData(planned);
+		}
+
+		List<List<File>> shares = new ArrayList<List<File>>();
+		long[] bytes = new long[count];
+		for (int i = 0; i < count; i++) {
+			shares.add(new ArrayList<File>());
+		}
+		for (int i = 0; i < files.size(); i++) {
+			shares.get(assigned[i]).add(files.get(i));
+			bytes[assigned[i]] += files.get(i).length();
+		}
+
+		Properties[] props = new Properties[count];
+		for (int i = 0; i < count; i++) {
+			List<File> share = shares.get(i);
+			// Read each share oldest file first, as an unpartitioned run would
+			Collections.sort(share);
+			List<String> paths = new ArrayList<String>();
+			for (File f : share) {
+				paths.add(f.getPath());
+			}
+			props[i] = new Properties();
+			// A lone separator rather than nothing, so the reader reads no files instead of the whole directory
+			props[i].setProperty("inputFiles", paths.isEmpty() ? File.pathSeparator : String.join(File.pathSeparator, paths));
+			log.log(Level.INFO, "Partition " + i + " reads " + share.size() + " files, " + bytes[i] + " bytes");
+		}
+
+		PartitionPlanImpl plan = new PartitionPlanImpl();
+		plan.setPartitions(count);
+		plan.setThreads(count);
+		plan.setPartitionsOverride(false);
+		plan.setPartitionProperties(props);
+		return plan;
+	}
+
+	/**
+	 * Deals the files out biggest first, each to whichever partition has the fewest bytes so far
+	 * @return The partition of each file, in the order they are listed
+	 */
+	private static int[] deal(List<File> files, int count) {
+		Integer[] biggestFirst = new Integer[files.size()];
+		for (int i = 0; i < biggestFirst.length; i++) {
+			biggestFirst[i] = i;
+		}
+		Arrays.sort(biggestFirst, Comparator.comparingLong((Integer i) -> files.get(i).length()).reversed());
+		int[] assigned = new int[files.size()];
+		long[] bytes = new long[count];
+		for (int f : biggestFirst) {
+			int smallest = 0;
+			for (int i = 1; i < count; i++) {
+				if (bytes[i] < bytes[smallest]) {
+					smallest = i;
+				}
+			}
+			assigned[f] = smallest;
+			bytes[smallest] += files.get(f).length();
+		}
+		return assigned;
+	}
+
+	private static int[] parseAssigned(String partitionOf, int files) {
+		int[] assigned = new int[files];
+		if (files > 0) {
+			String[] parts = partitionOf.split(",");
+			for (int i = 0; i < files; i++) {
+				assigned[i] = Integer.parseInt(parts[i]);
+			}
+		}
+		return assigned;
+	}
+
+	private int parsePartitions() {
+		try {
+			return partitions == null || partitions.isEmpty() ? 1 : Integer.parseInt(partitions);
+		} catch (NumberFormatException e) {
+			log.log(Level.WARNING, "Bad partitions value " + partitions + ", using 1");
+			return 1;
+		}
+	}
+
+	/**
+	 * @param digest The digest of the listing saved when the job started
+	 * @return Its files, in the order they were listed
+	 */
+	private List<File> savedFiles(String digest) {
+		String[] saved = inputListings.load(jobContext.getInstanceId(), digest);
+		if (saved == null) {
+			String excMessage = "The input listing " + digest + " the partitions were planned from is no longer kept";
+			log.log(Level.SEVERE, excMessage);
+			throw new IllegalStateException(excMessage);
+		}
+		List<File> files = new ArrayList<File>(saved.length);
+		for (String path : saved) {
+			files.add(new File(path));
+		}
+		return files;
+	}
+
+	private List<File> listFiles() throws Exception {
+		List<File> files = new ArrayList<File>();
+		if (inputFiles != null && !inputFiles.isEmpty()) {
+			for (String name : inputFiles.split(File.pathSeparator)) {
+				File f = new File(name);
+				if (f.isFile()) {
+					files.add(f.getCanonicalFile());
+				} else if (!name.isEmpty()) {
+					log.log(Level.WARNING, "Skipping input file " + name + ", it does not exist");
+				}
+			}
+			return files;
+		}
+		File[] listOfFiles = new File(inputDir).listFiles();
+		if (listOfFiles == null) {
+			String excMessage = "Bad input directory. Directory: " + inputDir + " unable to be opened as source of stored tweet files";
+			log.log(Level.SEVERE, excMessage);
+			throw new IllegalArgumentException(excMessage);
+		}
+		Arrays.sort(listOfFiles);
+		for (File f : listOfFiles) {
+			String name = f.getName();
+			if (f.isFile() && (name.endsWith(inputExt) || name.endsWith(inputExt + ".gz"))) {
+				files.add(f.getCanonicalFile());
+			}
+		}
+		return files;
+	}
+}
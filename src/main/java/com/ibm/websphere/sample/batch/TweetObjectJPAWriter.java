@@ -17,24 +17,51 @@
 package com.ibm.websphere.sample.batch;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.batch.api.BatchProperty;
 import javax.batch.api.chunk.ItemWriter;
 import javax.enterprise.context.Dependent;
+import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
+import com.ibm.websphere.sample.jpa.SentimentRollupKey;
+import com.ibm.websphere.sample.jpa.SentimentRollupObject;
 import com.ibm.websphere.sample.jpa.TweetDataObject;
+import com.ibm.websphere.sample.jpa.TweetTagObject;
+import com.ibm.websphere.sample.trending.TrendTracker;
+import com.ibm.websphere.sample.trending.TrendWindows;
+import com.ibm.websphere.sample.watson.SentimentObject;
 
 
 /**
  * This class implements a JSR-352 ItemWriter.  It receives a list of objects from an
  * ItemProcessor and writes them into a database using JPA.
+ * Along with the tweets themselves, the hourly and daily sentiment rollups are updated
+ * with the changes made by each chunk, within the same transaction.  A newly inserted tweet's
+ * hashtags, mentions and links (see TweetTagExtractor) are inserted with it.
+ * Each chunk also fires a PopularityChangeEvent listing the tweets it inserted or made more popular,
+ * and a NewTweetsEvent listing just the tweets it inserted.
+ * The hashtags, accounts and words of the inserted tweets are counted by a TrendTracker, which merges
+ * them into the hourly trend sketches every trendFlushItems tweets (0 turns it off) and keeps the
+ * rest in this writer's checkpoint.
+ * Where the JVM has Flight Recorder, each chunk's write and commit and any slow upsert of a
+ * single tweet are recorded as ChunkWriteEvent, CommitEvent and EntityUpsertEvent.
  * @author Cassandra Newcomer
  */
 @Dependent
@@ -44,10 +71,16 @@ public class TweetObjectJPAWriter implements ItemWriter {
     @BatchProperty(name = "persistAnalysis")
     String persistAnalysisProp;
     Boolean persistAnalysis;
+
+    @Inject
+    @BatchProperty(name = "trendFlushItems")
+    String trendFlushItemsProp;
+    int trendFlushItems;
     
     @PostConstruct
     private void readProps() {
     	persistAnalysis = Boolean.parseBoolean(persistAnalysisProp);
+    	trendFlushItems = trendFlushItemsProp != null && !trendFlushItemsProp.isEmpty() ? Integer.parseInt(trendFlushItemsProp) : 0;
     }
 
     private static final Logger log = Logger.getLogger( TweetObjectJPAWriter.class.getName() );
@@ -55,6 +88,32 @@ public class TweetObjectJPAWriter implements ItemWriter {
     @PersistenceContext(unitName = "tweet-persister")
     EntityManager entityManager;
 
+    @Resource
+    TransactionSynchronizationRegistry transactionRegistry;
+
+    // Rollup keys are kept in this order, so concurrent writers (partitions, overlapping jobs) lock rollup rows in the same order
+    private static final Comparator<SentimentRollupKey> ROLLUP_ORDER = Comparator.comparing(SentimentRollupKey::getGranularity)
+            .thenComparing(SentimentRollupKey::getBucketStart).thenComparing(SentimentRollupKey::getSentimentLabel);
+
+    // Rollup deltas accumulated over the current chunk, applied before the chunk commits
+    private final Map<SentimentRollupKey, SentimentRollupObject> chunkRollups = new TreeMap<SentimentRollupKey, SentimentRollupObject>(ROLLUP_ORDER);
+
+    // Tweets inserted or made more popular by the current chunk
+    private final List<TweetDataObject> chunkPopularityChanges = new ArrayList<TweetDataObject>();
+
+    // Tweets inserted by the current chunk
+    private final List<TweetDataObject> chunkNewTweets = new ArrayList<TweetDataObject>();
+
+    @Inject
+    Event<PopularityChangeEvent> popularityChanges;
+
+    @Inject
+    Event<NewTweetsEvent> newTweets;
+
+    @Inject
+    TrendWindows trendWindows;
+
+    private TrendTracker trends;
     
     /**
      * Default constructor. 
@@ -68,6 +127,11 @@ public class TweetObjectJPAWriter implements ItemWriter {
     public void open(Serializable arg0) {
         if (!persistAnalysis) {
             log.log(Level.FINE, "Persistence disabled");
+        } else if (trendFlushItems > 0) {
+            trends = new TrendTracker(trendFlushItems);
+            if (arg0 != null) {
+                trends.restore((TrendTracker.Checkpoint) arg0, trendWindows);
+            }
         }
     }
 
@@ -75,6 +139,10 @@ public class TweetObjectJPAWriter implements ItemWriter {
      * @see ItemWriter#close()
      */
     public void close() {
+        if (trends != null) {
+            trends.close(trendWindows);
+            trends = null;
+        }
     }
 
     /**
@@ -84,16 +152,53 @@ public class TweetObjectJPAWriter implements ItemWriter {
         if (persistAnalysis) {
             try {
                 log.log(Level.FINE, "Writing items");
+                chunkRollups.clear();
+                chunkPopularityChanges.clear();
+                chunkNewTweets.clear();
+
+                ChunkWriteEvent chunkWrite = null;
+                if (JfrSupport.AVAILABLE) {
+                    chunkWrite = new ChunkWriteEvent();
+                    chunkWrite.begin();
+                    timeCommit(arg0.size());
+                }
                 
                 // Loop through all the items
                 for (int i = 0; i < arg0.size(); i++) {
 
                     TweetDataObject tw = (TweetDataObject) arg0.get(i);
 
-                    log.log(Level.FINER, "writing tweet "+tw.getTextContent());
-                    
                     persistTweet(tw);
                 }
+
+                int rollupRows = chunkRollups.size();
+                persistRollups();
+                if (trends != null) {
+                    countTrends();
+                }
+                // Surface any clash with a tweet another writer just inserted here, where the chunk can be retried
+                entityManager.flush();
+
+                if (chunkWrite != null && chunkWrite.shouldCommit()) {
+                    chunkWrite.items = arg0.size();
+                    chunkWrite.inserted = chunkNewTweets.size();
+                    chunkWrite.updated = arg0.size() - chunkNewTweets.size();
+                    chunkWrite.rollupRows = rollupRows;
+                    chunkWrite.commit();
+                }
+
+                if (!chunkPopularityChanges.isEmpty()) {
+                    popularityChanges.fire(new PopularityChangeEvent(new ArrayList<TweetDataObject>(chunkPopularityChanges)));
+                    chunkPopularityChanges.clear();
+                }
+                if (!chunkNewTweets.isEmpty()) {
+                    newTweets.fire(new NewTweetsEvent(new ArrayList<TweetDataObject>(chunkNewTweets)));
+                    chunkNewTweets.clear();
+                }
+            } catch (PersistenceException e) {
+                // Left as it is, so the job can retry the chunk if it clashed with another partition
+                log.log(Level.WARNING, "Chunk failed, it may be retried : " + e);
+                throw e;
             } catch (Exception e) {
                 log.log(Level.SEVERE, "Something went wrong : " + e);
                 throw new RuntimeException(e);
@@ -105,7 +210,7 @@ public class TweetObjectJPAWriter implements ItemWriter {
      * @see ItemWriter#checkpointInfo()
      */
     public Serializable checkpointInfo() {
-            return null;
+            return trends != null ? trends.checkpointInfo() : null;
     }
 
     /**
@@ -113,12 +218,21 @@ public class TweetObjectJPAWriter implements ItemWriter {
      * @param newTweet The TweetDataObject containing information about the tweet
      */
     public void persistTweet(TweetDataObject newTweet) {
+        EntityUpsertEvent upsert = null;
+        if (JfrSupport.AVAILABLE) {
+            upsert = new EntityUpsertEvent();
+            upsert.begin();
+        }
         try {
         	
             TweetDataObject loadedTweet = entityManager.find(TweetDataObject.class,  newTweet.getStatusId());
+            if (upsert != null) {
+                upsert.inserted = loadedTweet == null;
+            }
         	
             // If pre-existing, update the retweet/favorite counts
             if (loadedTweet != null) {
+            	long oldPopularity = loadedTweet.getPopularity();
             	if (newTweet.getFavoriteCount() > loadedTweet.getFavoriteCount()) {
             		loadedTweet.setFavoriteCount(newTweet.getFavoriteCount());
             	}
@@ -126,15 +240,127 @@ public class TweetObjectJPAWriter implements ItemWriter {
                 	loadedTweet.setRetweetCount(newTweet.getRetweetCount());
                 }
                 entityManager.merge(loadedTweet);
+                addToRollups(loadedTweet, 0, 0.0, loadedTweet.getPopularity() - oldPopularity);
+                if (loadedTweet.getPopularity() > oldPopularity) {
+                    chunkPopularityChanges.add(loadedTweet);
+                }
             } else {
                 entityManager.persist(newTweet);
+                // Batched with the chunk's other inserts into the same table when the chunk is flushed
+                List<TweetTagObject> tags = newTweet.getTags();
+                if (tags != null) {
+                    for (int i = 0; i < tags.size(); i++) {
+                        entityManager.persist(tags.get(i));
+                    }
+                }
+                Double score = newTweet.getSentiment() != null ? newTweet.getSentiment().getSentimentScore() : null;
+                addToRollups(newTweet, 1, score != null ? score : 0.0, newTweet.getPopularity());
+                chunkPopularityChanges.add(newTweet);
+                chunkNewTweets.add(newTweet);
             }
+        } catch (PersistenceException e) {
+            throw e;
         } catch (Exception e) {
             log.log(Level.SEVERE, "Something went wrong persisting the tweets. Caught exception " + e);
             throw new RuntimeException(e);
         }
+        if (upsert != null && upsert.shouldCommit()) {
+            upsert.statusId = newTweet.getStatusId();
+            upsert.commit();
+        }
                 
     }
-    
+
+    /**
+     * Records a CommitEvent timing the completion of the chunk's transaction, if anyone is recording it.
+     * @param items The number of tweets in the chunk
+     */
+    private void timeCommit(final int items) {
+        final CommitEvent commit = new CommitEvent();
+        if (!commit.isEnabled()) {
+            return;
+        }
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+                commit.begin();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                commit.end();
+                if (commit.shouldCommit()) {
+                    commit.items = items;
+                    commit.committed = status == Status.STATUS_COMMITTED;
+                    commit.commit();
+                }
+            }
+        });
+    }
+
+    /**
+     * Counts the chunk's new tweets for the trend sketches, merging them in if enough have been counted.
+     * The tracker is told how the chunk's transaction ended, so only committed counts are kept.
+     */
+    private void countTrends() {
+        final TrendTracker tracker = trends;
+        transactionRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                tracker.completed(status == Status.STATUS_COMMITTED);
+            }
+        });
+        for (int i = 0; i < chunkNewTweets.size(); i++) {
+            tracker.add(chunkNewTweets.get(i));
+        }
+        if (tracker.isFlushDue()) {
+            tracker.flush(trendWindows);
+        }
+    }
+
+    /**
+     * Accumulates the change a tweet makes to its hourly and daily rollup rows
+     * @param tweet The tweet being written
+     * @param count 1 for a newly inserted tweet, 0 for an update
+     * @param score The sentiment score added by this tweet
+     * @param popularity The popularity added by this tweet
+     */
+    private void addToRollups(TweetDataObject tweet, long count, double score, long popularity) {
+        if (tweet.getCreationDate() == null || (count == 0 && popularity == 0)) {
+            return;
+        }
+        SentimentObject sentiment = tweet.getSentiment();
+        String label = sentiment != null ? sentiment.getSentimentLabel() : null;
+        for (String granularity : new String[] { SentimentRollupObject.HOUR, SentimentRollupObject.DAY }) {
+            SentimentRollupKey key = SentimentRollupObject.keyFor(granularity, tweet.getCreationDate(), label);
+            SentimentRollupObject delta = chunkRollups.get(key);
+            if (delta == null) {
+                delta = new SentimentRollupObject(key);
+                chunkRollups.put(key, delta);
+            }
+            delta.add(count, score, popularity);
+        }
+    }
+
+    /**
+     * Applies the rollup deltas accumulated for this chunk.  Rows are locked as they are read
+     * so concurrent writers can't lose each other's updates.
+     */
+    private void persistRollups() {
+        for (Map.Entry<SentimentRollupKey, SentimentRollupObject> entry : chunkRollups.entrySet()) {
+            SentimentRollupObject delta = entry.getValue();
+            SentimentRollupObject row = entityManager.find(SentimentRollupObject.class, entry.getKey(), LockModeType.PESSIMISTIC_WRITE);
+            if (row != null) {
+                row.add(delta.getTweetCount(), delta.getScoreSum(), delta.getPopularitySum());
+            } else {
+                entityManager.persist(delta);
+            }
+        }
+        chunkRollups.clear();
+    }
     
 }
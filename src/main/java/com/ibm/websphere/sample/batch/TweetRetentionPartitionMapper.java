@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Resource;
+import javax.batch.api.BatchProperty;
+import javax.batch.api.partition.PartitionMapper;
+import javax.batch.api.partition.PartitionPlan;
+import javax.batch.api.partition.PartitionPlanImpl;
+import javax.batch.runtime.context.StepContext;
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+
+import com.ibm.websphere.sample.jpa.TweetDataObject;
+
+/**
+ * Splits the tweets older than the retention horizon (the start of the UTC day retentionDays ago)
+ * into ranges of whole days, one per partition, from the oldest tweet's day up to the horizon.
+ * Each partition is handed its range through the from and until properties of its plan (epoch millis),
+ * and the name of the archive file for its tweets.
+ * <p>
+ * The number of partitions is always the partitions property, even if some ranges are then empty.
+ * The partitions' properties are kept in the step's persistent user data and handed out again on
+ * restart, since by then the horizon may have moved and the oldest tweets have been removed, and
+ * recomputed ranges would overlap those the unfinished partitions have checkpoints within.  The tweets are read in creation date order, so the index
+ * on TWITTER.TWEETS.CREATION_DATE is created here if the database predates it.
+ */
+@Dependent
+public class TweetRetentionPartitionMapper implements PartitionMapper {
+
+	private static final Logger log = Logger.getLogger( TweetRetentionPartitionMapper.class.getName() );
+
+	private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+	private static final DateTimeFormatter dayFormatter = DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneOffset.UTC);
+	// Derby's SQL state for an object that already exists
+	private static final String ALREADY_EXISTS = "X0Y32";
+
+	@Inject
+	@BatchProperty(name = "retentionDays")
+	String retentionDays;
+
+	@Inject
+	@BatchProperty(name = "partitions")
+	String partitions;
+
+	@Inject
+	StepContext stepContext;
+
+	@PersistenceContext(unitName = "tweet-persister")
+	EntityManager entityManager;
+
+	@Resource(lookup = "jdbc/tweetstorage")
+	DataSource dataSource;
+
+	@Override
+	public PartitionPlan mapPartitions() throws Exception {
+		createCreationDateIndex();
+
+		Properties[] props = (Properties[]) stepContext.getPersistentUserData();
+		if (props != null) {
+			log.log(Level.INFO, "Restarting the " + props.length + " partitions planned when the job started");
+			return plan(props);
+		}
+
+		int days = Integer.parseInt(retentionDays);
+		if (days < 0) {
+			throw new IllegalArgumentException("retentionDays must be 0 or more, not " + retentionDays);
+		}
+		long now = System.currentTimeMillis();
+		long horizon = now - Math.floorMod(now, MILLIS_PER_DAY) - days * MILLIS_PER_DAY;
+		Date oldest = entityManager.createQuery("SELECT MIN(t.creationDate) FROM TweetDataObject t WHERE t.creationDate < :horizon", Date.class)
+				.setParameter("horizon", new Date(horizon)).getSingleResult();
+		long from = oldest != null ? oldest.getTime() - Math.floorMod(oldest.getTime(), MILLIS_PER_DAY) : horizon;
+		long span = (horizon - from) / MILLIS_PER_DAY;
+
+		int count = parsePartitions();
+		props = new Properties[count];
+		for (int i = 0; i < count; i++) {
+			long start = from + span * i / count * MILLIS_PER_DAY;
+			long end = from + span * (i + 1) / count * MILLIS_PER_DAY;
+			props[i] = new Properties();
+			props[i].setProperty("from", Long.toString(start));
+			props[i].setProperty("until", Long.toString(end));
+			props[i].setProperty("archiveFile", "tweets-" + dayFormatter.format(Instant.ofEpochMilli(start)) + "-to-"
+					+ dayFormatter.format(Instant.ofEpochMilli(end)) + ".dat.gz");
+			log.log(Level.INFO, "Partition " + i + " removes tweets from " + Instant.ofEpochMilli(start) + " until " + Instant.ofEpochMilli(end));
+		}
+
+		stepContext.setPersistentUserData(props);
+		return plan(props);
+	}
+
+	private static PartitionPlan plan(Properties[] props) {
+		PartitionPlanImpl plan = new PartitionPlanImpl();
+		plan.setPartitions(props.length);
+		plan.setThreads(props.length);
+		plan.setPartitionsOverride(false);
+		plan.setPartitionProperties(props);
+		return plan;
+	}
+
+	private int parsePartitions() {
+		try {
+			return partitions == null || partitions.isEmpty() ? 1 : Math.max(1, Integer.parseInt(partitions));
+		} catch (NumberFormatException e) {
+			log.log(Level.WARNING, "Bad partitions value " + partitions + ", using 1");
+			return 1;
+		}
+	}
+
+	private void createCreationDateIndex() throws SQLException {
+		try (Connection conn = dataSource.getConnection(); Statement s = conn.createStatement()) {
+			s.executeUpdate("CREATE INDEX TWITTER." + TweetDataObject.CREATION_DATE_INDEX + " ON TWITTER.TWEETS (CREATION_DATE, STATUS_ID)");
+			log.log(Level.INFO, "Created index " + TweetDataObject.CREATION_DATE_INDEX);
+		} catch (SQLException e) {
+			if (!ALREADY_EXISTS.equals(e.getSQLState())) {
+				throw e;
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.ibm.websphere.sample.jpa.HashtagObject;
+import com.ibm.websphere.sample.jpa.MentionObject;
+import com.ibm.websphere.sample.jpa.TweetDataObject;
+import com.ibm.websphere.sample.jpa.TweetTagObject;
+import com.ibm.websphere.sample.jpa.UrlObject;
+
+/**
+ * Picks the hashtags, mentions and links out of a tweet's text in a single pass, for
+ * TweetObjectJPAWriter to write to their own tables.
+ * <p>
+ * A hashtag is '#' followed by letters, digits and underscores, not all digits, and a mention is '@'
+ * followed by letters, digits and underscores; either only counts at the start of a word, so "&amp;#39;"
+ * and e-mail addresses don't.  Both are lower-cased and stored without the '#' or '@'.  A link runs from
+ * "http://" or "https://" to the next space, less any punctuation ending the sentence, and is expanded
+ * using the snatcher's "urls" when the tweet has them.
+ */
+public class TweetTagExtractor {
+
+    private TweetTagExtractor() {
+    }
+
+    /**
+     * @param tweet The tweet to look through
+     * @return The HashtagObject, MentionObject and UrlObject rows for the tweet, each value once
+     */
+    public static List<TweetTagObject> extract(TweetDataObject tweet) {
+        String text = tweet.getTextContent();
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        List<TweetTagObject> tags = null;
+        int len = text.length();
+        int i = 0;
+        while (i < len) {
+            char c = text.charAt(i);
+            boolean wordStart = i == 0 || !isTermChar(text.codePointBefore(i));
+            if ((c == 'h' || c == 'H') && wordStart && (text.startsWith("http://", i) || text.startsWith("https://", i))) {
+                int start = i;
+                while (i < len && !Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                int end = i;
+                while (end > start && isTrailingPunctuation(text.charAt(end - 1))) {
+                    end--;
+                }
+                tags = add(tags, url(tweet, text.substring(start, end)));
+                continue;
+            }
+            boolean hash = c == '#' || c == '＃';
+            boolean at = c == '@' || c == '＠';
+            if ((hash || at) && wordStart && (i == 0 || text.charAt(i - 1) != '&')) {
+                int start = ++i;
+                boolean digitsOnly = true;
+                while (i < len) {
+                    int cp = text.codePointAt(i);
+                    if (!isTermChar(cp) || (at && cp > 0x7F)) {
+                        break;
+                    }
+                    digitsOnly &= Character.isDigit(cp);
+                    i += Character.charCount(cp);
+                }
+                int length = i - start;
+                if (hash && length > 0 && !digitsOnly && length <= HashtagObject.MAX_LENGTH) {
+                    tags = add(tags, new HashtagObject(tweet.getStatusId(), text.substring(start, i).toLowerCase(Locale.ROOT)));
+                } else if (at && length > 0 && length <= MentionObject.MAX_LENGTH) {
+                    tags = add(tags, new MentionObject(tweet.getStatusId(), text.substring(start, i).toLowerCase(Locale.ROOT)));
+                }
+                continue;
+            }
+            i++;
+        }
+        return tags != null ? tags : Collections.<TweetTagObject>emptyList();
+    }
+
+    private static UrlObject url(TweetDataObject tweet, String url) {
+        if (url.length() > UrlObject.MAX_LENGTH || url.indexOf("://") == url.length() - 3) {
+            return null;
+        }
+        Map<String, String> expandedUrls = tweet.getExpandedUrls();
+        String expanded = expandedUrls != null ? expandedUrls.get(url) : null;
+        if (expanded == null || expanded.length() > UrlObject.MAX_EXPANDED_LENGTH || expanded.indexOf("://") < 0) {
+            expanded = url;
+        }
+        return new UrlObject(tweet.getStatusId(), url, expanded, domain(expanded));
+    }
+
+    /**
+     * @return The lower-cased host name of a link, without any user name or port
+     */
+    static String domain(String url) {
+        int start = url.indexOf("://") + 3;
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        int userInfo = url.lastIndexOf('@', end - 1);
+        if (userInfo >= start) {
+            start = userInfo + 1;
+        }
+        int port = url.indexOf(':', start);
+        if (port >= 0 && port < end) {
+            end = port;
+        }
+        String host = url.substring(start, end).toLowerCase(Locale.ROOT);
+        return host.length() > UrlObject.MAX_LENGTH ? host.substring(0, UrlObject.MAX_LENGTH) : host;
+    }
+
+    private static List<TweetTagObject> add(List<TweetTagObject> tags, TweetTagObject tag) {
+        if (tag == null) {
+            return tags;
+        }
+        if (tags == null) {
+            tags = new ArrayList<TweetTagObject>(4);
+        }
+        // Tweets have a handful at most, so a scan is cheaper than a set
+        for (TweetTagObject other : tags) {
+            if (other.getClass() == tag.getClass() && other.getValue().equals(tag.getValue())) {
+                return tags;
+            }
+        }
+        tags.add(tag);
+        return tags;
+    }
+
+    private static boolean isTermChar(int cp) {
+        return Character.isLetterOrDigit(cp) || cp == '_' || Character.getType(cp) == Character.NON_SPACING_MARK;
+    }
+
+    private static boolean isTrailingPunctuation(char c) {
+        return ".,;:!?'\")]}…".indexOf(c) >= 0;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.batch;
+
+import java.util.List;
+
+/**
+ * CDI event fired by AgedTweetWriter once per chunk, listing the status IDs of the tweets it
+ * removed.  Observers interested only in committed data should observe it with
+ * <code>during = TransactionPhase.AFTER_SUCCESS</code>.
+ */
+public class TweetsRemovedEvent {
+
+    private final List<Long> statusIds;
+
+    /**
+     * @param statusIds The status IDs of the tweets removed by this chunk
+     */
+    public TweetsRemovedEvent(List<Long> statusIds) {
+        this.statusIds = statusIds;
+    }
+
+    /**
+     * @return The status IDs of the tweets removed by this chunk
+     */
+    public List<Long> getStatusIds() {
+        return statusIds;
+    }
+}
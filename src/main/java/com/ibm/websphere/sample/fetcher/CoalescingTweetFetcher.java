@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.fetcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.enterprise.context.ApplicationScoped;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import com.google.gson.Gson;
+import com.ibm.websphere.sample.jpa.TweetDataObject;
+
+/**
+ * Runs the tweet list queries for TweetService off the HTTP threads, on a small pool of
+ * managed threads with a bounded queue.
+ * <p>
+ * Identical requests (same ordering and page) that arrive while a query is already running
+ * share that query and its serialized JSON instead of starting their own.  When the queue is
+ * full, new queries fail straight away with a RejectedExecutionException so the caller can
+ * shed the load rather than pile up work on the database.
+ */
+@ApplicationScoped
+public class CoalescingTweetFetcher {
+    private final static Logger logger = Logger.getLogger("sample");
+
+    // At most this many queries run against the database at once
+    private static final int MAX_CONCURRENT_QUERIES = 4;
+    // And at most this many more wait their turn
+    private static final int MAX_QUEUED_QUERIES = 32;
+
+    @PersistenceContext(unitName = "tweet-persister")
+    EntityManager entityManager;
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    private ThreadPoolExecutor pool;
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<String, CompletableFuture<String>>();
+
+    @PostConstruct
+    private void createPool() {
+        pool = new ThreadPoolExecutor(MAX_CONCURRENT_QUERIES, MAX_CONCURRENT_QUERIES, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED_QUERIES), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    private void shutdownPool() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Fetches a page of tweets as JSON, joining an identical query if one is already running.
+     * @param orderBy "popularity" for most popular first, anything else for newest first
+     * @param first Index of the first tweet to return
+     * @param max Maximum number of tweets to return
+     * @return The JSON, completed exceptionally with a RejectedExecutionException if the queue is full
+     */
+    public CompletableFuture<String> fetch(final String orderBy, final int first, final int max) {
+        final String key = ("popularity".equals(orderBy) ? "popularity" : "creationDate") + ":" + first + ":" + max;
+        final CompletableFuture<String> created = new CompletableFuture<String>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        created.complete(query(orderBy, first, max));
+                    } catch (Throwable t) {
+                        created.completeExceptionally(t);
+                    } finally {
+                        inFlight.remove(key, created);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    private String query(String orderBy, int first, int max) {
+        String jql;
+        if ("popularity".equals(orderBy)) {
+            jql = "SELECT t FROM TweetDataObject as t ORDER BY t.popularity DESC";
+        } else {
+            jql = "SELECT t FROM TweetDataObject as t ORDER BY t.creationDate DESC";
+        }
+
+        List<TweetDataObject> tweets = new ArrayList<TweetDataObject>();
+        try {
+            tweets = entityManager.createQuery(jql, TweetDataObject.class)
+                    .setFirstResult(first).setMaxResults(max).getResultList();
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.info("Something went wrong: " + e);
+        }
+        return new Gson().toJson(tweets);
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.fetcher;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import javax.batch.operations.JobExecutionAlreadyCompleteException;
+import javax.batch.operations.JobExecutionIsRunningException;
+import javax.batch.operations.JobExecutionNotMostRecentException;
+import javax.batch.operations.JobExecutionNotRunningException;
+import javax.batch.operations.JobOperator;
+import javax.batch.operations.JobRestartException;
+import javax.batch.operations.NoSuchJobException;
+import javax.batch.operations.NoSuchJobExecutionException;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.JobInstance;
+import javax.batch.runtime.Metric;
+import javax.batch.runtime.StepExecution;
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.google.gson.Gson;
+import com.ibm.websphere.sample.batch.JobProgress;
+import com.ibm.websphere.sample.startup.IngestScheduler;
+
+/**
+ * Starts, stops and restarts TweetFileProcessing (and starts TweetRetention), and reports how far along their executions are.
+ * <p>
+ * Progress combines the step metrics from the job repository (items read, processed, written and
+ * skipped) with what each reader last published to JobProgress at its checkpoint (current file and
+ * bytes read), giving a read rate and, for running executions, an estimate of the time left.
+ * <p>
+ * These calls are restricted to the JOBSTARTER role (see web.xml).
+ */
+@Dependent
+@Path("jobs")
+public class JobControlService {
+    private final static Logger logger = Logger.getLogger("sample");
+
+    private static final String JOB = "TweetFileProcessing";
+    private static final String RETENTION_JOB = "TweetRetention";
+    private static final int RECENT_INSTANCES = 20;
+
+    @Inject
+    JobProgress jobProgress;
+
+    @Inject
+    IngestScheduler ingestScheduler;
+
+    /**
+     * Lists the most recent executions of the job, newest first.
+     * @return One JSON object per execution
+     */
+    @GET
+    @Path("/")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public String listExecutions() {
+        JobOperator jobOperator = BatchRuntime.getJobOperator();
+        List<Map<String, Object>> executions = new ArrayList<Map<String, Object>>();
+        try {
+            for (JobInstance instance : jobOperator.getJobInstances(JOB, 0, RECENT_INSTANCES)) {
+                for (JobExecution execution : jobOperator.getJobExecutions(instance)) {
+                    executions.add(describe(execution));
+                }
+            }
+        } catch (NoSuchJobException e) {
+            // Never run yet
+        }
+        executions.sort((a, b) -> Long.compare((Long) b.get("executionId"), (Long) a.get("executionId")));
+        return new Gson().toJson(executions);
+    }
+
+    /**
+     * Starts the job, unless an execution of it is already running.
+     * @param inputDir Directory of tweet files to read, defaults to the job's defaultInputDir
+     * @param inputFiles Files to read instead of a whole directory, separated by the path separator
+     * @param useWatson Whether to analyze the tweets with Watson
+     * @param watsonPropFile Watson credentials, defaults to the job's defaultWatsonPropFile
+     * @param persistAnalysis Whether to write the analyzed tweets to the database
+     * @param partitions How many partitions to split the files across, default 1
+     * @param chunkSize Tweets per chunk (checkpoint), default 10
+     * @return The new execution, as JSON, or 409 Conflict if an execution is already running
+     */
+    @POST
+    @Path("/")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public Response start(@QueryParam("inputDir") String inputDir, @QueryParam("inputFiles") String inputFiles,
+            @QueryParam("useWatson") Boolean useWatson, @QueryParam("WatsonPropFile") String watsonPropFile,
+            @QueryParam("persistAnalysis") Boolean persistAnalysis, @QueryParam("partitions") Integer partitions,
+            @QueryParam("chunkSize") Integer chunkSize) {
+
+        Properties parameters = parameters(inputDir, inputFiles, useWatson, watsonPropFile, persistAnalysis, partitions, chunkSize);
+        JobOperator jobOperator = BatchRuntime.getJobOperator();
+        Long executionId = ingestScheduler.startIfIdle(() -> jobOperator.start(JOB, parameters));
+        if (executionId == null) {
+            throw conflict(JOB + " is already running");
+        }
+        logger.info("Started execution " + executionId + " of " + JOB + " with " + parameters);
+        return Response.status(Response.Status.CREATED)
+                .entity(new Gson().toJson(describe(jobOperator.getJobExecution(executionId)))).build();
+    }
+
+    /**
+     * Starts the TweetRetention job, which folds tweets older than the retention horizon into daily
+     * per-account rollups, optionally archives them, deletes them and compresses the tables.
+     * Its executions can be stopped, restarted and followed like the ingest job's.
+     * @param retentionDays Days of tweets to keep, default 90
+     * @param archiveDir Directory to archive the removed tweets to, by default they aren't archived
+     * @param partitions How many partitions to split the aged days across, default 1
+     * @param chunkSize Tweets per chunk (checkpoint), default 500
+     * @param compress Whether to compress the tables afterwards, default true
+     * @return The new execution, as JSON
+     */
+    @POST
+    @Path("/retention")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public Response startRetention(@QueryParam("retentionDays") Integer retentionDays, @QueryParam("archiveDir") String archiveDir,
+            @QueryParam("partitions") Integer partitions, @QueryParam("chunkSize") Integer chunkSize,
+            @QueryParam("compress") Boolean compress) {
+
+        if (retentionDays != null && retentionDays < 0) {
+            throw new BadRequestException("retentionDays must be 0 or more");
+        }
+        Properties parameters = parameters(null, null, null, null, null, partitions, chunkSize);
+        if (retentionDays != null) {
+            parameters.setProperty("retentionDays", retentionDays.toString());
+        }
+        if (archiveDir != null) {
+            parameters.setProperty("archiveDir", archiveDir);
+        }
+        if (compress != null) {
+            parameters.setProperty("compress", compress.toString());
+        }
+        JobOperator jobOperator = BatchRuntime.getJobOperator();
+        long executionId = jobOperator.start(RETENTION_JOB, parameters);
+        logger.info("Started execution " + executionId + " of " + RETENTION_JOB + " with " + parameters);
+        return Response.status(Response.Status.CREATED)
+                .entity(new Gson().toJson(describe(jobOperator.getJobExecution(executionId)))).build();
+    }
+
+    /**
+     * Asks a running execution to stop at its next checkpoint.
+     * @param executionId The execution
+     * @return The execution, as JSON
+     */
+    @POST
+    @Path("/{executionId}/stop")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public String stop(@PathParam("executionId") long executionId) {
+        JobOperator jobOperator = BatchRuntime.getJobOperator();
+        try {
+            jobOperator.stop(executionId);
+        } catch (NoSuchJobExecutionException e) {
+            throw new NotFoundException("No execution " + executionId);
+        } catch (JobExecutionNotRunningException e) {
+            throw conflict("Execution " + executionId + " is not running");
+        }
+        logger.info("Stopping execution " + executionId + " of " + JOB);
+        return new Gson().toJson(describe(jobOperator.getJobExecution(executionId)));
+    }
+
+    /**
+     * Restarts a failed or stopped execution from its last checkpoints.  The parameters are as for
+     * start; any not given keep their original values.  The number of partitions can't change on restart.
+     * Like start, an execution of the ingest job isn't restarted while another is running.
+     * @param executionId The failed or stopped execution
+     * @return The new execution, as JSON, or 409 Conflict if it can't be restarted
+     */
+    @POST
+    @Path("/{executionId}/restart")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public Response restart(@PathParam("executionId") long executionId,
+            @QueryParam("inputDir") String inputDir, @QueryParam("inputFiles") String inputFiles,
+            @QueryParam("useWatson") Boolean useWatson, @QueryParam("WatsonPropFile") String watsonPropFile,
+            @QueryParam("persistAnalysis") Boolean persistAnalysis, @QueryParam("partitions") Integer partitions,
+            @QueryParam("chunkSize") Integer chunkSize) {
+
+        JobOperator jobOperator = BatchRuntime.getJobOperator();
+        Long newExecutionId;
+        String jobName;
+        try {
+            Properties original = jobOperator.getParameters(executionId);
+            Properties parameters = original == null ? new Properties() : original;
+            parameters.putAll(parameters(inputDir, inputFiles, useWatson, watsonPropFile, persistAnalysis, partitions, chunkSize));
+            jobName = jobOperator.getJobExecution(executionId).getJobName();
+            if (JOB.equals(jobName)) {
+                newExecutionId = ingestScheduler.startIfIdle(() -> jobOperator.restart(executionId, parameters));
+            } else {
+                newExecutionId = jobOperator.restart(executionId, parameters);
+            }
+        } catch (NoSuchJobExecutionException e) {
+            throw new NotFoundException("No execution " + executionId);
+        } catch (JobExecutionAlreadyCompleteException | JobExecutionNotMostRecentException
+                | JobExecutionIsRunningException | JobRestartException e) {
+            throw conflict("Execution " + executionId + " can't be restarted: " + e.getMessage());
+        }
+        if (newExecutionId == null) {
+            throw conflict("Execution " + executionId + " can't be restarted while " + JOB + " is running");
+        }
+        logger.info("Restarted execution " + executionId + " of " + jobName + " as " + newExecutionId);
+        return Response.status(Response.Status.CREATED)
+                .entity(new Gson().toJson(describe(jobOperator.getJobExecution(newExecutionId)))).build();
+    }
+
+    /**
+     * Reports an execution's progress.
+     * @param executionId The execution
+     * @return The item counts, current files, rate and estimated time left, as JSON
+     */
+    @GET
+    @Path("/{executionId}/progress")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public String progress(@PathParam("executionId") long executionId) {
+        JobOperator jobOperator = BatchRuntime.getJobOperator();
+        JobExecution execution;
+        List<StepExecution> steps;
+        try {
+            execution = jobOperator.getJobExecution(executionId);
+            steps = jobOperator.getStepExecutions(executionId);
+        } catch (NoSuchJobExecutionException e) {
+            throw new NotFoundException("No execution " + executionId);
+        }
+
+        Map<Metric.MetricType, Long> metrics = new LinkedHashMap<Metric.MetricType, Long>();
+        for (StepExecution step : steps) {
+            for (Metric metric : step.getMetrics()) {
+                Long sum = metrics.get(metric.getType());
+                metrics.put(metric.getType(), (sum != null ? sum : 0L) + metric.getValue());
+            }
+        }
+        long read = count(metrics, Metric.MetricType.READ_COUNT);
+        long written = count(metrics, Metric.MetricType.WRITE_COUNT);
+        long filtered = count(metrics, Metric.MetricType.FILTER_COUNT);
+        long skipped = count(metrics, Metric.MetricType.READ_SKIP_COUNT)
+                + count(metrics, Metric.MetricType.PROCESS_SKIP_COUNT)
+                + count(metrics, Metric.MetricType.WRITE_SKIP_COUNT);
+
+        List<String> currentFiles = new ArrayList<String>();
+        int files = 0;
+        int filesDone = 0;
+        long totalBytes = 0;
+        long bytesRead = 0;
+        for (JobProgress.ReaderProgress reader : jobProgress.get(executionId)) {
+            if (reader.getCurrentFile() != null) {
+                currentFiles.add(reader.getCurrentFile());
+            }
+            files += reader.getFiles();
+            filesDone += Math.min(Math.max(reader.getFileIndex(), 0), reader.getFiles());
+            totalBytes += reader.getTotalBytes();
+            bytesRead += reader.getBytesRead();
+        }
+
+        boolean running = isRunning(execution.getBatchStatus());
+        Date started = execution.getStartTime();
+        Date ended = running ? new Date() : execution.getEndTime();
+        double seconds = started != null && ended != null ? (ended.getTime() - started.getTime()) / 1000.0 : 0;
+
+        Map<String, Object> progress = describe(execution);
+        progress.put("itemsRead", read);
+        progress.put("itemsProcessed", written + filtered);
+        progress.put("itemsWritten", written);
+        progress.put("itemsFiltered", filtered);
+        progress.put("itemsSkipped", skipped);
+        progress.put("commits", count(metrics, Metric.MetricType.COMMIT_COUNT));
+        progress.put("rollbacks", count(metrics, Metric.MetricType.ROLLBACK_COUNT));
+        progress.put("currentFiles", currentFiles);
+        progress.put("files", files);
+        progress.put("filesDone", filesDone);
+        progress.put("totalBytes", totalBytes);
+        progress.put("bytesRead", bytesRead);
+        progress.put("elapsedSeconds", seconds);
+        progress.put("recordsPerSecond", seconds > 0 ? read / seconds : 0.0);
+        if (running && totalBytes > 0 && bytesRead > 0) {
+            double done = (double) bytesRead / totalBytes;
+            progress.put("percentDone", 100 * done);
+            progress.put("etaSeconds", seconds * (1 - done) / done);
+        }
+        return new Gson().toJson(progress);
+    }
+
+    private static Map<String, Object> describe(JobExecution execution) {
+        Map<String, Object> e = new LinkedHashMap<String, Object>();
+        e.put("executionId", execution.getExecutionId());
+        e.put("jobName", execution.getJobName());
+        e.put("batchStatus", execution.getBatchStatus().toString());
+        e.put("exitStatus", execution.getExitStatus());
+        e.put("createTime", execution.getCreateTime());
+        e.put("startTime", execution.getStartTime());
+        e.put("endTime", execution.getEndTime());
+        return e;
+    }
+
+    private static Properties parameters(String inputDir, String inputFiles, Boolean useWatson, String watsonPropFile,
+            Boolean persistAnalysis, Integer partitions, Integer chunkSize) {
+        if (partitions != null && partitions < 1) {
+            throw new BadRequestException("partitions must be at least 1");
+        }
+        if (chunkSize != null && chunkSize < 1) {
+            throw new BadRequestException("chunkSize must be at least 1");
+        }
+        Properties p = new Properties();
+        if (inputDir != null) {
+            p.setProperty("inputDir", inputDir);
+        }
+        if (inputFiles != null) {
+            p.setProperty("inputFiles", inputFiles);
+        }
+        if (useWatson != null) {
+            p.setProperty("useWatson", useWatson.toString());
+        }
+        if (watsonPropFile != null) {
+            p.setProperty("WatsonPropFile", watsonPropFile);
+        }
+        if (persistAnalysis != null) {
+            p.setProperty("persistAnalysis", persistAnalysis.toString());
+        }
+        if (partitions != null) {
+            p.setProperty("partitions", partitions.toString());
+        }
+        if (chunkSize != null) {
+            p.setProperty("chunkSize", chunkSize.toString());
+        }
+        return p;
+    }
+
+    private static boolean isRunning(BatchStatus status) {
+        return status == BatchStatus.STARTING || status == BatchStatus.STARTED || status == BatchStatus.STOPPING;
+    }
+
+    private static long count(Map<Metric.MetricType, Long> metrics, Metric.MetricType type) {
+        Long value = metrics.get(type);
+        return value != null ? value : 0L;
+    }
+
+    private static WebApplicationException conflict(String message) {
+        return new WebApplicationException(message, Response.Status.CONFLICT);
+    }
+}
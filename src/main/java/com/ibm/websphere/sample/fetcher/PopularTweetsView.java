@@ -0,0 +1,206 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.fetcher;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import com.google.gson.Gson;
+import com.ibm.websphere.sample.batch.PopularityChangeEvent;
+import com.ibm.websphere.sample.batch.TweetsRemovedEvent;
+import com.ibm.websphere.sample.jpa.TweetDataObject;
+
+/**
+ * Keeps the most popular tweets in memory so the popularity ordering can be served without
+ * sorting TWITTER.TWEETS on every request.
+ * <p>
+ * The view is loaded from the database once when the application starts, then kept current by
+ * the PopularityChangeEvents the batch writer fires as its chunks commit.  Since popularity only
+ * ever goes up, seeing every insert and every increase is enough to keep an exact top K.  The one
+ * exception is TweetRetention removing tweets: its TweetsRemovedEvents drop them from the view,
+ * which is then topped up from the database.
+ * <p>
+ * Updates are serialized, and each one publishes the resulting list already serialized to JSON,
+ * which readers pick up from a volatile field without locking.
+ */
+@ApplicationScoped
+public class PopularTweetsView {
+    private final static Logger logger = Logger.getLogger("sample");
+
+    /**
+     * How many tweets are kept, matching the number of tweets the UI shows
+     */
+    public static final int CAPACITY = 150;
+
+    private static final Comparator<Entry> MOST_POPULAR_FIRST = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            if (a.popularity != b.popularity) {
+                return Long.compare(b.popularity, a.popularity);
+            }
+            return Long.compare(b.statusId, a.statusId);
+        }
+    };
+
+    @PersistenceContext(unitName = "tweet-persister")
+    EntityManager entityManager;
+
+    // Thread safe, and only used while holding 'this' anyway
+    private final Gson gson = new Gson();
+
+    // Guarded by 'this'
+    private final TreeSet<Entry> ranked = new TreeSet<Entry>(MOST_POPULAR_FIRST);
+    private final Map<Long, Entry> byStatusId = new HashMap<Long, Entry>();
+    private boolean loaded = false;
+
+    // Published after every update, null until the view is loaded
+    private volatile String json = null;
+
+    /**
+     * Loads the current top tweets when the application starts.
+     * @param init Unused
+     */
+    public void warm(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        try {
+            List<TweetDataObject> top = queryTop();
+            load(top);
+            logger.info("Loaded " + top.size() + " tweets into the popularity view");
+        } catch (Exception e) {
+            // Leave the view cold, TweetService falls back to the database
+            logger.log(Level.WARNING, "Unable to load the popularity view", e);
+        }
+    }
+
+    /**
+     * Applies the popularity changes of a chunk once it has committed.
+     * @param event The tweets inserted or updated by the chunk
+     */
+    public void onChunkCommitted(@Observes(during = TransactionPhase.AFTER_SUCCESS) PopularityChangeEvent event) {
+        offer(event.getTweets());
+    }
+
+    /**
+     * Drops removed tweets once their removal has committed, refilling the view from the database
+     * if any of them were in it.
+     * @param event The tweets removed by a chunk of TweetRetention
+     */
+    public synchronized void onTweetsRemoved(@Observes(during = TransactionPhase.AFTER_SUCCESS) TweetsRemovedEvent event) {
+        boolean removed = false;
+        for (Long statusId : event.getStatusIds()) {
+            Entry entry = byStatusId.remove(statusId);
+            if (entry != null) {
+                ranked.remove(entry);
+                removed = true;
+            }
+        }
+        if (!removed || !loaded) {
+            return;
+        }
+        // Queried while holding the lock, so a change committed meanwhile is offered after this, not lost
+        try {
+            offer(queryTop());
+        } catch (Exception e) {
+            // Leave the view as it is, short of tweets, rather than serve removed ones
+            logger.log(Level.WARNING, "Unable to refill the popularity view", e);
+        }
+        publish();
+    }
+
+    private List<TweetDataObject> queryTop() {
+        return entityManager
+                .createQuery("SELECT t FROM TweetDataObject as t ORDER BY t.popularity DESC", TweetDataObject.class)
+                .setMaxResults(CAPACITY).getResultList();
+    }
+
+    /**
+     * @return The top tweets serialized as JSON, or null if the view isn't loaded yet
+     */
+    public String getJson() {
+        return json;
+    }
+
+    private synchronized void load(List<TweetDataObject> tweets) {
+        loaded = true;
+        offer(tweets);
+        publish();
+    }
+
+    private synchronized void offer(List<TweetDataObject> tweets) {
+        boolean changed = false;
+        for (TweetDataObject tweet : tweets) {
+            Entry current = byStatusId.get(tweet.getStatusId());
+            if (current != null) {
+                if (current.popularity >= tweet.getPopularity()) {
+                    continue;
+                }
+                ranked.remove(current);
+            } else if (ranked.size() >= CAPACITY && MOST_POPULAR_FIRST.compare(new Entry(tweet), ranked.last()) > 0) {
+                // Not popular enough to make the cut
+                continue;
+            }
+            Entry entry = new Entry(tweet);
+            ranked.add(entry);
+            byStatusId.put(entry.statusId, entry);
+            if (ranked.size() > CAPACITY) {
+                byStatusId.remove(ranked.pollLast().statusId);
+            }
+            changed = true;
+        }
+
+        // Most chunks change nothing in the top, so there's nothing new to publish
+        if (changed) {
+            publish();
+        }
+    }
+
+    private synchronized void publish() {
+        if (!loaded) {
+            // Without the initial load this would only be the top of the recent changes
+            return;
+        }
+        List<TweetDataObject> top = new ArrayList<TweetDataObject>(ranked.size());
+        for (Entry e : ranked) {
+            top.add(e.tweet);
+        }
+        json = gson.toJson(top);
+    }
+
+    private static class Entry {
+        final long popularity;
+        final long statusId;
+        final TweetDataObject tweet;
+
+        Entry(TweetDataObject tweet) {
+            this.popularity = tweet.getPopularity();
+            this.statusId = tweet.getStatusId();
+            this.tweet = tweet;
+        }
+    }
+}
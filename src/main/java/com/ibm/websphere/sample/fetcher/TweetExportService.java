@@ -0,0 +1,269 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.fetcher;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Resource;
+import javax.enterprise.context.Dependent;
+import javax.sql.DataSource;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Bulk export of the analyzed tweets as newline-delimited JSON or CSV.
+ * <p>
+ * Rows are read through a forward-only JDBC cursor in status ID order and written to the response
+ * as they arrive, so an export of any size runs in constant memory.  Every row carries its status
+ * ID; a client whose export was cut short can pass the last one it received as <code>after</code>
+ * to pick up where it left off.  The response is gzipped when the client accepts it.
+ */
+@Dependent
+@Path("tweets/export")
+public class TweetExportService {
+    private final static Logger logger = Logger.getLogger("sample");
+
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String CSV = "text/csv";
+    private static final int FETCH_SIZE = 1000;
+
+    private static final String[] COLUMNS = { "STATUS_ID", "CREATION_DATE", "ACCOUNT_ID", "SCREEN_NAME", "REAL_NAME",
+            "LOCATION", "NUMBER_OF_FOLLOWERS", "FAVORITE_COUNT", "RETWEET_COUNT", "POPULARITY",
+            "SENTIMENT_LABEL", "SENTIMENT_SCORE", "TEXTCONTENT" };
+    private static final String[] NAMES = { "status_id", "creation_date", "account_id", "screen_name", "real_name",
+            "location", "followers_count", "favorite_count", "retweet_count", "popularity",
+            "sentiment_label", "sentiment_score", "text" };
+
+    // 1-based index of TEXTCONTENT, which Derby holds as a CLOB
+    private static final int TEXT_COLUMN = COLUMNS.length;
+
+    @Resource(lookup = "jdbc/tweetstorage")
+    DataSource dataSource;
+
+    /**
+     * Streams the tweets matching the filters, in status ID order.
+     * @param format "ndjson" (the default) or "csv"
+     * @param after Only export tweets with a greater status ID, to resume an earlier export
+     * @param since Optional earliest creation date, in epoch millis
+     * @param until Optional latest creation date, in epoch millis
+     * @param label Optional sentiment label
+     * @param acceptEncoding The request's Accept-Encoding header, used to decide on gzip
+     * @return The streamed export
+     */
+    @GET
+    @Path("/")
+    public Response export(@QueryParam("format") String format, @QueryParam("after") Long after,
+            @QueryParam("since") Long since, @QueryParam("until") Long until, @QueryParam("label") String label,
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+
+        final boolean csv;
+        if (format == null || format.equalsIgnoreCase("ndjson")) {
+            csv = false;
+        } else if (format.equalsIgnoreCase("csv")) {
+            csv = true;
+        } else {
+            throw new BadRequestException("Unknown export format: " + format + ", expected ndjson or csv");
+        }
+        final boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            sql.append(i > 0 ? ", " : "").append(COLUMNS[i]);
+        }
+        sql.append(" FROM TWITTER.TWEETS WHERE STATUS_ID > ?");
+        final List<Object> params = new ArrayList<Object>();
+        params.add(after != null ? after : Long.MIN_VALUE);
+        if (since != null) {
+            sql.append(" AND CREATION_DATE >= ?");
+            params.add(new Timestamp(since));
+        }
+        if (until != null) {
+            sql.append(" AND CREATION_DATE <= ?");
+            params.add(new Timestamp(until));
+        }
+        if (label != null) {
+            sql.append(" AND SENTIMENT_LABEL = ?");
+            params.add(label);
+        }
+        sql.append(" ORDER BY STATUS_ID");
+        final String query = sql.toString();
+
+        StreamingOutput body = new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException, WebApplicationException {
+                OutputStream out = gzip ? new GZIPOutputStream(output, 64 * 1024) : output;
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+                long rows = 0;
+                try (Connection conn = dataSource.getConnection();
+                        PreparedStatement ps = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    ps.setFetchSize(FETCH_SIZE);
+                    for (int i = 0; i < params.size(); i++) {
+                        ps.setObject(i + 1, params.get(i));
+                    }
+                    if (csv) {
+                        writeCsvHeader(writer);
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            if (csv) {
+                                writeCsvRow(writer, rs);
+                            } else {
+                                writeJsonRow(writer, rs);
+                            }
+                            rows++;
+                        }
+                    }
+                } catch (SQLException e) {
+                    // Too late for an error status, so abort the transfer (without ending the body or the gzip
+                    // stream) for the client to see a broken response, and resume after the last row it got
+                    logger.log(Level.WARNING, "Export failed after " + rows + " rows", e);
+                    throw new IOException("Export failed after " + rows + " rows", e);
+                }
+                writer.flush();
+                if (gzip) {
+                    ((GZIPOutputStream) out).finish();
+                }
+                logger.fine("Exported " + rows + " tweets");
+            }
+        };
+
+        Response.ResponseBuilder response = Response.ok(body, csv ? CSV + "; charset=UTF-8" : NDJSON + "; charset=UTF-8");
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.build();
+    }
+
+    private static void writeJsonRow(Writer w, ResultSet rs) throws SQLException, IOException {
+        w.write('{');
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                w.write(',');
+            }
+            w.write('"');
+            w.write(NAMES[i]);
+            w.write("\":");
+            Object value = value(rs, i + 1);
+            if (value == null) {
+                w.write("null");
+            } else if (value instanceof Number) {
+                w.write(value.toString());
+            } else {
+                writeJsonString(w, value.toString());
+            }
+        }
+        w.write("}\n");
+    }
+
+    private static void writeJsonString(Writer w, String s) throws IOException {
+        w.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                w.write("\\\"");
+                break;
+            case '\\':
+                w.write("\\\\");
+                break;
+            case '\n':
+                w.write("\\n");
+                break;
+            case '\r':
+                w.write("\\r");
+                break;
+            case '\t':
+                w.write("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    w.write(String.format("\\u%04x", (int) c));
+                } else {
+                    w.write(c);
+                }
+            }
+        }
+        w.write('"');
+    }
+
+    private static void writeCsvHeader(Writer w) throws IOException {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (i > 0) {
+                w.write(',');
+            }
+            w.write(NAMES[i]);
+        }
+        w.write("\r\n");
+    }
+
+    private static void writeCsvRow(Writer w, ResultSet rs) throws SQLException, IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                w.write(',');
+            }
+            Object value = value(rs, i + 1);
+            if (value == null) {
+                continue;
+            }
+            String s = value.toString();
+            if (s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0) {
+                w.write('"');
+                w.write(s.replace("\"", "\"\""));
+                w.write('"');
+            } else {
+                w.write(s);
+            }
+        }
+        w.write("\r\n");
+    }
+
+    /**
+     * Reads a column, turning timestamps into ISO-8601 UTC strings and reading the text LOB as a plain string
+     */
+    private static Object value(ResultSet rs, int column) throws SQLException {
+        if (column == TEXT_COLUMN) {
+            return rs.getString(column);
+        }
+        Object value = rs.getObject(column);
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toInstant().toString();
+        }
+        return value;
+    }
+}
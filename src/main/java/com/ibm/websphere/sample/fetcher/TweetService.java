@@ -17,59 +17,467 @@
 package com.ibm.websphere.sample.fetcher;
 
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
-import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.container.TimeoutHandler;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import java.util.logging.Logger;
 import com.google.gson.Gson;
+import com.ibm.websphere.sample.jpa.SentimentRollupObject;
+import com.ibm.websphere.sample.jpa.TrendWindowObject;
 import com.ibm.websphere.sample.jpa.TweetDataObject;
+import com.ibm.websphere.sample.search.TweetSearchIndex;
+import com.ibm.websphere.sample.trending.SpaceSaving;
+import com.ibm.websphere.sample.trending.TrendSketch;
+import com.ibm.websphere.sample.trending.TrendWindows;
 
 @Dependent
 @Path("tweets")
 public class TweetService {
     private final static Logger logger = Logger.getLogger("sample");
 
+    // Requests waiting longer than this for the database are answered with a 503
+    private static final long FETCH_TIMEOUT_SECONDS = 30;
+    private static final int RETRY_AFTER_SECONDS = 2;
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    // Default window ending at the newest bucket: a week of hours or a year of days
+    private static final long DEFAULT_HOURLY_WINDOW = 7 * MILLIS_PER_DAY;
+    private static final long DEFAULT_DAILY_WINDOW = 365 * MILLIS_PER_DAY;
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000L;
+    private static final long DEFAULT_TRENDING_WINDOW = MILLIS_PER_DAY;
+
+    private static final int DEFAULT_SEARCH_LIMIT = 150;
+    private static final int DEFAULT_TAG_LIMIT = 20;
+    private static final int MAX_SEARCH_LIMIT = 1000;
+    // How many matching IDs are checked against the filters per query
+    private static final int SEARCH_BATCH_SIZE = 500;
+
     @PersistenceContext(unitName = "tweet-persister")
     EntityManager entityManager;
 
-    List<TweetDataObject> tweets = new ArrayList<TweetDataObject>();
+    @Inject
+    PopularTweetsView popularTweets;
+
+    @Inject
+    TweetSearchIndex searchIndex;
+
+    @Inject
+    TrendWindows trendWindows;
+
+    @Inject
+    CoalescingTweetFetcher fetcher;
 
     @GET
     @Path("/")
     @Produces({ MediaType.APPLICATION_JSON })
-    public String fetchTweets(@QueryParam("from") Integer startingPoint, @QueryParam("to") Integer endingPoint,
-            @QueryParam("orderBy") String category) {
+    public void fetchTweets(@QueryParam("from") Integer startingPoint, @QueryParam("to") Integer endingPoint,
+            @QueryParam("orderBy") String category, @Suspended final AsyncResponse response) {
 
         // hardcoded for now...pagination via front end later
         startingPoint = 0;
         endingPoint = 150;
+        if ("popularity".equals(category)) {
+            // Served from memory once the view is loaded, no need to sort the table
+            String json = popularTweets.getJson();
+            if (json != null && startingPoint == 0 && endingPoint == PopularTweetsView.CAPACITY) {
+                response.resume(json);
+                return;
+            }
+        }
+
+        // The query runs on the fetcher's own threads, freeing this HTTP thread right away
+        response.setTimeout(FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        response.setTimeoutHandler(new TimeoutHandler() {
+            @Override
+            public void handleTimeout(AsyncResponse timedOut) {
+                timedOut.resume(serviceUnavailable());
+            }
+        });
+        fetcher.fetch(category, startingPoint, endingPoint).whenComplete(new BiConsumer<String, Throwable>() {
+            @Override
+            public void accept(String json, Throwable t) {
+                if (t == null) {
+                    response.resume(json);
+                } else if (t instanceof RejectedExecutionException) {
+                    response.resume(serviceUnavailable());
+                } else {
+                    logger.info("Something went wrong: " + t);
+                    response.resume(t);
+                }
+            }
+        });
+    }
+
+    private static Response serviceUnavailable() {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", RETRY_AFTER_SECONDS).build();
+    }
+
+    /**
+     * Returns the precomputed rollup rows (one per time bucket and sentiment label) for a time window.
+     * @param granularity "hour" or "day"
+     * @param since Start of the window in epoch millis, defaults to a week (hour) or a year (day) before until
+     * @param until End of the window in epoch millis, defaults to the newest bucket
+     * @param label Optional sentiment label to restrict the rows to
+     * @return The rollup rows as JSON, oldest bucket first
+     */
+    @GET
+    @Path("/rollups/{granularity}")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public String fetchRollups(@PathParam("granularity") String granularity, @QueryParam("since") Long since,
+            @QueryParam("until") Long until, @QueryParam("label") String label) {
+
+        String g = rollupGranularity(granularity);
+        List<SentimentRollupObject> rollups = new ArrayList<SentimentRollupObject>();
+
+        try {
+            Date[] window = rollupWindow(g, since, until);
+            String jql = "SELECT r FROM SentimentRollupObject r WHERE r.granularity = :g"
+                    + " AND r.bucketStart >= :since AND r.bucketStart <= :until"
+                    + (label != null ? " AND r.sentimentLabel = :label" : "")
+                    + " ORDER BY r.bucketStart, r.sentimentLabel";
+            TypedQuery<SentimentRollupObject> query = entityManager.createQuery(jql, SentimentRollupObject.class)
+                    .setParameter("g", g).setParameter("since", window[0]).setParameter("until", window[1]);
+            if (label != null) {
+                query.setParameter("label", label);
+            }
+            rollups = query.getResultList();
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.info("Something went wrong: " + e);
+        }
+
+        return new Gson().toJson(rollups);
+    }
+
+    /**
+     * Returns the rollups for a time window with the sentiment labels folded together, so each
+     * bucket carries its total volume, average sentiment score and total popularity.
+     * @param granularity "hour" or "day"
+     * @param since Start of the window in epoch millis, defaults as for fetchRollups
+     * @param until End of the window in epoch millis, defaults to the newest bucket
+     * @return One JSON object per bucket, oldest first
+     */
+    @GET
+    @Path("/rollups/{granularity}/summary")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public String fetchRollupSummary(@PathParam("granularity") String granularity, @QueryParam("since") Long since,
+            @QueryParam("until") Long until) {
+
+        String g = rollupGranularity(granularity);
+        List<Map<String, Object>> summary = new ArrayList<Map<String, Object>>();
+
+        try {
+            Date[] window = rollupWindow(g, since, until);
+            String jql = "SELECT r.bucketStart, SUM(r.tweetCount), SUM(r.scoreSum), SUM(r.popularitySum)"
+                    + " FROM SentimentRollupObject r WHERE r.granularity = :g"
+                    + " AND r.bucketStart >= :since AND r.bucketStart <= :until"
+                    + " GROUP BY r.bucketStart ORDER BY r.bucketStart";
+            List<Object[]> rows = entityManager.createQuery(jql, Object[].class)
+                    .setParameter("g", g).setParameter("since", window[0]).setParameter("until", window[1])
+                    .getResultList();
+            for (Object[] row : rows) {
+                long count = ((Number) row[1]).longValue();
+                double scoreSum = ((Number) row[2]).doubleValue();
+                Map<String, Object> bucket = new LinkedHashMap<String, Object>();
+                bucket.put("bucketStart", row[0]);
+                bucket.put("tweetCount", count);
+                bucket.put("averageScore", count > 0 ? scoreSum / count : 0.0);
+                bucket.put("popularitySum", ((Number) row[3]).longValue());
+                summary.add(bucket);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.info("Something went wrong: " + e);
+        }
+
+        return new Gson().toJson(summary);
+    }
+
+    /**
+     * Full-text search over the analyzed tweets, newest first.
+     * @param q The words, hashtags (#tag) and mentions (@name) that must all appear in the tweet
+     * @param label Optional sentiment label the tweets must have
+     * @param since Optional earliest creation date, in epoch millis
+     * @param until Optional latest creation date, in epoch millis
+     * @param limit Maximum number of tweets to return, defaults to 150
+     * @return The matching tweets as JSON
+     */
+    @GET
+    @Path("/search")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public String searchTweets(@QueryParam("q") String q, @QueryParam("label") String label,
+            @QueryParam("since") Long since, @QueryParam("until") Long until, @QueryParam("limit") Integer limit) {
+
+        if (q == null || q.trim().isEmpty()) {
+            throw new BadRequestException("Missing search query parameter q");
+        }
+        int max = limit != null ? Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT)) : DEFAULT_SEARCH_LIMIT;
+        List<TweetDataObject> results = new ArrayList<TweetDataObject>();
+
+        try {
+            String jql = "SELECT t FROM TweetDataObject t WHERE t.statusId IN :ids"
+                    + (label != null ? " AND t.sentiment.sentimentLabel = :label" : "")
+                    + (since != null ? " AND t.creationDate >= :since" : "")
+                    + (until != null ? " AND t.creationDate <= :until" : "")
+                    + " ORDER BY t.statusId DESC";
+
+            // Status IDs grow over time, so the index hands back the newest matches a page at a time.
+            // Without filters a page is normally all it takes; with them, more pages are read until enough pass.
+            boolean filtered = label != null || since != null || until != null;
+            long before = Long.MAX_VALUE;
+            while (results.size() < max) {
+                long[] ids = searchIndex.search(q, before, filtered ? SEARCH_BATCH_SIZE : max - results.size());
+                if (ids.length == 0) {
+                    break;
+                }
+                List<Long> batch = new ArrayList<Long>(ids.length);
+                for (long id : ids) {
+                    batch.add(id);
+                }
+                TypedQuery<TweetDataObject> query = entityManager.createQuery(jql, TweetDataObject.class)
+                        .setParameter("ids", batch).setMaxResults(max - results.size());
+                if (label != null) {
+                    query.setParameter("label", label);
+                }
+                if (since != null) {
+                    query.setParameter("since", new Date(since));
+                }
+                if (until != null) {
+                    query.setParameter("until", new Date(until));
+                }
+                results.addAll(query.getResultList());
+                before = ids[ids.length - 1];
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.info("Something went wrong: " + e);
+        }
+
+        return new Gson().toJson(results);
+    }
+
+    /**
+     * Compares the sentiment of the tweets using hashtags and mentioning accounts, e.g.
+     * <code>?hashtag=MTA&amp;mention=MTA</code> for #MTA against @MTA.  Only tweets written
+     * since their hashtags and mentions were first extracted are counted.
+     * @param hashtags Hashtags, with or without the '#'
+     * @param mentions Screen names, with or without the '@'
+     * @return One JSON object per hashtag and mention, with the number of tweets, their average
+     * sentiment score and how many have each sentiment label
+     */
+    @GET
+    @Path("/tags/sentiment")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public String fetchTagSentiment(@QueryParam("hashtag") List<String> hashtags, @QueryParam("mention") List<String> mentions) {
+
+        if (hashtags.isEmpty() && mentions.isEmpty()) {
+            throw new BadRequestException("Missing hashtag or mention query parameter");
+        }
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+
+        try {
+            for (String hashtag : hashtags) {
+                results.add(tagSentiment("HashtagObject", "#", hashtag));
+            }
+            for (String mention : mentions) {
+                results.add(tagSentiment("MentionObject", "@", mention));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.info("Something went wrong: " + e);
+        }
+
+        return new Gson().toJson(results);
+    }
+
+    /**
+     * The most used hashtags, the most mentioned accounts or the sites most linked to.
+     * @param kind "hashtags", "mentions" or "domains"
+     * @param limit How many to return, defaults to 20
+     * @return JSON objects with the hashtag, screen name or host name and the number of tweets, most first
+     */
+    @GET
+    @Path("/tags/{kind}")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public String fetchTopTags(@PathParam("kind") String kind, @QueryParam("limit") Integer limit) {
+
         String jql;
-        if (category.equals("popularity")) {
-            jql = "SELECT t FROM TweetDataObject as t ORDER BY t.popularity DESC";
+        if ("hashtags".equalsIgnoreCase(kind)) {
+            jql = "SELECT g.value, COUNT(g) AS n FROM HashtagObject g GROUP BY g.value ORDER BY n DESC";
+        } else if ("mentions".equalsIgnoreCase(kind)) {
+            jql = "SELECT g.value, COUNT(g) AS n FROM MentionObject g GROUP BY g.value ORDER BY n DESC";
+        } else if ("domains".equalsIgnoreCase(kind)) {
+            jql = "SELECT u.domain, COUNT(u) AS n FROM UrlObject u GROUP BY u.domain ORDER BY n DESC";
         } else {
-            jql = "SELECT t FROM TweetDataObject as t ORDER BY t.creationDate DESC";
+            throw new BadRequestException("Unknown tag kind: " + kind + ", expected hashtags, mentions or domains");
         }
+        int max = limit != null ? Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT)) : DEFAULT_TAG_LIMIT;
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
 
         try {
-            Query query = entityManager.createQuery(jql);
-            query.setFirstResult(startingPoint).setMaxResults(endingPoint);
-            tweets = query.getResultList();
+            List<Object[]> rows = entityManager.createQuery(jql, Object[].class).setMaxResults(max).getResultList();
+            for (Object[] row : rows) {
+                Map<String, Object> tag = new LinkedHashMap<String, Object>();
+                tag.put("value", row[0]);
+                tag.put("tweetCount", ((Number) row[1]).longValue());
+                results.add(tag);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.info("Something went wrong: " + e);
+        }
+
+        return new Gson().toJson(results);
+    }
+
+    /**
+     * The hashtags, accounts or words used most over a period, answered from the hourly trend sketches
+     * rather than the tweets, so the cost depends on the length of the period, not the number of tweets.
+     * Counts are estimates, never under and at most their error over; the count of any particular key can
+     * be asked for too, e.g. <code>?key=mta&amp;key=subway</code>.
+     * @param kind "hashtags", "accounts" or "words"
+     * @param since Start of the period (millis), defaults to a day before its end
+     * @param until End of the period (millis), defaults to the end of the newest hour counted
+     * @param limit How many to return, defaults to 20
+     * @param keys Hashtags (with or without the '#'), account IDs or words to estimate the counts of
+     * @return JSON with the period, the total count, the top keys with their counts and errors, and the estimated count of each key asked for
+     */
+    @GET
+    @Path("/trending/{kind}")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public String fetchTrending(@PathParam("kind") String kind, @QueryParam("since") Long since, @QueryParam("until") Long until,
+            @QueryParam("limit") Integer limit, @QueryParam("key") List<String> keys) {
+
+        String dimension;
+        if ("hashtags".equalsIgnoreCase(kind)) {
+            dimension = TrendWindowObject.HASHTAG;
+        } else if ("accounts".equalsIgnoreCase(kind)) {
+            dimension = TrendWindowObject.ACCOUNT;
+        } else if ("words".equalsIgnoreCase(kind)) {
+            dimension = TrendWindowObject.WORD;
+        } else {
+            throw new BadRequestException("Unknown trending kind: " + kind + ", expected hashtags, accounts or words");
+        }
+        int max = limit != null ? Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT)) : DEFAULT_TAG_LIMIT;
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+
+        try {
+            Date end;
+            if (until != null) {
+                end = new Date(until);
+            } else {
+                Date newest = trendWindows.newestWindow();
+                end = new Date(newest != null ? newest.getTime() + MILLIS_PER_HOUR : System.currentTimeMillis());
+            }
+            Date start = since != null ? new Date(since) : new Date(end.getTime() - DEFAULT_TRENDING_WINDOW);
+            TrendSketch sketch = trendWindows.query(dimension, start, end);
 
+            List<Map<String, Object>> top = new ArrayList<Map<String, Object>>();
+            for (SpaceSaving.Counter c : sketch.top(max)) {
+                Map<String, Object> entry = new LinkedHashMap<String, Object>();
+                entry.put("value", c.getKey());
+                entry.put("count", c.getCount());
+                entry.put("error", c.getError());
+                top.add(entry);
+            }
+            result.put("since", start.getTime());
+            result.put("until", end.getTime());
+            result.put("total", sketch.getTotal());
+            result.put("top", top);
+            if (!keys.isEmpty()) {
+                Map<String, Long> estimates = new LinkedHashMap<String, Long>();
+                for (String key : keys) {
+                    String k = key.toLowerCase(Locale.ROOT);
+                    if (TrendWindowObject.HASHTAG.equals(dimension) && k.startsWith("#")) {
+                        k = k.substring(1);
+                    }
+                    estimates.put(key, sketch.estimate(k));
+                }
+                result.put("estimates", estimates);
+            }
         } catch (Exception e) {
             e.printStackTrace();
             logger.info("Something went wrong: " + e);
         }
 
-        String json = new Gson().toJson(tweets);
-        return json;
+        return new Gson().toJson(result);
+    }
+
+    /**
+     * Sums up the sentiment of the tweets carrying one hashtag or mention, found through the tag's index
+     */
+    private Map<String, Object> tagSentiment(String entity, String prefix, String value) {
+        String tag = value.startsWith(prefix) ? value.substring(prefix.length()) : value;
+        tag = tag.toLowerCase(Locale.ROOT);
+        String jql = "SELECT t.sentiment.sentimentLabel, COUNT(t), SUM(t.sentiment.sentimentScore)"
+                + " FROM " + entity + " g, TweetDataObject t WHERE g.value = :value AND t.statusId = g.statusId"
+                + " GROUP BY t.sentiment.sentimentLabel";
+        List<Object[]> rows = entityManager.createQuery(jql, Object[].class).setParameter("value", tag).getResultList();
+
+        long count = 0;
+        double scoreSum = 0;
+        Map<String, Long> labels = new LinkedHashMap<String, Long>();
+        for (Object[] row : rows) {
+            long n = ((Number) row[1]).longValue();
+            count += n;
+            scoreSum += row[2] != null ? ((Number) row[2]).doubleValue() : 0.0;
+            labels.put(row[0] != null ? (String) row[0] : "", n);
+        }
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("tag", prefix + tag);
+        result.put("tweetCount", count);
+        result.put("averageScore", count > 0 ? scoreSum / count : 0.0);
+        result.put("labels", labels);
+        return result;
+    }
+
+    private String rollupGranularity(String granularity) {
+        if ("hour".equalsIgnoreCase(granularity)) {
+            return SentimentRollupObject.HOUR;
+        } else if ("day".equalsIgnoreCase(granularity)) {
+            return SentimentRollupObject.DAY;
+        }
+        throw new BadRequestException("Unknown rollup granularity: " + granularity + ", expected hour or day");
+    }
+
+    /**
+     * Works out the [since, until] window of a rollup query, defaulting the end to the newest
+     * bucket so that an archive of old tweets still shows something by default.
+     */
+    private Date[] rollupWindow(String granularity, Long since, Long until) {
+        Date end;
+        if (until != null) {
+            end = new Date(until);
+        } else {
+            Date newest = entityManager.createQuery(
+                    "SELECT MAX(r.bucketStart) FROM SentimentRollupObject r WHERE r.granularity = :g", Date.class)
+                    .setParameter("g", granularity).getSingleResult();
+            end = newest != null ? newest : new Date();
+        }
+        long window = SentimentRollupObject.DAY.equals(granularity) ? DEFAULT_DAILY_WINDOW : DEFAULT_HOURLY_WINDOW;
+        Date start = since != null ? new Date(since) : new Date(end.getTime() - window);
+        return new Date[] { start, end };
     }
 }
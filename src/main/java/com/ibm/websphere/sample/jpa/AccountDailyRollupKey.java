@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Composite primary key for an AccountDailyRollupObject: the day, the account and the sentiment label.
+ */
+public class AccountDailyRollupKey implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Date day;
+    private long accountId;
+    private String sentimentLabel;
+
+    /**
+     * Default constructor, required by JPA
+     */
+    public AccountDailyRollupKey() {
+    }
+
+    /**
+     * Constructor for a fully specified key
+     * @param day The start of the day (UTC)
+     * @param accountId The account that tweeted
+     * @param sentimentLabel The sentiment label
+     */
+    public AccountDailyRollupKey(Date day, long accountId, String sentimentLabel) {
+        this.day = day;
+        this.accountId = accountId;
+        this.sentimentLabel = sentimentLabel;
+    }
+
+    public Date getDay() {
+        return day;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public String getSentimentLabel() {
+        return sentimentLabel;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AccountDailyRollupKey)) {
+            return false;
+        }
+        AccountDailyRollupKey other = (AccountDailyRollupKey) o;
+        return day.getTime() == other.day.getTime()
+                && accountId == other.accountId
+                && sentimentLabel.equals(other.sentimentLabel);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = Long.hashCode(day.getTime());
+        h = 31 * h + Long.hashCode(accountId);
+        h = 31 * h + sentimentLabel.hashCode();
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return day.getTime() + "/" + accountId + "/" + sentimentLabel;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * What is left of an account's tweets on one day (in UTC) carrying one sentiment label once the
+ * TweetRetention job has removed the tweets themselves: how many there were, the sum of their
+ * sentiment scores and of their popularity, and the most retweets and favorites any of them had.
+ */
+@Entity
+@IdClass(AccountDailyRollupKey.class)
+@Table(name = "ACCOUNT_DAILY_ROLLUPS", schema = "TWITTER")
+public class AccountDailyRollupObject implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    @Id
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "DAY_START")
+    private Date day;
+
+    @Id
+    @Column(name = "ACCOUNT_ID")
+    private long accountId;
+
+    @Id
+    @Column(name = "SENTIMENT_LABEL")
+    private String sentimentLabel;
+
+    @Column(name = "TWEET_COUNT")
+    long tweetCount;
+
+    @Column(name = "SCORE_SUM")
+    double scoreSum;
+
+    @Column(name = "POPULARITY_SUM")
+    long popularitySum;
+
+    @Column(name = "MAX_RETWEETS")
+    long maxRetweets;
+
+    @Column(name = "MAX_FAVORITES")
+    long maxFavorites;
+
+    /**
+     * Default constructor, required by JPA
+     */
+    public AccountDailyRollupObject() {
+    }
+
+    /**
+     * Constructor for an empty rollup row with the given key
+     * @param key The day, account and label identifying this row
+     */
+    public AccountDailyRollupObject(AccountDailyRollupKey key) {
+        this.day = key.getDay();
+        this.accountId = key.getAccountId();
+        this.sentimentLabel = key.getSentimentLabel();
+    }
+
+    /**
+     * Computes the key of the rollup row a tweet belongs to
+     * @param tweet The tweet, which must have a creation date
+     * @return The key of the matching rollup row
+     */
+    public static AccountDailyRollupKey keyFor(TweetDataObject tweet) {
+        long millis = tweet.getCreationDate().getTime();
+        String label = tweet.getSentiment() != null ? tweet.getSentiment().getSentimentLabel() : null;
+        return new AccountDailyRollupKey(new Date(millis - Math.floorMod(millis, MILLIS_PER_DAY)),
+                tweet.getAccountId(), label != null ? label : "");
+    }
+
+    /**
+     * Adds a tweet into this rollup row
+     * @param tweet The tweet
+     */
+    public void add(TweetDataObject tweet) {
+        Double score = tweet.getSentiment() != null ? tweet.getSentiment().getSentimentScore() : null;
+        this.tweetCount++;
+        this.scoreSum += score != null ? score : 0.0;
+        this.popularitySum += tweet.getPopularity();
+        this.maxRetweets = Math.max(maxRetweets, tweet.getRetweetCount());
+        this.maxFavorites = Math.max(maxFavorites, tweet.getFavoriteCount());
+    }
+
+    /**
+     * Adds another row's tweets into this one
+     * @param other A row with the same key
+     */
+    public void add(AccountDailyRollupObject other) {
+        this.tweetCount += other.tweetCount;
+        this.scoreSum += other.scoreSum;
+        this.popularitySum += other.popularitySum;
+        this.maxRetweets = Math.max(maxRetweets, other.maxRetweets);
+        this.maxFavorites = Math.max(maxFavorites, other.maxFavorites);
+    }
+
+    /**
+     * Gets the day this row covers
+     * @return The start of the day (UTC)
+     */
+    public Date getDay() {
+        return day;
+    }
+
+    /**
+     * Gets the account whose tweets are counted in this row
+     * @return The account ID
+     */
+    public long getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Gets the sentiment label the tweets in this row share
+     * @return The sentiment label, empty if the tweets were not analyzed
+     */
+    public String getSentimentLabel() {
+        return sentimentLabel;
+    }
+
+    /**
+     * How many tweets were folded into this row
+     * @return The tweet count
+     */
+    public long getTweetCount() {
+        return tweetCount;
+    }
+
+    /**
+     * The sum of the tweets' sentiment scores
+     * @return The score sum
+     */
+    public double getScoreSum() {
+        return scoreSum;
+    }
+
+    /**
+     * The sum of the tweets' popularity
+     * @return The popularity sum
+     */
+    public long getPopularitySum() {
+        return popularitySum;
+    }
+
+    /**
+     * The most retweets any of the tweets had
+     * @return The retweet count
+     */
+    public long getMaxRetweets() {
+        return maxRetweets;
+    }
+
+    /**
+     * The most favorites any of the tweets had
+     * @return The favorite count
+     */
+    public long getMaxFavorites() {
+        return maxFavorites;
+    }
+}
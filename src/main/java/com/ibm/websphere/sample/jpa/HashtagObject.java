@@ -0,0 +1,49 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import javax.persistence.AttributeOverride;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * A hashtag used by a tweet, lower-cased and without the '#'
+ */
+@Entity
+@Table(name = "TWEET_HASHTAGS", schema = "TWITTER", indexes = @Index(name = "TWEET_HASHTAGS_TAG", columnList = "TAG"))
+@AttributeOverride(name = "value", column = @Column(name = "TAG", length = HashtagObject.MAX_LENGTH))
+public class HashtagObject extends TweetTagObject {
+    private static final long serialVersionUID = 1L;
+
+    public static final int MAX_LENGTH = 140;
+
+    /**
+     * Default constructor, required by JPA
+     */
+    public HashtagObject() {
+    }
+
+    /**
+     * @param statusId The status ID of the tweet
+     * @param tag The hashtag, lower-cased and without the '#'
+     */
+    public HashtagObject(long statusId, String tag) {
+        super(statusId, tag);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import java.io.Serializable;
+
+/**
+ * Composite primary key for an InputListingObject: the job instance and the digest of the listing.
+ */
+public class InputListingKey implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long jobInstanceId;
+    private String digest;
+
+    /**
+     * Default constructor, required by JPA
+     */
+    public InputListingKey() {
+    }
+
+    /**
+     * Constructor for a fully specified key
+     * @param jobInstanceId The job instance reading the files
+     * @param digest The digest of the listing
+     */
+    public InputListingKey(long jobInstanceId, String digest) {
+        this.jobInstanceId = jobInstanceId;
+        this.digest = digest;
+    }
+
+    public long getJobInstanceId() {
+        return jobInstanceId;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof InputListingKey)) {
+            return false;
+        }
+        InputListingKey other = (InputListingKey) o;
+        return jobInstanceId == other.jobInstanceId && digest.equals(other.digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(jobInstanceId) + digest.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return jobInstanceId + "/" + digest;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * The list of files a MultiTextFileLineReader (one partition of a job instance) reads, saved once when
+ * it starts so that its checkpoints need only hold the listing's digest and how far through it they are.
+ */
+@Entity
+@IdClass(InputListingKey.class)
+@Table(name = "INPUT_LISTINGS", schema = "TWITTER")
+public class InputListingObject implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "JOB_INSTANCE_ID")
+    private long jobInstanceId;
+
+    @Id
+    @Column(name = "DIGEST", length = 64)
+    private String digest;
+
+    @Column(name = "FILE_COUNT")
+    private int fileCount;
+
+    // One canonical path per line
+    @Lob
+    @Column(name = "FILES", length = 67108864)
+    private String files;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "CREATED")
+    private Date created;
+
+    /**
+     * Default constructor, required by JPA
+     */
+    public InputListingObject() {
+    }
+
+    /**
+     * @param key The job instance and the digest of the listing
+     * @param files The files, in the order they are read
+     * @param created When the reader started
+     */
+    public InputListingObject(InputListingKey key, String[] files, Date created) {
+        this.jobInstanceId = key.getJobInstanceId();
+        this.digest = key.getDigest();
+        this.fileCount = files.length;
+        this.files = String.join("\n", files);
+        this.created = created;
+    }
+
+    public long getJobInstanceId() {
+        return jobInstanceId;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Gets the files
+     * @return The files, in the order they are read
+     */
+    public String[] getFiles() {
+        return fileCount == 0 ? new String[0] : files.split("\n", -1);
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * A summary of one job execution's throughput and per-phase latencies, written when the job ends
+ * so that runs can be compared with each other.  Latencies are the median (P50) and P99 in microseconds;
+ * read and process are per item, write, commit and chunk are per chunk.
+ */
+@Entity
+@Table(name = "JOB_RUN_SUMMARIES", schema = "TWITTER")
+public class JobRunSummaryObject implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "EXECUTION_ID")
+    private long executionId;
+
+    @Column(name = "JOB_NAME")
+    private String jobName;
+
+    @Column(name = "BATCH_STATUS", length = 16)
+    private String batchStatus;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "START_TIME")
+    private Date startTime;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "END_TIME")
+    private Date endTime;
+
+    @Column(name = "PARTITIONS")
+    int partitions;
+
+    @Column(name = "ITEMS_READ")
+    long itemsRead;
+
+    @Column(name = "ITEMS_PROCESSED")
+    long itemsProcessed;
+
+    @Column(name = "ITEMS_FILTERED")
+    long itemsFiltered;
+
+    @Column(name = "ITEMS_WRITTEN")
+    long itemsWritten;
+
+    @Column(name = "CHUNKS")
+    long chunks;
+
+    @Column(name = "ERRORS")
+    long errors;
+
+    @Column(name = "ITEMS_PER_SECOND")
+    double itemsPerSecond;
+
+    @Column(name = "READ_P50_MICROS")
+    long readP50Micros;
+
+    @Column(name = "READ_P99_MICROS")
+    long readP99Micros;
+
+    @Column(name = "PROCESS_P50_MICROS")
+    long processP50Micros;
+
+    @Column(name = "PROCESS_P99_MICROS")
+    long processP99Micros;
+
+    @Column(name = "WRITE_P50_MICROS")
+    long writeP50Micros;
+
+    @Column(name = "WRITE_P99_MICROS")
+    long writeP99Micros;
+
+    @Column(name = "COMMIT_P50_MICROS")
+    long commitP50Micros;
+
+    @Column(name = "COMMIT_P99_MICROS")
+    long commitP99Micros;
+
+    @Column(name = "CHUNK_P50_MICROS")
+    long chunkP50Micros;
+
+    @Column(name = "CHUNK_P99_MICROS")
+    long chunkP99Micros;
+
+    /**
+     * Default constructor, required by JPA
+     */
+    public JobRunSummaryObject() {
+    }
+
+    /**
+     * Constructor for the summary of an execution, with its figures to be filled in
+     * @param executionId The job execution
+     * @param jobName The job's name
+     * @param batchStatus How the execution ended
+     * @param startTime When the first partition started recording
+     * @param endTime When the job ended
+     */
+    public JobRunSummaryObject(long executionId, String jobName, String batchStatus, Date startTime, Date endTime) {
+        this.executionId = executionId;
+        this.jobName = jobName;
+        this.batchStatus = batchStatus;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    public void setPartitions(int partitions) {
+        this.partitions = partitions;
+    }
+
+    /**
+     * Sets the item and chunk counts, totalled across partitions
+     */
+    public void setCounts(long itemsRead, long itemsProcessed, long itemsFiltered, long itemsWritten, long chunks, long errors) {
+        this.itemsRead = itemsRead;
+        this.itemsProcessed = itemsProcessed;
+        this.itemsFiltered = itemsFiltered;
+        this.itemsWritten = itemsWritten;
+        this.chunks = chunks;
+        this.errors = errors;
+    }
+
+    public void setItemsPerSecond(double itemsPerSecond) {
+        this.itemsPerSecond = itemsPerSecond;
+    }
+
+    public void setReadMicros(long p50, long p99) {
+        this.readP50Micros = p50;
+        this.readP99Micros = p99;
+    }
+
+    public void setProcessMicros(long p50, long p99) {
+        this.processP50Micros = p50;
+        this.processP99Micros = p99;
+    }
+
+    public void setWriteMicros(long p50, long p99) {
+        this.writeP50Micros = p50;
+        this.writeP99Micros = p99;
+    }
+
+    public void setCommitMicros(long p50, long p99) {
+        this.commitP50Micros = p50;
+        this.commitP99Micros = p99;
+    }
+
+    public void setChunkMicros(long p50, long p99) {
+        this.chunkP50Micros = p50;
+        this.chunkP99Micros = p99;
+    }
+
+    public long getExecutionId() {
+        return executionId;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public String getBatchStatus() {
+        return batchStatus;
+    }
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public Date getEndTime() {
+        return endTime;
+    }
+
+    public long getItemsWritten() {
+        return itemsWritten;
+    }
+
+    public double getItemsPerSecond() {
+        return itemsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "items read=" + itemsRead + " written=" + itemsWritten + " filtered=" + itemsFiltered
+                + " chunks=" + chunks + " errors=" + errors + " partitions=" + partitions
+                + String.format(" items/sec=%.1f", itemsPerSecond)
+                + " p50/p99 micros: read=" + readP50Micros + "/" + readP99Micros
+                + " process=" + processP50Micros + "/" + processP99Micros
+                + " write=" + writeP50Micros + "/" + writeP99Micros
+                + " commit=" + commitP50Micros + "/" + commitP99Micros
+                + " chunk=" + chunkP50Micros + "/" + chunkP99Micros;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Composite primary key for a SentimentRollupObject: the bucket granularity,
+ * the start of the time bucket and the sentiment label.
+ */
+public class SentimentRollupKey implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String granularity;
+    private Date bucketStart;
+    private String sentimentLabel;
+
+    /**
+     * Default constructor, required by JPA
+     */
+    public SentimentRollupKey() {
+    }
+
+    /**
+     * Constructor for a fully specified key
+     * @param granularity The bucket granularity (see SentimentRollupObject.HOUR and SentimentRollupObject.DAY)
+     * @param bucketStart The start of the time bucket
+     * @param sentimentLabel The sentiment label
+     */
+    public SentimentRollupKey(String granularity, Date bucketStart, String sentimentLabel) {
+        this.granularity = granularity;
+        this.bucketStart = bucketStart;
+        this.sentimentLabel = sentimentLabel;
+    }
+
+    public String getGranularity() {
+        return granularity;
+    }
+
+    public Date getBucketStart() {
+        return bucketStart;
+    }
+
+    public String getSentimentLabel() {
+        return sentimentLabel;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SentimentRollupKey)) {
+            return false;
+        }
+        SentimentRollupKey other = (SentimentRollupKey) o;
+        return granularity.equals(other.granularity)
+                && bucketStart.getTime() == other.bucketStart.getTime()
+                && sentimentLabel.equals(other.sentimentLabel);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = granularity.hashCode();
+        h = 31 * h + Long.hashCode(bucketStart.getTime());
+        h = 31 * h + sentimentLabel.hashCode();
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return granularity + "/" + bucketStart.getTime() + "/" + sentimentLabel;
+    }
+}
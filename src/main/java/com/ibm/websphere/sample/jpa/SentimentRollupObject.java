@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * A precomputed rollup of the analyzed tweets falling within one time bucket (an hour or a day, in UTC)
+ * and carrying one sentiment label.  Maintained incrementally by the batch writer so that aggregate
+ * queries read a handful of these rows instead of scanning TWITTER.TWEETS.
+ */
+@Entity
+@IdClass(SentimentRollupKey.class)
+@Table(name = "SENTIMENT_ROLLUPS", schema = "TWITTER")
+public class SentimentRollupObject implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final String HOUR = "HOUR";
+    public static final String DAY = "DAY";
+
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000L;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    @Id
+    @Column(name = "GRANULARITY", length = 8)
+    private String granularity;
+
+    @Id
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "BUCKET_START")
+    private Date bucketStart;
+
+    @Id
+    @Column(name = "SENTIMENT_LABEL")
+    private String sentimentLabel;
+
+    @Column(name = "TWEET_COUNT")
+    long tweetCount;
+
+    @Column(name = "SCORE_SUM")
+    double scoreSum;
+
+    @Column(name = "POPULARITY_SUM")
+    long popularitySum;
+
+    /**
+     * Default constructor, required by JPA
+     */
+    public SentimentRollupObject() {
+    }
+
+    /**
+     * Constructor for an empty rollup row with the given key
+     * @param key The granularity, bucket and label identifying this row
+     */
+    public SentimentRollupObject(SentimentRollupKey key) {
+        this.granularity = key.getGranularity();
+        this.bucketStart = key.getBucketStart();
+        this.sentimentLabel = key.getSentimentLabel();
+    }
+
+    /**
+     * Computes the key of the rollup row a tweet created at the given time belongs to
+     * @param granularity HOUR or DAY
+     * @param creationDate When the tweet was created
+     * @param sentimentLabel The sentiment label of the tweet (null is treated as no label)
+     * @return The key of the matching rollup row
+     */
+    public static SentimentRollupKey keyFor(String granularity, Date creationDate, String sentimentLabel) {
+        long width = DAY.equals(granularity) ? MILLIS_PER_DAY : MILLIS_PER_HOUR;
+        long millis = creationDate.getTime();
+        Date bucket = new Date(millis - Math.floorMod(millis, width));
+        return new SentimentRollupKey(granularity, bucket, sentimentLabel != null ? sentimentLabel : "");
+    }
+
+    /**
+     * Adds the given deltas into this rollup row
+     * @param count The change in the number of tweets
+     * @param score The change in the sum of sentiment scores
+     * @param popularity The change in the sum of popularity
+     */
+    public void add(long count, double score, long popularity) {
+        this.tweetCount += count;
+        this.scoreSum += score;
+        this.popularitySum += popularity;
+    }
+
+    /**
+     * Gets the granularity of this row's time bucket
+     * @return HOUR or DAY
+     */
+    public String getGranularity() {
+        return granularity;
+    }
+
+    /**
+     * Gets the start of this row's time bucket
+     * @return The start of the bucket
+     */
+    public Date getBucketStart() {
+        return bucketStart;
+    }
+
+    /**
+     * Gets the sentiment label the tweets in this row share
+     * @return The sentiment label, empty if the tweets were not analyzed
+     */
+    public String getSentimentLabel() {
+        return sentimentLabel;
+    }
+
+    /**
+     * How many tweets fall within this bucket and label
+     * @return The tweet count
+     */
+    public long getTweetCount() {
+        return tweetCount;
+    }
+
+    /**
+     * The total of the sentiment scores of the tweets in this row
+     * @return The sum of the sentiment scores
+     */
+    public double getScoreSum() {
+        return scoreSum;
+    }
+
+    /**
+     * The total popularity (favorites plus retweets) of the tweets in this row
+     * @return The sum of popularity
+     */
+    public long getPopularitySum() {
+        return popularitySum;
+    }
+
+    @Override
+    public String toString() {
+        return "Rollup: " + granularity + "/" + bucketStart + "/" + sentimentLabel;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * Records that the trend counts a batch writer held when it closed were merged into TWITTER.TREND_WINDOWS,
+ * so that restarting from the checkpoint that also holds them doesn't count them twice.
+ */
+@Entity
+@Table(name = "TREND_FLUSHES", schema = "TWITTER")
+public class TrendFlushObject implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "TOKEN", length = 36)
+    private String token;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "FLUSHED")
+    private Date flushed;
+
+    /**
+     * Default constructor, required by JPA
+     */
+    public TrendFlushObject() {
+    }
+
+    /**
+     * @param token Identifies the counts that were merged
+     * @param flushed When they were merged
+     */
+    public TrendFlushObject(String token, Date flushed) {
+        this.token = token;
+        this.flushed = flushed;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public Date getFlushed() {
+        return flushed;
+    }
+}
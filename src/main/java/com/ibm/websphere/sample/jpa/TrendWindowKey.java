@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Composite primary key for a TrendWindowObject: the start of the window and the kind of key counted.
+ */
+public class TrendWindowKey implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Date windowStart;
+    private String dimension;
+
+    /**
+     * Default constructor, required by JPA
+     */
+    public TrendWindowKey() {
+    }
+
+    /**
+     * Constructor for a fully specified key
+     * @param windowStart The start of the hour (UTC)
+     * @param dimension HASHTAG, ACCOUNT or WORD
+     */
+    public TrendWindowKey(Date windowStart, String dimension) {
+        this.windowStart = windowStart;
+        this.dimension = dimension;
+    }
+
+    public Date getWindowStart() {
+        return windowStart;
+    }
+
+    public String getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TrendWindowKey)) {
+            return false;
+        }
+        TrendWindowKey other = (TrendWindowKey) o;
+        return windowStart.getTime() == other.windowStart.getTime()
+                && dimension.equals(other.dimension);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(windowStart.getTime()) + dimension.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return windowStart.getTime() + "/" + dimension;
+    }
+}
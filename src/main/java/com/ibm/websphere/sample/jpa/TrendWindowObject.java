@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+/**
+ * The trend sketch (see com.ibm.websphere.sample.trending.TrendSketch) of one kind of key, hashtags,
+ * accounts or words, over the tweets created within one hour (in UTC).  Maintained by the batch writer,
+ * which merges what each partition has counted into the row every so often.
+ */
+@Entity
+@IdClass(TrendWindowKey.class)
+@Table(name = "TREND_WINDOWS", schema = "TWITTER")
+public class TrendWindowObject implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final String HASHTAG = "HASHTAG";
+    public static final String ACCOUNT = "ACCOUNT";
+    public static final String WORD = "WORD";
+
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000L;
+
+    @Id
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "WINDOW_START")
+    private Date windowStart;
+
+    @Id
+    @Column(name = "DIMENSION", length = 8)
+    private String dimension;
+
+    @Lob
+    @Column(name = "SKETCH", length = 1048576)
+    private byte[] sketch;
+
+    /**
+     * Default constructor, required by JPA
+     */
+    public TrendWindowObject() {
+    }
+
+    /**
+     * @param key The window and kind of key
+     * @param sketch The encoded sketch
+     */
+    public TrendWindowObject(TrendWindowKey key, byte[] sketch) {
+        this.windowStart = key.getWindowStart();
+        this.dimension = key.getDimension();
+        this.sketch = sketch;
+    }
+
+    /**
+     * Computes the key of the window a tweet created at the given time belongs to
+     * @param creationDate When the tweet was created
+     * @param dimension HASHTAG, ACCOUNT or WORD
+     * @return The key of the matching row
+     */
+    public static TrendWindowKey keyFor(Date creationDate, String dimension) {
+        long millis = creationDate.getTime();
+        return new TrendWindowKey(new Date(millis - Math.floorMod(millis, MILLIS_PER_HOUR)), dimension);
+    }
+
+    /**
+     * Gets the start of the window
+     * @return The start of the hour (UTC)
+     */
+    public Date getWindowStart() {
+        return windowStart;
+    }
+
+    /**
+     * Gets the kind of key counted
+     * @return HASHTAG, ACCOUNT or WORD
+     */
+    public String getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Gets the encoded sketch
+     * @return The sketch, see TrendSketch.decode
+     */
+    public byte[] getSketch() {
+        return sketch;
+    }
+
+    /**
+     * Sets the encoded sketch
+     * @param sketch The sketch, from TrendSketch.encode
+     */
+    public void setSketch(byte[] sketch) {
+        this.sketch = sketch;
+    }
+}
@@ -18,15 +18,20 @@ package com.ibm.websphere.sample.jpa;
 
 import java.io.Serializable;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
-import javax.json.bind.annotation.JsonbDateFormat;
 import javax.json.bind.annotation.JsonbProperty;
+import javax.json.bind.annotation.JsonbTransient;
+import javax.json.bind.annotation.JsonbTypeAdapter;
 import javax.persistence.Column;
 import javax.persistence.Embedded;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Lob;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 
 import com.ibm.websphere.sample.watson.SentimentObject;
 
@@ -35,10 +40,12 @@ import com.ibm.websphere.sample.watson.SentimentObject;
  * @author Cassandra Newcomer
  */
 @Entity
-@Table(name = "TWEETS", schema = "TWITTER")
+@Table(name = "TWEETS", schema = "TWITTER", indexes = @Index(name = TweetDataObject.CREATION_DATE_INDEX, columnList = "CREATION_DATE, STATUS_ID"))
 public class TweetDataObject implements Serializable {
     private static final long serialVersionUID = 1L;
-	private static final String dateTimeFormatPattern = "yyyy/MM/dd HH:mm:ss z";
+
+    // Databases created before the index was added get it from TweetRetentionPartitionMapper
+    public static final String CREATION_DATE_INDEX = "TWEETS_CREATION_DATE";
 
     @Id
     @Column(name = "STATUS_ID")
@@ -68,7 +75,7 @@ public class TweetDataObject implements Serializable {
 
     @Column(name = "CREATION_DATE")
     @JsonbProperty("creation_date")
-    @JsonbDateFormat(dateTimeFormatPattern)
+    @JsonbTypeAdapter(CreationDateAdapter.class)
     Date creationDate;
     
     @Column(name = "FAVORITE_COUNT")
@@ -97,6 +104,14 @@ public class TweetDataObject implements Serializable {
     @JsonbProperty("location")
     private String accountLocation;
 
+    // Where each t.co link in the text goes, when the snatcher captured that; only set while the tweet is being ingested
+    @Transient
+    @JsonbProperty("urls")
+    private Map<String, String> expandedUrls;
+
+    // The hashtags, mentions and links found in the text by the batch job, written alongside the tweet
+    private transient List<TweetTagObject> tags;
+
     /**
      * Default constructor.  Sets string values to empty strings so users don't have to worry about getting nulls back.
      * Sets up a neutral SentimentObject by default also.
@@ -356,6 +371,40 @@ public class TweetDataObject implements Serializable {
 //        return this.quotedAuthorRealName;
 //    }
 
+    /**
+     * Sets where the t.co links in the text go
+     * @param expandedUrls The expanded link for each t.co link, or null
+     */
+    public void setExpandedUrls(Map<String, String> expandedUrls) {
+        this.expandedUrls = expandedUrls;
+    }
+
+    /**
+     * Gets where the t.co links in the text go, as captured by the snatcher
+     * @return The expanded link for each t.co link, null if not known
+     */
+    public Map<String, String> getExpandedUrls() {
+        return this.expandedUrls;
+    }
+
+    /**
+     * Sets the hashtags, mentions and links found in the text
+     * @param tags HashtagObject, MentionObject and UrlObject rows to be written with the tweet
+     */
+    @JsonbTransient
+    public void setTags(List<TweetTagObject> tags) {
+        this.tags = tags;
+    }
+
+    /**
+     * Gets the hashtags, mentions and links found in the text, when the tweet has just been read by the batch job
+     * @return The rows to be written with the tweet, null if the text hasn't been looked at
+     */
+    @JsonbTransient
+    public List<TweetTagObject> getTags() {
+        return this.tags;
+    }
+
     @Override
     public String toString() {
         return "Tweet ID: " + statusId;
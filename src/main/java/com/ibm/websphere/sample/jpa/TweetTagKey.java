@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import java.io.Serializable;
+
+/**
+ * Composite primary key for a TweetTagObject: the tweet's status ID and the tag's value.
+ */
+public class TweetTagKey implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long statusId;
+    private String value;
+
+    /**
+     * Default constructor, required by JPA
+     */
+    public TweetTagKey() {
+    }
+
+    /**
+     * Constructor for a fully specified key
+     * @param statusId The status ID of the tweet
+     * @param value The hashtag, mention or link
+     */
+    public TweetTagKey(long statusId, String value) {
+        this.statusId = statusId;
+        this.value = value;
+    }
+
+    public long getStatusId() {
+        return statusId;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TweetTagKey)) {
+            return false;
+        }
+        TweetTagKey other = (TweetTagKey) o;
+        return statusId == other.statusId && value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(statusId) + value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return statusId + "/" + value;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.MappedSuperclass;
+
+/**
+ * Something picked out of a tweet's text (a hashtag, a mention or a link), held in a table of its own
+ * keyed by the tweet's status ID so that it can be looked up through an index rather than by reading
+ * the text of every tweet.  See HashtagObject, MentionObject and UrlObject.
+ */
+@MappedSuperclass
+@IdClass(TweetTagKey.class)
+public abstract class TweetTagObject implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "STATUS_ID")
+    private long statusId;
+
+    @Id
+    private String value;
+
+    /**
+     * Default constructor, required by JPA
+     */
+    protected TweetTagObject() {
+    }
+
+    /**
+     * @param statusId The status ID of the tweet
+     * @param value The hashtag, mention or link
+     */
+    protected TweetTagObject(long statusId, String value) {
+        this.statusId = statusId;
+        this.value = value;
+    }
+
+    /**
+     * Gets the status ID of the tweet this was found in
+     * @return The status ID
+     */
+    public long getStatusId() {
+        return statusId;
+    }
+
+    /**
+     * Gets the hashtag, mention or link
+     * @return The value
+     */
+    public String getValue() {
+        return value;
+    }
+}
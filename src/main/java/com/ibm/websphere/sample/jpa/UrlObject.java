@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.jpa;
+
+import javax.persistence.AttributeOverride;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * A link in a tweet: the t.co link as it appears in the text, where it really goes when the snatcher
+ * captured that, and the host name of where it goes, for counting tweets by site.
+ */
+@Entity
+@Table(name = "TWEET_URLS", schema = "TWITTER", indexes = @Index(name = "TWEET_URLS_DOMAIN", columnList = "DOMAIN"))
+@AttributeOverride(name = "value", column = @Column(name = "URL", length = UrlObject.MAX_LENGTH))
+public class UrlObject extends TweetTagObject {
+    private static final long serialVersionUID = 1L;
+
+    public static final int MAX_LENGTH = 255;
+    public static final int MAX_EXPANDED_LENGTH = 2048;
+
+    @Column(name = "EXPANDED_URL", length = MAX_EXPANDED_LENGTH)
+    private String expandedUrl;
+
+    @Column(name = "DOMAIN", length = MAX_LENGTH)
+    private String domain;
+
+    /**
+     * Default constructor, required by JPA
+     */
+    public UrlObject() {
+    }
+
+    /**
+     * @param statusId The status ID of the tweet
+     * @param url The link as it appears in the text
+     * @param expandedUrl Where the link goes, the same as url if that isn't known
+     * @param domain The lower-cased host name of expandedUrl
+     */
+    public UrlObject(long statusId, String url, String expandedUrl, String domain) {
+        super(statusId, url);
+        this.expandedUrl = expandedUrl;
+        this.domain = domain;
+    }
+
+    /**
+     * Gets where the link goes
+     * @return The expanded link, the same as the link itself if the snatcher didn't capture it
+     */
+    public String getExpandedUrl() {
+        return expandedUrl;
+    }
+
+    /**
+     * Gets the site the link goes to
+     * @return The lower-cased host name
+     */
+    public String getDomain() {
+        return domain;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+
+/**
+ * An immutable file of posting lists, one per term.
+ * <p>
+ * Layout: a header (magic, version), the delta-encoded posting lists back to back, the term
+ * dictionary (term, ID count, offset and length of its posting list) and a footer holding the
+ * dictionary offset and the lowest and highest IDs in the segment.  The dictionary is read into memory on open, posting lists are read from
+ * the file on demand with positional reads, so one segment can serve many searches at once.
+ */
+public class IndexSegment {
+
+    private static final int MAGIC = 0x54575358; // "TWSX"
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 8;
+    private static final int FOOTER_LENGTH = 28;
+    private static final long[] EMPTY = new long[0];
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final TreeMap<String, Entry> dictionary;
+    private final long minId;
+    private final long maxId;
+
+    private IndexSegment(File file, RandomAccessFile raf, TreeMap<String, Entry> dictionary, long minId, long maxId) {
+        this.file = file;
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.dictionary = dictionary;
+        this.minId = minId;
+        this.maxId = maxId;
+    }
+
+    /**
+     * Opens an existing segment file and loads its dictionary
+     * @param file The segment file
+     * @return The open segment
+     * @throws IOException If the file can't be read or isn't a segment
+     */
+    public static IndexSegment open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() < HEADER_LENGTH + FOOTER_LENGTH || raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                throw new IOException("Not an index segment: " + file);
+            }
+            raf.seek(raf.length() - FOOTER_LENGTH);
+            long dictionaryOffset = raf.readLong();
+            long minId = raf.readLong();
+            long maxId = raf.readLong();
+            if (raf.readInt() != MAGIC) {
+                throw new IOException("Truncated index segment: " + file);
+            }
+
+            TreeMap<String, Entry> dictionary = new TreeMap<String, Entry>();
+            FileInputStream fis = new FileInputStream(file);
+            try {
+                fis.getChannel().position(dictionaryOffset);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(fis, 64 * 1024));
+                int terms = in.readInt();
+                for (int i = 0; i < terms; i++) {
+                    String term = in.readUTF();
+                    dictionary.put(term, new Entry(in.readInt(), in.readLong(), in.readInt()));
+                }
+            } finally {
+                fis.close();
+            }
+            return new IndexSegment(file, raf, dictionary, minId, maxId);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The segment file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return The terms of this segment, in order
+     */
+    public NavigableSet<String> terms() {
+        return dictionary.navigableKeySet();
+    }
+
+    /**
+     * @return The lowest ID in any posting list, Long.MAX_VALUE if the segment is empty
+     */
+    public long getMinId() {
+        return minId;
+    }
+
+    /**
+     * @return The highest ID in any posting list, -1 if the segment is empty
+     */
+    public long getMaxId() {
+        return maxId;
+    }
+
+    /**
+     * @param term A term, as produced by the Tokenizer
+     * @return How many tweets contain the term, without reading its posting list
+     */
+    public int count(String term) {
+        Entry entry = dictionary.get(term);
+        return entry != null ? entry.count : 0;
+    }
+
+    /**
+     * @return How many IDs are held across all the posting lists
+     */
+    public long postingCount() {
+        long n = 0;
+        for (Entry e : dictionary.values()) {
+            n += e.count;
+        }
+        return n;
+    }
+
+    /**
+     * @param term A term, as produced by the Tokenizer
+     * @return The ascending IDs of the tweets containing the term, empty if none
+     * @throws IOException If the posting list can't be read
+     */
+    public long[] postings(String term) throws IOException {
+        Entry entry = dictionary.get(term);
+        if (entry == null) {
+            return EMPTY;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+        long position = entry.offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of index segment " + file);
+            }
+            position += read;
+        }
+        return PostingList.decode(buffer.array(), entry.count);
+    }
+
+    /**
+     * Closes the segment file
+     */
+    public void close() {
+        try {
+            raf.close();
+        } catch (IOException e) {
+            // Nothing useful to do, we're done with it
+        }
+    }
+
+    private static class Entry {
+        final int count;
+        final long offset;
+        final int length;
+
+        Entry(int count, long offset, int length) {
+            this.count = count;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Writes a new segment.  Terms must be added in ascending order.  The segment is written to a
+     * temporary file and only renamed to its final name by finish(), so a partly written segment
+     * is never picked up.
+     */
+    public static class Writer {
+        private final File target;
+        private final File temp;
+        private final FileOutputStream fileStream;
+        private final DataOutputStream out;
+        private final List<String> terms = new ArrayList<String>();
+        private final List<Entry> entries = new ArrayList<Entry>();
+        private long offset = HEADER_LENGTH;
+        private String lastTerm = null;
+        private long minId = Long.MAX_VALUE;
+        private long maxId = -1;
+
+        /**
+         * @param target The segment file to create
+         * @throws IOException If the file can't be created
+         */
+        public Writer(File target) throws IOException {
+            this.target = target;
+            this.temp = new File(target.getPath() + ".tmp");
+            this.fileStream = new FileOutputStream(temp);
+            this.out = new DataOutputStream(new BufferedOutputStream(fileStream, 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        /**
+         * @param term The next term, greater than any added before
+         * @param ids The ascending IDs of the tweets containing the term
+         * @throws IOException If the write fails
+         */
+        public void add(String term, long[] ids) throws IOException {
+            if (lastTerm != null && term.compareTo(lastTerm) <= 0) {
+                throw new IllegalArgumentException("Terms out of order: " + lastTerm + ", " + term);
+            }
+            if (ids.length == 0) {
+                return;
+            }
+            byte[] bytes = PostingList.encode(ids);
+            out.write(bytes);
+            terms.add(term);
+            entries.add(new Entry(ids.length, offset, bytes.length));
+            offset += bytes.length;
+            lastTerm = term;
+            minId = Math.min(minId, ids[0]);
+            maxId = Math.max(maxId, ids[ids.length - 1]);
+        }
+
+        /**
+         * Writes the dictionary, syncs the file and moves it into place
+         * @return The new segment, opened
+         * @throws IOException If the write fails
+         */
+        public IndexSegment finish() throws IOException {
+            long dictionaryOffset = offset;
+            out.writeInt(terms.size());
+            for (int i = 0; i < terms.size(); i++) {
+                Entry e = entries.get(i);
+                out.writeUTF(terms.get(i));
+                out.writeInt(e.count);
+                out.writeLong(e.offset);
+                out.writeInt(e.length);
+            }
+            out.writeLong(dictionaryOffset);
+            out.writeLong(minId);
+            out.writeLong(maxId);
+            out.writeInt(MAGIC);
+            out.flush();
+            fileStream.getFD().sync();
+            out.close();
+            if (!temp.renameTo(target)) {
+                throw new IOException("Unable to rename " + temp + " to " + target);
+            }
+            return open(target);
+        }
+
+        /**
+         * Abandons the segment, removing the temporary file
+         */
+        public void abort() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Deleting it anyway
+            }
+            temp.delete();
+        }
+    }
+}
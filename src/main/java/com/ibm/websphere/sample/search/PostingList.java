@@ -0,0 +1,175 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.search;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Encoding and set operations for posting lists, i.e. the ascending status IDs of the tweets containing a term.
+ * <p>
+ * On disk a posting list is the first ID followed by the gap to each next ID, each written as a
+ * variable-length integer (7 bits per byte, high bit set on all but the last byte).  Consecutive
+ * tweet IDs are close together, so most gaps take a few bytes instead of eight.
+ */
+public class PostingList {
+
+    private static final long[] EMPTY = new long[0];
+
+    private PostingList() {
+    }
+
+    /**
+     * @param ids Strictly ascending, non-negative status IDs
+     * @return The delta-encoded form of the IDs
+     */
+    public static byte[] encode(long[] ids) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(ids.length * 3);
+        long previous = 0;
+        for (long id : ids) {
+            long delta = id - previous;
+            while ((delta & ~0x7FL) != 0) {
+                out.write((int) ((delta & 0x7F) | 0x80));
+                delta >>>= 7;
+            }
+            out.write((int) delta);
+            previous = id;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param bytes A posting list written by encode()
+     * @param count The number of IDs it holds
+     * @return The ascending status IDs
+     */
+    public static long[] decode(byte[] bytes, int count) {
+        long[] ids = new long[count];
+        long previous = 0;
+        int pos = 0;
+        for (int n = 0; n < count; n++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[pos++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            previous += delta;
+            ids[n] = previous;
+        }
+        return ids;
+    }
+
+    /**
+     * @param a Ascending IDs
+     * @param b Ascending IDs
+     * @return The ascending IDs in either list, without duplicates
+     */
+    public static long[] union(long[] a, long[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        long[] out = new long[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                out[n++] = a[i++];
+            } else if (a[i] > b[j]) {
+                out[n++] = b[j++];
+            } else {
+                out[n++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) {
+            out[n++] = a[i++];
+        }
+        while (j < b.length) {
+            out[n++] = b[j++];
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    /**
+     * @param a Ascending IDs
+     * @param b Ascending IDs
+     * @return The ascending IDs in both lists
+     */
+    public static long[] intersect(long[] a, long[] b) {
+        if (a.length == 0 || b.length == 0) {
+            return EMPTY;
+        }
+        long[] out = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * @param a Ascending IDs
+     * @param b Ascending IDs
+     * @return The ascending IDs in a but not in b
+     */
+    public static long[] difference(long[] a, long[] b) {
+        if (a.length == 0 || b.length == 0) {
+            return a;
+        }
+        long[] out = new long[a.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length) {
+            if (j == b.length || a[i] < b[j]) {
+                out[n++] = a[i++];
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                i++;
+                j++;
+            }
+        }
+        return n == out.length ? a : Arrays.copyOf(out, n);
+    }
+
+    /**
+     * @param ids IDs in any order, possibly repeated
+     * @return The same IDs sorted ascending, without duplicates
+     */
+    public static long[] sortedUnique(long[] ids) {
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || sorted[n - 1] != sorted[i]) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        return n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.search;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits tweet text (and search queries) into the terms of the search index.
+ * <p>
+ * A term is a run of letters, digits and underscores, lower-cased.  A run directly preceded
+ * by '#' or '@' produces both the plain word and the prefixed form, so "#MTA" can be found by
+ * searching for "mta" or, more narrowly, for "#mta".  Links are skipped entirely.
+ */
+public class Tokenizer {
+
+    private static final int MIN_TERM_LENGTH = 2;
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private Tokenizer() {
+    }
+
+    /**
+     * @param text The text to split, may be null
+     * @return The distinct terms of the text, in the order they were first seen
+     */
+    public static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<String>();
+        if (text == null) {
+            return terms;
+        }
+        int len = text.length();
+        int i = 0;
+        while (i < len) {
+            if (text.startsWith("http://", i) || text.startsWith("https://", i)) {
+                while (i < len && !Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                continue;
+            }
+            int cp = text.codePointAt(i);
+            if (!isTermChar(cp)) {
+                i += Character.charCount(cp);
+                continue;
+            }
+            int start = i;
+            while (i < len) {
+                cp = text.codePointAt(i);
+                if (!isTermChar(cp)) {
+                    break;
+                }
+                i += Character.charCount(cp);
+            }
+            int length = i - start;
+            if (length < MIN_TERM_LENGTH || length > MAX_TERM_LENGTH) {
+                continue;
+            }
+            String word = text.substring(start, i).toLowerCase(Locale.ROOT);
+            terms.add(word);
+            if (start > 0) {
+                char prefix = text.charAt(start - 1);
+                if (prefix == '#' || prefix == '@') {
+                    terms.add(prefix + word);
+                }
+            }
+        }
+        return terms;
+    }
+
+    private static boolean isTermChar(int cp) {
+        return Character.isLetterOrDigit(cp) || cp == '_';
+    }
+}
@@ -0,0 +1,667 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import com.ibm.websphere.sample.batch.NewTweetsEvent;
+import com.ibm.websphere.sample.batch.TweetsRemovedEvent;
+import com.ibm.websphere.sample.jpa.TweetDataObject;
+
+/**
+ * A full-text index over the text of the analyzed tweets, mapping each term to the status IDs
+ * of the tweets containing it.
+ * <p>
+ * New tweets arrive through the NewTweetsEvent the batch writer fires as each chunk commits, and
+ * are collected in an in-memory buffer that is searchable straight away.  A background task flushes
+ * the buffer to a new segment file every so often (or sooner once it gets big) and merges the
+ * smallest segments together once there are too many of them.
+ * <p>
+ * Tweets the retention job removes arrive through its TweetsRemovedEvent.  They are left out of
+ * searches straight away and dropped from the segments as those are next flushed or merged; once
+ * no segment can still hold them they are forgotten.  If many removed tweets are still waiting
+ * when the removals stop coming, every segment is merged into one to drop them all.
+ * <p>
+ * The index lives in the directory named by the <code>tweet.index.dir</code> system property,
+ * by default <code>tweet-index</code> under the shared resource directory.  A marker file is
+ * written on clean shutdown; if it is missing at startup (first run, or a crash lost the buffer)
+ * the index is rebuilt from TWITTER.TWEETS in the background.
+ */
+@ApplicationScoped
+public class TweetSearchIndex {
+    private final static Logger logger = Logger.getLogger("sample");
+
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".idx";
+    private static final String CLEAN_MARKER = "index.clean";
+    private static final String REMOVED_FILE = "removed.ids";
+
+    // Flush early once this many term/tweet pairs are buffered
+    private static final int FLUSH_THRESHOLD = 200000;
+    private static final long MAINTENANCE_INTERVAL_SECONDS = 30;
+    // Merge once there are more segments than this, combining this many of the smallest
+    private static final int MERGE_FACTOR = 8;
+    // Merge every segment once this many removed tweets are waiting to be dropped from them
+    private static final int PURGE_THRESHOLD = 100000;
+    private static final int REBUILD_PAGE_SIZE = 5000;
+    private static final long[] EMPTY = new long[0];
+
+    @PersistenceContext(unitName = "tweet-persister")
+    EntityManager entityManager;
+
+    @Resource
+    ManagedScheduledExecutorService executor;
+
+    private File directory;
+    private ScheduledFuture<?> maintenance;
+
+    // The buffer of not yet flushed postings, plus the one being flushed (if any), guarded by bufferLock
+    private final Object bufferLock = new Object();
+    private Map<String, IdList> buffer = new HashMap<String, IdList>();
+    private Map<String, IdList> flushing = null;
+    private int bufferedPostings = 0;
+    private boolean flushQueued = false;
+
+    // Segment maintenance (flush, merge) is serialized on segmentLock, searches just read the volatile list
+    private final Object segmentLock = new Object();
+    private volatile List<IndexSegment> segments = Collections.emptyList();
+    private final List<IndexSegment> retired = new ArrayList<IndexSegment>();
+    private int nextGeneration = 0;
+
+    // Batches of removed tweets that segments may still hold, numbered in the order they came, plus
+    // all of them as one ascending array (built when first needed), guarded by bufferLock
+    private final TreeMap<Long, long[]> removals = new TreeMap<Long, long[]>();
+    private long removalCount = 0;
+    private long[] removedIds = EMPTY;
+    // How many batches of removals each segment, and the last flush, has left out, guarded by segmentLock
+    private final Map<IndexSegment, Long> removalsApplied = new HashMap<IndexSegment, Long>();
+    private long flushedRemovals = 0;
+    private long removalsAtLastMaintenance = 0;
+
+    /**
+     * Opens the index when the application starts, scheduling a rebuild if it can't be trusted.
+     * @param init Unused
+     */
+    public void init(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        String dir = System.getProperty("tweet.index.dir");
+        if (dir == null) {
+            String shared = System.getProperty("shared.resource.dir");
+            dir = shared != null ? shared + File.separator + "tweet-index" : "tweet-index";
+        }
+        directory = new File(dir);
+        directory.mkdirs();
+
+        File marker = new File(directory, CLEAN_MARKER);
+        boolean clean = marker.exists();
+        List<IndexSegment> opened = new ArrayList<IndexSegment>();
+        File[] files = directory.listFiles();
+        for (File f : files != null ? files : new File[0]) {
+            String name = f.getName();
+            if (name.endsWith(".tmp")) {
+                f.delete();
+            } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                nextGeneration = Math.max(nextGeneration, generationOf(name) + 1);
+                if (clean) {
+                    try {
+                        opened.add(IndexSegment.open(f));
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "Unable to open index segment " + f, e);
+                        clean = false;
+                    }
+                }
+            }
+        }
+        File removedFile = new File(directory, REMOVED_FILE);
+        if (clean) {
+            try {
+                readRemoved(removedFile);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to read removed tweets from " + removedFile, e);
+                clean = false;
+            }
+        }
+        // From here until a clean shutdown, the files on disk may be behind the database
+        marker.delete();
+
+        if (clean) {
+            for (IndexSegment s : opened) {
+                removalsApplied.put(s, 0L);
+            }
+            segments = Collections.unmodifiableList(opened);
+            logger.info("Opened search index in " + directory + " with " + opened.size() + " segments");
+        } else {
+            for (IndexSegment s : opened) {
+                s.close();
+            }
+            for (File f : files != null ? files : new File[0]) {
+                if (f.getName().startsWith(SEGMENT_PREFIX)) {
+                    f.delete();
+                }
+            }
+            removedFile.delete();
+            logger.info("Rebuilding search index in " + directory + " from the database");
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    rebuild();
+                }
+            });
+        }
+
+        maintenance = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                maintain();
+            }
+        }, MAINTENANCE_INTERVAL_SECONDS, MAINTENANCE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Flushes the buffer and closes the segments, marking the index as clean.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (maintenance != null) {
+            maintenance.cancel(false);
+        }
+        try {
+            flush();
+            synchronized (segmentLock) {
+                pruneRemovals();
+                writeRemoved(new File(directory, REMOVED_FILE));
+                for (IndexSegment s : segments) {
+                    s.close();
+                }
+                closeRetired();
+                segments = Collections.emptyList();
+            }
+            new File(directory, CLEAN_MARKER).createNewFile();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to flush search index, it will be rebuilt at the next start", e);
+        }
+    }
+
+    /**
+     * Adds the tweets of a chunk once it has committed.
+     * @param event The tweets inserted by the chunk
+     */
+    public void onNewTweets(@Observes(during = TransactionPhase.AFTER_SUCCESS) NewTweetsEvent event) {
+        for (TweetDataObject tweet : event.getTweets()) {
+            add(tweet.getStatusId(), tweet.getTextContent());
+        }
+    }
+
+    /**
+     * Leaves out the tweets removed by a chunk of the retention job once it has committed.
+     * @param event The tweets removed by the chunk
+     */
+    public void onTweetsRemoved(@Observes(during = TransactionPhase.AFTER_SUCCESS) TweetsRemovedEvent event) {
+        long[] ids = new long[event.getStatusIds().size()];
+        int n = 0;
+        for (Long id : event.getStatusIds()) {
+            ids[n++] = id;
+        }
+        synchronized (bufferLock) {
+            removals.put(++removalCount, PostingList.sortedUnique(ids));
+            removedIds = null;
+        }
+    }
+
+    /**
+     * Finds the newest tweets containing every term of a query, a page at a time.
+     * <p>
+     * All the terms of a tweet are indexed together, so each segment (and the buffer) is intersected on
+     * its own and only the newest matches are kept.  Segments are visited newest first, and once a full
+     * page has been found, segments holding nothing newer than it aren't read at all.
+     * @param query Free text, e.g. "late train #MTA"
+     * @param before Only tweets with status IDs below this are returned, Long.MAX_VALUE for the first page
+     * @param max The page size
+     * @return The status IDs of up to max matching tweets, newest (highest) first
+     * @throws IOException If a segment can't be read
+     */
+    public long[] search(String query, long before, int max) throws IOException {
+        Set<String> terms = Tokenizer.terms(query);
+        if (terms.isEmpty() || max <= 0) {
+            return EMPTY;
+        }
+        long[] gone = removed();
+        // The buffer holds the newest tweets, so start with it
+        long[] page = newest(EMPTY, PostingList.difference(bufferedMatches(terms), gone), before, max);
+
+        List<IndexSegment> byMaxId = new ArrayList<IndexSegment>(segments);
+        Collections.sort(byMaxId, new Comparator<IndexSegment>() {
+            @Override
+            public int compare(IndexSegment a, IndexSegment b) {
+                return Long.compare(b.getMaxId(), a.getMaxId());
+            }
+        });
+        for (IndexSegment s : byMaxId) {
+            if (page.length == max && s.getMaxId() <= page[0]) {
+                // Neither this segment nor any after it has anything newer than the page so far
+                break;
+            }
+            if (s.getMinId() < before) {
+                page = newest(page, PostingList.difference(segmentMatches(s, terms), gone), before, max);
+            }
+        }
+
+        long[] newestFirst = new long[page.length];
+        for (int i = 0; i < page.length; i++) {
+            newestFirst[i] = page[page.length - 1 - i];
+        }
+        return newestFirst;
+    }
+
+    /**
+     * @param page The ascending IDs found so far, at most max of them
+     * @param found More ascending IDs
+     * @param before The exclusive upper bound on the IDs
+     * @param max The page size
+     * @return The highest max IDs of both, below before, ascending
+     */
+    private static long[] newest(long[] page, long[] found, long before, int max) {
+        int end = Arrays.binarySearch(found, before);
+        if (end < 0) {
+            end = -end - 1;
+        }
+        long[] candidates = PostingList.union(page, Arrays.copyOfRange(found, Math.max(0, end - max), end));
+        return candidates.length <= max ? candidates : Arrays.copyOfRange(candidates, candidates.length - max, candidates.length);
+    }
+
+    private static long[] segmentMatches(IndexSegment s, Set<String> terms) throws IOException {
+        List<String> byCount = new ArrayList<String>(terms);
+        for (String term : byCount) {
+            if (s.count(term) == 0) {
+                return EMPTY;
+            }
+        }
+        // Intersect the shortest lists first so the intermediate results stay small
+        Collections.sort(byCount, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Integer.compare(s.count(a), s.count(b));
+            }
+        });
+        long[] result = s.postings(byCount.get(0));
+        for (int i = 1; i < byCount.size() && result.length > 0; i++) {
+            result = PostingList.intersect(result, s.postings(byCount.get(i)));
+        }
+        return result;
+    }
+
+    private long[] bufferedMatches(Set<String> terms) {
+        long[] result = null;
+        for (String term : terms) {
+            long[] ids = buffered(term);
+            result = result == null ? ids : PostingList.intersect(result, ids);
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private void add(long statusId, String text) {
+        boolean queueFlush = false;
+        synchronized (bufferLock) {
+            for (String term : Tokenizer.terms(text)) {
+                IdList ids = buffer.get(term);
+                if (ids == null) {
+                    ids = new IdList();
+                    buffer.put(term, ids);
+                }
+                ids.add(statusId);
+                bufferedPostings++;
+            }
+            if (bufferedPostings >= FLUSH_THRESHOLD && !flushQueued) {
+                flushQueued = true;
+                queueFlush = true;
+            }
+        }
+        if (queueFlush) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "Unable to flush search index", e);
+                    }
+                }
+            });
+        }
+    }
+
+    private long[] buffered(String term) {
+        synchronized (bufferLock) {
+            long[] ids = EMPTY;
+            IdList b = buffer.get(term);
+            if (b != null) {
+                ids = b.toArray();
+            }
+            if (flushing != null) {
+                IdList f = flushing.get(term);
+                if (f != null) {
+                    ids = PostingList.union(PostingList.sortedUnique(ids), PostingList.sortedUnique(f.toArray()));
+                }
+            }
+            return PostingList.sortedUnique(ids);
+        }
+    }
+
+    /**
+     * Writes the buffered postings out as a new segment.
+     */
+    private void flush() throws IOException {
+        synchronized (segmentLock) {
+            Map<String, IdList> toFlush;
+            long applied;
+            long[] gone;
+            synchronized (bufferLock) {
+                flushQueued = false;
+                applied = removalCount;
+                gone = removed();
+                if (buffer.isEmpty()) {
+                    flushedRemovals = applied;
+                    return;
+                }
+                toFlush = buffer;
+                flushing = toFlush;
+                buffer = new HashMap<String, IdList>();
+                bufferedPostings = 0;
+            }
+
+            IndexSegment.Writer writer = new IndexSegment.Writer(nextSegmentFile());
+            try {
+                for (String term : new TreeSet<String>(toFlush.keySet())) {
+                    writer.add(term, PostingList.difference(PostingList.sortedUnique(toFlush.get(term).toArray()), gone));
+                }
+                IndexSegment segment = writer.finish();
+                removalsApplied.put(segment, applied);
+                flushedRemovals = applied;
+                List<IndexSegment> updated = new ArrayList<IndexSegment>(segments);
+                updated.add(segment);
+                segments = Collections.unmodifiableList(updated);
+            } catch (IOException e) {
+                writer.abort();
+                // Put the postings back so they aren't lost
+                synchronized (bufferLock) {
+                    for (Map.Entry<String, IdList> entry : toFlush.entrySet()) {
+                        IdList ids = buffer.get(entry.getKey());
+                        if (ids == null) {
+                            buffer.put(entry.getKey(), entry.getValue());
+                        } else {
+                            ids.addAll(entry.getValue());
+                        }
+                        bufferedPostings += entry.getValue().size;
+                    }
+                }
+                throw e;
+            } finally {
+                synchronized (bufferLock) {
+                    flushing = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the smallest segments into one once there are more than MERGE_FACTOR of them, or every
+     * segment once PURGE_THRESHOLD removed tweets are waiting and no more have come since the last pass.
+     */
+    private void merge() throws IOException {
+        synchronized (segmentLock) {
+            long applied;
+            long[] gone;
+            synchronized (bufferLock) {
+                applied = removalCount;
+                gone = removed();
+            }
+            boolean purge = gone.length >= PURGE_THRESHOLD && applied == removalsAtLastMaintenance && !segments.isEmpty();
+            removalsAtLastMaintenance = applied;
+            if (segments.size() <= MERGE_FACTOR && !purge) {
+                return;
+            }
+            List<IndexSegment> bySize = new ArrayList<IndexSegment>(segments);
+            Collections.sort(bySize, new Comparator<IndexSegment>() {
+                @Override
+                public int compare(IndexSegment a, IndexSegment b) {
+                    return Long.compare(a.getFile().length(), b.getFile().length());
+                }
+            });
+            List<IndexSegment> toMerge = purge ? bySize : bySize.subList(0, MERGE_FACTOR);
+
+            TreeSet<String> terms = new TreeSet<String>();
+            for (IndexSegment s : toMerge) {
+                terms.addAll(s.terms());
+            }
+            IndexSegment.Writer writer = new IndexSegment.Writer(nextSegmentFile());
+            IndexSegment merged;
+            try {
+                for (String term : terms) {
+                    long[] ids = EMPTY;
+                    for (IndexSegment s : toMerge) {
+                        ids = PostingList.union(ids, s.postings(term));
+                    }
+                    writer.add(term, PostingList.difference(ids, gone));
+                }
+                merged = writer.finish();
+            } catch (IOException e) {
+                writer.abort();
+                throw e;
+            }
+
+            List<IndexSegment> updated = new ArrayList<IndexSegment>(segments);
+            updated.removeAll(toMerge);
+            updated.add(merged);
+            segments = Collections.unmodifiableList(updated);
+            for (IndexSegment s : toMerge) {
+                removalsApplied.remove(s);
+            }
+            removalsApplied.put(merged, applied);
+            // Searches already under way may still be reading these, so they are closed on the next pass
+            retired.addAll(toMerge);
+            logger.fine("Merged " + toMerge.size() + " search index segments into " + merged.getFile().getName());
+        }
+    }
+
+    private void maintain() {
+        try {
+            synchronized (segmentLock) {
+                closeRetired();
+            }
+            flush();
+            merge();
+            synchronized (segmentLock) {
+                pruneRemovals();
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Search index maintenance failed", e);
+        }
+    }
+
+    /**
+     * Forgets the batches of removed tweets that every segment, and the buffer, has left out.
+     * Called holding segmentLock.
+     */
+    private void pruneRemovals() {
+        long upTo = flushedRemovals;
+        for (IndexSegment s : segments) {
+            upTo = Math.min(upTo, removalsApplied.get(s));
+        }
+        synchronized (bufferLock) {
+            SortedMap<Long, long[]> done = removals.headMap(upTo + 1);
+            if (!done.isEmpty()) {
+                done.clear();
+                removedIds = null;
+            }
+        }
+    }
+
+    /**
+     * @return Every removed tweet that segments may still hold, ascending
+     */
+    private long[] removed() {
+        synchronized (bufferLock) {
+            if (removedIds == null) {
+                int n = 0;
+                for (long[] ids : removals.values()) {
+                    n += ids.length;
+                }
+                long[] all = new long[n];
+                n = 0;
+                for (long[] ids : removals.values()) {
+                    System.arraycopy(ids, 0, all, n, ids.length);
+                    n += ids.length;
+                }
+                removedIds = PostingList.sortedUnique(all);
+            }
+            return removedIds;
+        }
+    }
+
+    private void readRemoved(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int count = in.readInt();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            if (count > 0) {
+                // None of the segments on disk has left these out yet
+                removals.put(++removalCount, PostingList.decode(bytes, count));
+                removedIds = null;
+                flushedRemovals = removalCount;
+            }
+        }
+    }
+
+    private void writeRemoved(File file) throws IOException {
+        long[] ids = removed();
+        byte[] bytes = PostingList.encode(ids);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(ids.length);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private void closeRetired() {
+        for (IndexSegment s : retired) {
+            s.close();
+            s.getFile().delete();
+        }
+        retired.clear();
+    }
+
+    /**
+     * Indexes every tweet already in the database, a page at a time in status ID order.
+     */
+    private void rebuild() {
+        try {
+            long last = Long.MIN_VALUE;
+            int count = 0;
+            while (true) {
+                List<Object[]> rows = entityManager.createQuery(
+                        "SELECT t.statusId, t.textContent FROM TweetDataObject t WHERE t.statusId > :last ORDER BY t.statusId",
+                        Object[].class).setParameter("last", last).setMaxResults(REBUILD_PAGE_SIZE).getResultList();
+                if (rows.isEmpty()) {
+                    break;
+                }
+                for (Object[] row : rows) {
+                    last = (Long) row[0];
+                    add(last, (String) row[1]);
+                }
+                count += rows.size();
+            }
+            flush();
+            logger.info("Search index rebuilt from " + count + " tweets");
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Unable to rebuild the search index", e);
+        }
+    }
+
+    private File nextSegmentFile() {
+        return new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, nextGeneration++, SEGMENT_SUFFIX));
+    }
+
+    private static int generationOf(String segmentName) {
+        try {
+            return Integer.parseInt(segmentName.substring(SEGMENT_PREFIX.length(), segmentName.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A growable list of status IDs
+     */
+    private static class IdList {
+        long[] ids = new long[4];
+        int size = 0;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        void addAll(IdList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.ids[i]);
+            }
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -20,11 +20,15 @@ import javax.annotation.PostConstruct;
 import javax.annotation.security.RunAs;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
+import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.ibm.websphere.sample.batch.SentimentRollupSeeder;
+
 @Singleton
 @Startup
 @RunAs("JOBSTARTER")
@@ -33,10 +37,21 @@ public class ControllerBean {
     EntityManager entityManager;
     private final static Logger logger = Logger.getLogger("sample");
 
+    @Inject
+    IngestScheduler ingestScheduler;
+
+    @Inject
+    SentimentRollupSeeder rollupSeeder;
+
     @PostConstruct
     public void initialize() {
-        logger.warning("\n\nRunning batch job from the ControllerBean startup EJB\n\n");
-        TestJobStarter t = new TestJobStarter();
-        t.beginJob();
+        try {
+            // Before the job adds to the rollups, so the tweets already stored are counted in them
+            rollupSeeder.seedIfEmpty();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Unable to seed the sentiment rollups from the stored tweets", e);
+        }
+        logger.warning("\n\nRunning batch job over any new tweet files from the ControllerBean startup EJB\n\n");
+        ingestScheduler.runNow();
     }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.startup;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.Date;
+
+import javax.enterprise.concurrent.LastExecution;
+import javax.enterprise.concurrent.Trigger;
+
+/**
+ * A Trigger for ManagedScheduledExecutorService that runs a task on a cron-style schedule.
+ * <p>
+ * The schedule has the five usual fields: minute (0-59), hour (0-23), day of month (1-31),
+ * month (1-12) and day of week (0-7, Sunday being 0 or 7).  Each field is <code>*</code>, a number,
+ * a range like <code>9-17</code>, any of these with a step like <code>*&#47;15</code>, or a comma
+ * separated list of them.  As with cron, when both day fields are restricted a day matching
+ * either one will do.  Times are in the server's time zone.
+ */
+public class CronTrigger implements Trigger {
+
+    private final String expression;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    /**
+     * @param expression The schedule, e.g. "*&#47;15 * * * *" for every quarter hour
+     * @throws IllegalArgumentException If the schedule can't be parsed
+     */
+    public CronTrigger(String expression) {
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Expected 5 fields in schedule: " + expression);
+        }
+        this.expression = expression;
+        minutes = parse(fields[0], 0, 59);
+        hours = parse(fields[1], 0, 23);
+        daysOfMonth = parse(fields[2], 1, 31);
+        months = parse(fields[3], 1, 12);
+        daysOfWeek = parse(fields[4], 0, 7);
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+        }
+        anyDayOfMonth = fields[2].startsWith("*");
+        anyDayOfWeek = fields[4].startsWith("*");
+    }
+
+    @Override
+    public Date getNextRunTime(LastExecution lastExecution, Date taskScheduledTime) {
+        Date after = lastExecution != null ? lastExecution.getScheduledStart() : taskScheduledTime;
+        // Don't try to catch up on runs missed while a long one was going
+        if (after.getTime() < System.currentTimeMillis()) {
+            after = new Date();
+        }
+        return Date.from(next(ZonedDateTime.ofInstant(after.toInstant(), zone)).toInstant());
+    }
+
+    @Override
+    public boolean skipRun(LastExecution lastExecution, Date scheduledRunTime) {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * @param after A time
+     * @return The first matching minute after it
+     */
+    ZonedDateTime next(ZonedDateTime after) {
+        ZonedDateTime t = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        // Any schedule that matches at all does so within a few years (Feb 29ths)
+        ZonedDateTime limit = t.plusYears(5);
+        while (t.isBefore(limit)) {
+            if (!months.get(t.getMonthValue())) {
+                t = t.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!dayMatches(t)) {
+                t = t.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(t.getHour())) {
+                t = t.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(t.getMinute())) {
+                t = t.plusMinutes(1);
+            } else {
+                return t;
+            }
+        }
+        throw new IllegalStateException("Schedule never runs: " + expression);
+    }
+
+    private boolean dayMatches(ZonedDateTime t) {
+        boolean dom = daysOfMonth.get(t.getDayOfMonth());
+        boolean dow = daysOfWeek.get(t.getDayOfWeek().getValue() % 7);
+        if (anyDayOfMonth || anyDayOfWeek) {
+            return dom && dow;
+        }
+        return dom || dow;
+    }
+
+    private static BitSet parse(String field, int min, int max) {
+        BitSet bits = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = Integer.parseInt(part.substring(slash + 1));
+                part = part.substring(0, slash);
+            }
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else if (part.indexOf('-') > 0) {
+                from = Integer.parseInt(part.substring(0, part.indexOf('-')));
+                to = Integer.parseInt(part.substring(part.indexOf('-') + 1));
+            } else {
+                from = Integer.parseInt(part);
+                to = slash >= 0 ? max : from;
+            }
+            if (from < min || to > max || from > to || step < 1) {
+                throw new IllegalArgumentException("Bad schedule field: " + field);
+            }
+            for (int i = from; i <= to; i += step) {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.startup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.batch.runtime.BatchStatus;
+import javax.ejb.EJB;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+
+/**
+ * Runs TweetFileProcessing over just the tweet files that haven't been ingested yet.
+ * <p>
+ * Each run checks the input directory (the <code>tweet.ingest.dir</code> system property, by default
+ * <code>snatched-tweets</code> under the shared resource directory, like the job's defaultInputDir)
+ * against an IngestWatermark kept in <code>tweet.ingest.watermark</code> (by default
+ * <code>tweet-ingest-watermark.json</code> under the shared resource directory), and starts the job with its
+ * <code>inputFiles</code> parameter set to the new and changed files.  A file without its snatcher index
+ * sidecar (written when the snatcher closes the file) that was modified within the last
+ * <code>tweet.ingest.settleSeconds</code> (default 600) is left for the next run, as it may still be
+ * being written or copied in.  A run is skipped if an execution of the job
+ * is still going.  Executions started or restarted through the REST API go through the same check
+ * (see startIfIdle), as do the files the SpoolTrigger picks up, so only one execution of the job runs at
+ * a time whatever started it, and a file is only read again if it changes.
+ * <p>
+ * A run happens once at startup (see ControllerBean) and, if <code>tweet.ingest.schedule</code> is set,
+ * on that cron-style schedule (see CronTrigger), e.g. <code>*&#47;15 * * * *</code> for every quarter hour.
+ */
+@ApplicationScoped
+public class IngestScheduler {
+    private final static Logger logger = Logger.getLogger("sample");
+
+    private static final String JOB = "TweetFileProcessing";
+    private static final String INPUT_EXT = ".dat";
+    private static final String INDEX_EXT = ".idx";
+    private static final long DEFAULT_SETTLE_SECONDS = 600;
+
+    @Resource
+    ManagedScheduledExecutorService executor;
+
+    @EJB
+    JobSubmitter submitter;
+
+    private File inputDir;
+    private File watermarkFile;
+    private long settleMillis;
+    private IngestWatermark watermark;
+    private ScheduledFuture<?> schedule;
+
+    @PostConstruct
+    private void configure() {
+        String shared = System.getProperty("shared.resource.dir", ".");
+        inputDir = new File(System.getProperty("tweet.ingest.dir", shared + File.separator + "snatched-tweets"));
+        watermarkFile = new File(System.getProperty("tweet.ingest.watermark", shared + File.separator + "tweet-ingest-watermark.json"));
+        settleMillis = Long.getLong("tweet.ingest.settleSeconds", DEFAULT_SETTLE_SECONDS) * 1000;
+    }
+
+    /**
+     * Starts the schedule, if there is one, when the application starts.
+     * @param init Unused
+     */
+    public void init(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        String cron = System.getProperty("tweet.ingest.schedule");
+        if (cron != null) {
+            CronTrigger trigger = new CronTrigger(cron);
+            logger.info("Ingesting new tweet files from " + inputDir + " on schedule " + trigger);
+            schedule = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    ingest();
+                }
+            }, trigger);
+        }
+    }
+
+    @PreDestroy
+    private void stopSchedule() {
+        if (schedule != null) {
+            schedule.cancel(false);
+        }
+    }
+
+    /**
+     * Starts a run in the background, now.
+     */
+    public void runNow() {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                ingest();
+            }
+        });
+    }
+
+    /**
+     * Starts an execution of the job some other way (a request to the REST API, say) under the same guard
+     * as the scheduled runs, so it can't run alongside one of them or another request's.
+     * @param starter Starts or restarts the execution and returns its ID
+     * @return The new execution's ID, or null if an execution of the job is still going
+     */
+    public synchronized Long startIfIdle(LongSupplier starter) {
+        List<Long> running = submitter.getRunningExecutions(JOB);
+        if (!running.isEmpty()) {
+            logger.info("Not starting " + JOB + ", execution(s) " + running + " still running");
+            return null;
+        }
+        return starter.getAsLong();
+    }
+
+    /**
+     * Records the outcome of earlier runs, then starts a job over whatever is new, unless a job is still running.
+     */
+    synchronized void ingest() {
+        try {
+            if (!idle()) {
+                return;
+            }
+
+            File[] files = inputDir.listFiles();
+            if (files == null) {
+                logger.info("Unable to list tweet files in " + inputDir);
+                return;
+            }
+            Arrays.sort(files);
+            long settled = System.currentTimeMillis() - settleMillis;
+            List<File> complete = new ArrayList<File>();
+            for (File f : files) {
+                String name = f.getName();
+                if (f.isFile() && (name.endsWith(INPUT_EXT) || name.endsWith(INPUT_EXT + ".gz"))
+                        && (f.lastModified() < settled || new File(f.getPath() + INDEX_EXT).exists())) {
+                    complete.add(f);
+                }
+            }
+            if (!launch(complete)) {
+                logger.info("No new tweet files in " + inputDir);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.info("Something went wrong: " + e);
+        }
+    }
+
+    /**
+     * Starts a job over the given tweet files, leaving out any the watermark shows are ingested already,
+     * under the same guard as the scheduled runs (see SpoolTrigger).
+     * @param files Complete tweet files
+     * @return false if an execution of the job is still going, so nothing was started, true otherwise
+     * (including when every file had been ingested already)
+     * @throws IOException For errors reading the files or the watermark
+     */
+    public synchronized boolean ingest(List<File> files) throws IOException {
+        if (!idle()) {
+            return false;
+        }
+        launch(files);
+        return true;
+    }
+
+    /**
+     * Records the outcome of earlier executions in the watermark.
+     * @return Whether no execution of the job is still going
+     */
+    private boolean idle() throws IOException {
+        if (watermark == null) {
+            watermark = IngestWatermark.load(watermarkFile);
+        }
+        if (resolvePending()) {
+            watermark.save();
+        }
+
+        List<Long> running = submitter.getRunningExecutions(JOB);
+        if (!running.isEmpty()) {
+            logger.info("Not starting " + JOB + ", execution(s) " + running + " still running");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Starts a job over whichever of the files are new or changed, and notes them in the watermark.
+     * @param files Complete tweet files
+     * @return Whether there were any to start a job over
+     */
+    private boolean launch(List<File> files) throws IOException {
+        List<IngestWatermark.Entry> entries = new ArrayList<IngestWatermark.Entry>();
+        List<String> paths = new ArrayList<String>();
+        for (File f : files) {
+            IngestWatermark.Entry entry = watermark.checkFile(f);
+            if (entry != null) {
+                entries.add(entry);
+                paths.add(f.getCanonicalPath());
+            }
+        }
+        if (entries.isEmpty()) {
+            watermark.save();
+            return false;
+        }
+
+        Properties parameters = new Properties();
+        parameters.setProperty("inputFiles", String.join(File.pathSeparator, paths));
+        long executionId = submitter.start(JOB, parameters);
+        watermark.launched(executionId, entries);
+        watermark.save();
+        logger.info("Started execution " + executionId + " of " + JOB + " for " + entries.size() + " new tweet files");
+        return true;
+    }
+
+    /**
+     * @return Whether any pending execution has finished, one way or the other
+     */
+    private boolean resolvePending() {
+        boolean changed = false;
+        for (Long executionId : new ArrayList<Long>(watermark.pendingExecutions())) {
+            BatchStatus status = submitter.getBatchStatus(executionId);
+            if (status == BatchStatus.COMPLETED) {
+                watermark.completed(executionId);
+                changed = true;
+            } else if (status == null || status == BatchStatus.FAILED || status == BatchStatus.STOPPED || status == BatchStatus.ABANDONED) {
+                logger.info("Execution " + executionId + " ended " + status + ", its files will be read again");
+                watermark.abandoned(executionId);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
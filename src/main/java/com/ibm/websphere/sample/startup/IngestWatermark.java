@@ -0,0 +1,213 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.startup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import javax.json.JsonWriter;
+
+/**
+ * Remembers which tweet files have been fully ingested, so scheduled runs only need to read
+ * files that are new or have changed since.
+ * <p>
+ * A file is known by its name, size, modification time and CRC-32 checksum.  A file whose name,
+ * size and modification time all match is taken as ingested without reading it; the checksum is
+ * only worked out for files that look new, so a file that was merely copied or touched is not
+ * ingested again.  Files handed to an execution are held as pending until that execution
+ * completes.  Everything is kept in a small JSON file, replaced atomically on each save.
+ */
+public class IngestWatermark {
+
+    /**
+     * What is known about one tweet file
+     */
+    public static class Entry {
+        final String name;
+        final long size;
+        final long lastModified;
+        final long checksum;
+
+        Entry(String name, long size, long lastModified, long checksum) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+        }
+    }
+
+    private final File file;
+    private final Map<String, Entry> ingested = new HashMap<String, Entry>();
+    private final Map<Long, List<Entry>> pending = new LinkedHashMap<Long, List<Entry>>();
+
+    private IngestWatermark(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param file Where the watermark is kept
+     * @return The watermark saved there, or an empty one if there is none yet
+     * @throws IOException For errors reading the file
+     */
+    public static IngestWatermark load(File file) throws IOException {
+        IngestWatermark watermark = new IngestWatermark(file);
+        if (file.exists()) {
+            try (JsonReader reader = Json.createReader(new FileInputStream(file))) {
+                JsonObject saved = reader.readObject();
+                for (Entry e : fromJson(saved.getJsonArray("ingested"))) {
+                    watermark.ingested.put(e.name, e);
+                }
+                JsonObject pending = saved.getJsonObject("pending");
+                for (String id : pending.keySet()) {
+                    watermark.pending.put(Long.valueOf(id), fromJson(pending.getJsonArray(id)));
+                }
+            }
+        }
+        return watermark;
+    }
+
+    /**
+     * Checks a file against the watermark, reading it only if its size or modification time changed.
+     * @param f A tweet file
+     * @return null if the file has been ingested already, otherwise a description of it to pass to launched()
+     * @throws IOException For errors reading the file
+     */
+    public Entry checkFile(File f) throws IOException {
+        Entry known = ingested.get(f.getName());
+        long size = f.length();
+        long lastModified = f.lastModified();
+        if (known != null && known.size == size && known.lastModified == lastModified) {
+            return null;
+        }
+        Entry current = new Entry(f.getName(), size, lastModified, checksum(f));
+        if (known != null && known.size == size && known.checksum == current.checksum) {
+            // Same contents, just a new timestamp
+            ingested.put(current.name, current);
+            return null;
+        }
+        return current;
+    }
+
+    /**
+     * Notes the files handed to a new execution.
+     * @param executionId The execution
+     * @param entries Its files, from checkFile()
+     */
+    public void launched(long executionId, List<Entry> entries) {
+        pending.put(executionId, entries);
+    }
+
+    /**
+     * @return The executions whose files are not yet known to be ingested
+     */
+    public Set<Long> pendingExecutions() {
+        return pending.keySet();
+    }
+
+    /**
+     * Marks the files of an execution as ingested.
+     * @param executionId An execution that completed
+     */
+    public void completed(long executionId) {
+        for (Entry e : pending.remove(executionId)) {
+            ingested.put(e.name, e);
+        }
+    }
+
+    /**
+     * Forgets the files of an execution that didn't complete, so the next run picks them up again.
+     * @param executionId An execution that failed, stopped or was abandoned
+     */
+    public void abandoned(long executionId) {
+        pending.remove(executionId);
+    }
+
+    /**
+     * Writes the watermark out, replacing the previous one.
+     * @throws IOException For errors writing the file
+     */
+    public void save() throws IOException {
+        JsonObjectBuilder pendingJson = Json.createObjectBuilder();
+        for (Map.Entry<Long, List<Entry>> p : pending.entrySet()) {
+            pendingJson.add(p.getKey().toString(), toJson(p.getValue()));
+        }
+        JsonObject json = Json.createObjectBuilder()
+                .add("ingested", toJson(new ArrayList<Entry>(ingested.values())))
+                .add("pending", pendingJson)
+                .build();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp); JsonWriter writer = Json.createWriter(out)) {
+            writer.writeObject(json);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long checksum(File f) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(f)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                crc.update(buf, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static JsonArrayBuilder toJson(List<Entry> entries) {
+        JsonArrayBuilder array = Json.createArrayBuilder();
+        for (Entry e : entries) {
+            array.add(Json.createObjectBuilder()
+                    .add("name", e.name)
+                    .add("size", e.size)
+                    .add("mtime", e.lastModified)
+                    .add("checksum", e.checksum));
+        }
+        return array;
+    }
+
+    private static List<Entry> fromJson(JsonArray array) {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (JsonValue v : array) {
+            JsonObject o = (JsonObject) v;
+            entries.add(new Entry(o.getString("name"), o.getJsonNumber("size").longValue(),
+                    o.getJsonNumber("mtime").longValue(), o.getJsonNumber("checksum").longValue()));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.startup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.annotation.security.RunAs;
+import javax.batch.operations.JobOperator;
+import javax.batch.operations.NoSuchJobException;
+import javax.batch.operations.NoSuchJobExecutionException;
+import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.ejb.Stateless;
+
+/**
+ * Starts, stops and restarts batch jobs on behalf of application code that runs without
+ * a batch role of its own (scheduled tasks and the like), running as the JOBSTARTER
+ * role just like the ControllerBean startup EJB does.
+ */
+@Stateless
+@RunAs("JOBSTARTER")
+public class JobSubmitter {
+
+    /**
+     * Prefix of the system properties passed to every job this starts, e.g. setting
+     * <code>tweet.job.persistAnalysis=true</code> passes persistAnalysis=true.
+     */
+    public static final String PARAMETER_PREFIX = "tweet.job.";
+
+    /**
+     * Starts a job, with the parameters set through system properties plus the ones given.
+     * @param jobXMLName The job to start
+     * @param parameters Job parameters, overriding any set through system properties
+     * @return The new execution's ID
+     */
+    public long start(String jobXMLName, Properties parameters) {
+        Properties p = defaultParameters();
+        p.putAll(parameters);
+        return BatchRuntime.getJobOperator().start(jobXMLName, p);
+    }
+
+    /**
+     * @param executionId The execution to stop
+     */
+    public void stop(long executionId) {
+        BatchRuntime.getJobOperator().stop(executionId);
+    }
+
+    /**
+     * @param executionId The failed or stopped execution to restart
+     * @param parameters Job parameters for the restart
+     * @return The new execution's ID
+     */
+    public long restart(long executionId, Properties parameters) {
+        Properties p = defaultParameters();
+        p.putAll(parameters);
+        return BatchRuntime.getJobOperator().restart(executionId, p);
+    }
+
+    /**
+     * @param jobName The job's name
+     * @return The IDs of its executions that are starting, running or stopping
+     */
+    public List<Long> getRunningExecutions(String jobName) {
+        JobOperator jobOperator = BatchRuntime.getJobOperator();
+        try {
+            return jobOperator.getRunningExecutions(jobName);
+        } catch (NoSuchJobException e) {
+            // Never run yet
+            return new ArrayList<Long>();
+        }
+    }
+
+    /**
+     * @param executionId An execution
+     * @return Its batch status, or null if the job repository has no such execution
+     */
+    public BatchStatus getBatchStatus(long executionId) {
+        try {
+            return BatchRuntime.getJobOperator().getJobExecution(executionId).getBatchStatus();
+        } catch (NoSuchJobExecutionException e) {
+            return null;
+        }
+    }
+
+    private static Properties defaultParameters() {
+        Properties p = new Properties();
+        for (Map.Entry<Object, Object> e : System.getProperties().entrySet()) {
+            String key = e.getKey().toString();
+            if (key.startsWith(PARAMETER_PREFIX)) {
+                p.setProperty(key.substring(PARAMETER_PREFIX.length()), e.getValue().toString());
+            }
+        }
+        return p;
+    }
+}
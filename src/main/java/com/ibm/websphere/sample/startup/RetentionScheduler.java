@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.startup;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ScheduledFuture;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.EJB;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+
+/**
+ * Runs TweetRetention on the cron-style schedule (see CronTrigger) in the <code>tweet.retention.schedule</code>
+ * system property, if it is set, e.g. <code>0 3 * * *</code> for 3am every day.  Its parameters can be set
+ * with system properties prefixed <code>tweet.retention.</code>: <code>retentionDays</code>, <code>archiveDir</code>,
+ * <code>partitions</code>, <code>chunkSize</code> and <code>compress</code>.  A run is skipped while an
+ * execution of TweetRetention or TweetFileProcessing is still going, as compressing the tables would hold
+ * up the ingest job.
+ */
+@ApplicationScoped
+public class RetentionScheduler {
+    private final static Logger logger = Logger.getLogger("sample");
+
+    private static final String JOB = "TweetRetention";
+    private static final String INGEST_JOB = "TweetFileProcessing";
+    private static final String PREFIX = "tweet.retention.";
+    private static final String[] PARAMETERS = { "retentionDays", "archiveDir", "partitions", "chunkSize", "compress" };
+
+    @Resource
+    ManagedScheduledExecutorService executor;
+
+    @EJB
+    JobSubmitter submitter;
+
+    private ScheduledFuture<?> schedule;
+
+    /**
+     * Starts the schedule, if there is one, when the application starts.
+     * @param init Unused
+     */
+    public void init(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        String cron = System.getProperty(PREFIX + "schedule");
+        if (cron != null) {
+            CronTrigger trigger = new CronTrigger(cron);
+            logger.info("Removing aged tweets on schedule " + trigger);
+            schedule = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    retain();
+                }
+            }, trigger);
+        }
+    }
+
+    @PreDestroy
+    private void stopSchedule() {
+        if (schedule != null) {
+            schedule.cancel(false);
+        }
+    }
+
+    /**
+     * Starts the job, unless it or the ingest job is still running.
+     */
+    synchronized void retain() {
+        try {
+            for (String job : new String[] { JOB, INGEST_JOB }) {
+                List<Long> running = submitter.getRunningExecutions(job);
+                if (!running.isEmpty()) {
+                    logger.info("Not starting " + JOB + ", execution(s) " + running + " of " + job + " still running");
+                    return;
+                }
+            }
+            Properties parameters = new Properties();
+            for (String name : PARAMETERS) {
+                String value = System.getProperty(PREFIX + name);
+                if (value != null) {
+                    parameters.setProperty(name, value);
+                }
+            }
+            long executionId = submitter.start(JOB, parameters);
+            logger.info("Started execution " + executionId + " of " + JOB + " with " + parameters);
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.info("Something went wrong: " + e);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.startup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+/**
+ * Runs TweetFileProcessing over tweet files as soon as the snatcher closes them.
+ * <p>
+ * When started with <code>-Dsnatcher.spool=...</code> the snatcher appends the path of each tweet file
+ * it closes to a spool manifest.  If the <code>tweet.spool.manifest</code> system property names that
+ * manifest, this polls it every <code>tweet.spool.pollSeconds</code> (default 10) and starts a job with
+ * its <code>inputFiles</code> parameter set to the newly listed files, at most
+ * <code>tweet.spool.filesPerJob</code> (default 10) files per job.  Jobs are started through the
+ * IngestScheduler, so no new job is started while an execution of the job is running, whoever started
+ * it (the files wait for the next poll instead), and files the scheduler has already ingested through
+ * its watermark aren't read again.
+ * <p>
+ * How far into the manifest jobs have been started is kept in a file next to it (the manifest's name
+ * plus ".offset"), so a server restart picks up where it left off rather than starting over.
+ * Other job parameters can be set with <code>tweet.job.*</code> system properties (see JobSubmitter).
+ */
+@ApplicationScoped
+public class SpoolTrigger {
+    private final static Logger logger = Logger.getLogger("sample");
+
+    @Resource
+    ManagedScheduledExecutorService executor;
+
+    @Inject
+    IngestScheduler ingestScheduler;
+
+    private File manifest;
+    private File offsetFile;
+    private int filesPerJob;
+    private ScheduledFuture<?> poller;
+
+    // How many bytes of the manifest have been handed to jobs, only touched by poll()
+    private long offset;
+
+    /**
+     * Starts polling the manifest when the application starts, if one is configured.
+     * @param init Unused
+     */
+    public void init(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        String path = System.getProperty("tweet.spool.manifest");
+        if (path == null) {
+            return;
+        }
+        manifest = new File(path);
+        offsetFile = new File(path + ".offset");
+        filesPerJob = Integer.getInteger("tweet.spool.filesPerJob", 10);
+        long pollSeconds = Long.getLong("tweet.spool.pollSeconds", 10L);
+        offset = readOffset();
+
+        logger.info("Watching spool manifest " + manifest + " from offset " + offset);
+        poller = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, pollSeconds, pollSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void stopPolling() {
+        if (poller != null) {
+            poller.cancel(false);
+        }
+    }
+
+    /**
+     * Starts a job over whatever has been added to the manifest, unless one is already running.
+     */
+    synchronized void poll() {
+        try {
+            if (!manifest.exists()) {
+                return;
+            }
+            if (manifest.length() < offset) {
+                logger.info("Spool manifest " + manifest + " was truncated, reading it from the start");
+                offset = 0;
+            }
+            // Carries on past files that had all been ingested already, until a job is running or the manifest runs out
+            while (true) {
+                List<File> files = new ArrayList<File>();
+                long end = readFiles(files);
+                if (end == offset || !ingestScheduler.ingest(files)) {
+                    break;
+                }
+                offset = end;
+                writeOffset();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.info("Something went wrong: " + e);
+        }
+    }
+
+    /**
+     * Reads up to filesPerJob complete lines of the manifest, starting at offset.
+     * @param files Gets the files read, leaving out any that no longer exist
+     * @return The offset just past the last line read
+     */
+    private long readFiles(List<File> files) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(manifest, "r")) {
+            long length = raf.length();
+            byte[] rest = new byte[(int) Math.min(length - offset, Integer.MAX_VALUE)];
+            raf.seek(offset);
+            raf.readFully(rest);
+
+            int lineStart = 0;
+            for (int i = 0; i < rest.length && files.size() < filesPerJob; i++) {
+                if (rest[i] == '\n') {
+                    String line = new String(rest, lineStart, i - lineStart, StandardCharsets.UTF_8).trim();
+                    if (!line.isEmpty()) {
+                        File f = new File(line);
+                        if (f.isFile()) {
+                            files.add(f);
+                        } else {
+                            logger.info("Spooled tweet file " + line + " no longer exists, skipping it");
+                        }
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            // A line without its newline yet is still being written
+            return offset + lineStart;
+        }
+    }
+
+    private long readOffset() {
+        try {
+            if (offsetFile.exists()) {
+                return Long.parseLong(new String(Files.readAllBytes(offsetFile.toPath()), StandardCharsets.UTF_8).trim());
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.info("Unable to read " + offsetFile + ", reading the manifest from the start: " + e);
+        }
+        return 0;
+    }
+
+    private void writeOffset() throws IOException {
+        File tmp = new File(offsetFile.getPath() + ".tmp");
+        Files.write(tmp.toPath(), Long.toString(offset).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), offsetFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.trending;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A Count-Min Sketch: estimates how many times any key has been counted, in a fixed
+ * <code>depth</code> by <code>width</code> table of counters whatever the number of distinct keys.
+ * Each key adds to one counter in every row, chosen by a hash of its own for that row, and its
+ * estimate is the smallest of those counters.  An estimate is never below the true count, and
+ * exceeds it by more than 2/width of the total count only with probability 2<sup>-depth</sup>
+ * or less.
+ * <p>
+ * Sketches of the same size can be merged by adding their tables, so counts taken separately
+ * (by partition or by time window) can be combined.  Not thread safe.
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final long[] counters;
+    private long total;
+
+    /**
+     * @param width Counters per row, a power of two
+     * @param depth Rows
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width < 1 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("width must be a power of two, not " + width);
+        }
+        if (depth < 1) {
+            throw new IllegalArgumentException("depth must be at least 1, not " + depth);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counters = new long[width * depth];
+    }
+
+    /**
+     * Counts a key
+     * @param key The key
+     * @param count How many times to count it
+     */
+    public void add(String key, long count) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        int mask = width - 1;
+        for (int row = 0; row < depth; row++) {
+            counters[row * width + ((h1 + row * h2) & mask)] += count;
+        }
+        total += count;
+    }
+
+    /**
+     * @param key The key
+     * @return The most times the key may have been counted
+     */
+    public long estimate(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        int mask = width - 1;
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[row * width + ((h1 + row * h2) & mask)]);
+        }
+        return min;
+    }
+
+    /**
+     * @return The sum of all the counts
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Adds another sketch's counts into this one
+     * @param other A sketch of the same width and depth
+     */
+    public void merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Can't merge a " + other.depth + "x" + other.width + " sketch into a " + depth + "x" + width + " one");
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+        total += other.total;
+    }
+
+    /**
+     * Writes the sketch, with the counters as variable length integers, as most of a sparse table is small
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(depth);
+        writeVarLong(out, total);
+        for (int i = 0; i < counters.length; i++) {
+            writeVarLong(out, counters[i]);
+        }
+    }
+
+    /**
+     * Reads a sketch written by write
+     */
+    static CountMinSketch read(DataInput in) throws IOException {
+        CountMinSketch sketch = new CountMinSketch(in.readInt(), in.readInt());
+        sketch.total = readVarLong(in);
+        for (int i = 0; i < sketch.counters.length; i++) {
+            sketch.counters[i] = readVarLong(in);
+        }
+        return sketch;
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    /**
+     * 64-bit FNV-1a over the key's chars, finished with MurmurHash3's mix so both halves are usable
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.trending;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Space-Saving algorithm for the most frequent keys of a stream, in at most <code>capacity</code>
+ * counters.  A key that isn't being counted yet takes over the counter with the lowest count when
+ * they are all in use, inheriting that count as its possible error.  Any key counted more often than
+ * total/capacity times is sure to hold a counter, and a counter's count is never below its key's true
+ * count nor more than its error above it.
+ * <p>
+ * The counters are kept in a min-heap, so counting a key takes a hash lookup and O(log capacity)
+ * steps at worst.  Summaries are merged as described by Agarwal et al. in "Mergeable Summaries",
+ * with the same guarantees for the merged stream.  Not thread safe.
+ */
+public class SpaceSaving {
+
+    /**
+     * A key being counted
+     */
+    public static class Counter {
+        private String key;
+        private long count;
+        private long error;
+        private int index;
+
+        Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        /**
+         * @return The key
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return The most times the key may have been counted
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return How much the count may be over
+         */
+        public long getError() {
+            return error;
+        }
+    }
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private final Counter[] heap;
+    private int size;
+
+    /**
+     * @param capacity The most keys counted at once
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1, not " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<String, Counter>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    /**
+     * @return The most keys counted at once
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Counts a key
+     * @param key The key
+     * @param count How many times to count it
+     */
+    public void add(String key, long count) {
+        Counter c = counters.get(key);
+        if (c != null) {
+            c.count += count;
+            siftDown(c.index);
+        } else if (size < capacity) {
+            c = new Counter(key, count, 0);
+            counters.put(key, c);
+            c.index = size;
+            heap[size++] = c;
+            siftUp(c.index);
+        } else {
+            // Take over the smallest counter
+            c = heap[0];
+            counters.remove(c.key);
+            c.key = key;
+            c.error = c.count;
+            c.count += count;
+            counters.put(key, c);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @return The lowest count held, or 0 if there are counters free, which bounds the count of any key not held
+     */
+    public long getMinCount() {
+        return size < capacity ? 0 : heap[0].count;
+    }
+
+    /**
+     * @param n How many to return
+     * @return The n keys with the highest counts, highest first
+     */
+    public List<Counter> top(int n) {
+        Counter[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted, (a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : a.key.compareTo(b.key));
+        return new ArrayList<Counter>(Arrays.asList(sorted).subList(0, Math.min(n, size)));
+    }
+
+    /**
+     * Merges another summary into this one: each key's count is its count in both, where a summary
+     * not holding the key contributes its lowest count (as both count and error), and the keys with
+     * the highest counts are kept.
+     * @param other Another summary, of any capacity
+     */
+    public void merge(SpaceSaving other) {
+        long thisMin = getMinCount();
+        long otherMin = other.getMinCount();
+        List<Counter> merged = new ArrayList<Counter>(size + other.size);
+        for (int i = 0; i < size; i++) {
+            Counter c = heap[i];
+            Counter o = other.counters.get(c.key);
+            merged.add(o != null ? new Counter(c.key, c.count + o.count, c.error + o.error)
+                    : new Counter(c.key, c.count + otherMin, c.error + otherMin));
+        }
+        for (int i = 0; i < other.size; i++) {
+            Counter o = other.heap[i];
+            if (!counters.containsKey(o.key)) {
+                merged.add(new Counter(o.key, o.count + thisMin, o.error + thisMin));
+            }
+        }
+        merged.sort((a, b) -> Long.compare(b.count, a.count));
+        counters.clear();
+        Arrays.fill(heap, null);
+        size = 0;
+        for (int i = 0; i < merged.size() && i < capacity; i++) {
+            Counter c = merged.get(i);
+            counters.put(c.key, c);
+            c.index = size;
+            heap[size++] = c;
+            siftUp(c.index);
+        }
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(capacity);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeUTF(heap[i].key);
+            CountMinSketch.writeVarLong(out, heap[i].count);
+            CountMinSketch.writeVarLong(out, heap[i].error);
+        }
+    }
+
+    static SpaceSaving read(DataInput in) throws IOException {
+        SpaceSaving summary = new SpaceSaving(in.readInt());
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            Counter c = new Counter(in.readUTF(), CountMinSketch.readVarLong(in), CountMinSketch.readVarLong(in));
+            summary.counters.put(c.key, c);
+            c.index = i;
+            summary.heap[i] = c;
+        }
+        // Written in heap order, so it is still a heap
+        summary.size = n;
+        return summary;
+    }
+
+    private void siftUp(int i) {
+        Counter c = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            Counter p = heap[parent];
+            if (p.count <= c.count) {
+                break;
+            }
+            heap[i] = p;
+            p.index = i;
+            i = parent;
+        }
+        heap[i] = c;
+        c.index = i;
+    }
+
+    private void siftDown(int i) {
+        Counter c = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (heap[child].count >= c.count) {
+                break;
+            }
+            heap[i] = heap[child];
+            heap[i].index = i;
+            i = child;
+        }
+        heap[i] = c;
+        c.index = i;
+    }
+}
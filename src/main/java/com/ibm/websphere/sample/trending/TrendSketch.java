@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.trending;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * What is kept of one kind of key (hashtags, accounts or words) over one time window: a
+ * CountMinSketch, to estimate how often any key was seen, and a SpaceSaving summary of the keys seen
+ * most.  Either way the size is fixed, about 8K to 30K when encoded, however many tweets and distinct
+ * keys there were.  Sketches merge, so a longer period is answered by merging its windows.
+ */
+public class TrendSketch {
+
+    private static final int VERSION = 1;
+    static final int WIDTH = 2048;
+    static final int DEPTH = 4;
+    static final int CAPACITY = 200;
+
+    private final CountMinSketch counts;
+    private final SpaceSaving top;
+
+    /**
+     * An empty sketch
+     */
+    public TrendSketch() {
+        this(new CountMinSketch(WIDTH, DEPTH), new SpaceSaving(CAPACITY));
+    }
+
+    private TrendSketch(CountMinSketch counts, SpaceSaving top) {
+        this.counts = counts;
+        this.top = top;
+    }
+
+    /**
+     * Counts a key
+     * @param key The key
+     * @param count How many times it was seen
+     */
+    public void add(String key, long count) {
+        counts.add(key, count);
+        top.add(key, count);
+    }
+
+    /**
+     * @param key A key
+     * @return The most times it may have been seen
+     */
+    public long estimate(String key) {
+        return counts.estimate(key);
+    }
+
+    /**
+     * @return How many keys were counted in all
+     */
+    public long getTotal() {
+        return counts.getTotal();
+    }
+
+    /**
+     * @param n How many to return
+     * @return The keys seen most, most first
+     */
+    public List<SpaceSaving.Counter> top(int n) {
+        return top.top(n);
+    }
+
+    /**
+     * Adds another sketch's counts into this one
+     * @param other The other sketch
+     */
+    public void merge(TrendSketch other) {
+        counts.merge(other.counts);
+        top.merge(other.top);
+    }
+
+    /**
+     * @return The sketch, for storing
+     */
+    public byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * 1024);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            counts.write(out);
+            top.write(out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Not from a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param encoded A sketch from encode
+     * @return The sketch
+     */
+    public static TrendSketch decode(byte[] encoded) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unknown trend sketch version " + version);
+            }
+            return new TrendSketch(CountMinSketch.read(in), SpaceSaving.read(in));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed trend sketch", e);
+        }
+    }
+}
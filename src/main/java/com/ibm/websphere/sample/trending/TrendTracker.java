@@ -0,0 +1,283 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.trending;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import com.ibm.websphere.sample.jpa.HashtagObject;
+import com.ibm.websphere.sample.jpa.TrendWindowKey;
+import com.ibm.websphere.sample.jpa.TrendWindowObject;
+import com.ibm.websphere.sample.jpa.TweetDataObject;
+import com.ibm.websphere.sample.jpa.TweetTagObject;
+import com.ibm.websphere.sample.search.Tokenizer;
+
+/**
+ * Counts the hashtags, accounts and words of the tweets a batch writer inserts, per hour they were
+ * created in, and merges the counts into the hourly sketches (see TrendWindows) every
+ * <code>flushItems</code> tweets.  Per tweet that is a handful of hash map updates.
+ * <p>
+ * Only committed counts are merged: a chunk's counts are held apart until its transaction ends
+ * (see completed), so a chunk that is rolled back and retried isn't counted twice.  Committed counts
+ * not yet merged are carried in the writer's checkpoint, so a restarted partition picks them up.
+ * The checkpoint is at most flushItems tweets' worth of keys, and nothing at all just after a flush.
+ * <p>
+ * Accounts are counted by account ID, as the tweets' screen names aren't kept.  Words are the terms
+ * of the search index, without the hashtags and mentions and a few very common English words.
+ * Not thread safe; each partition's writer has its own.
+ */
+public class TrendTracker {
+
+    private static final Set<String> STOP_WORDS = new HashSet<String>(Arrays.asList(
+            "a", "about", "after", "all", "am", "an", "and", "any", "are", "as", "at", "be", "been", "but", "by",
+            "can", "could", "did", "do", "does", "don", "for", "from", "get", "got", "had", "has", "have", "he",
+            "her", "him", "his", "how", "if", "in", "into", "is", "it", "its", "just", "me", "my", "no", "not",
+            "now", "of", "on", "one", "or", "our", "out", "rt", "amp", "she", "so", "than", "that", "the", "their",
+            "them", "then", "there", "they", "this", "to", "up", "us", "was", "we", "were", "what", "when", "who",
+            "why", "will", "with", "would", "you", "your"));
+
+    // Windows are merged in this order, so concurrent writers lock their rows in the same order
+    static final Comparator<TrendWindowKey> WINDOW_ORDER = Comparator.comparing(TrendWindowKey::getWindowStart)
+            .thenComparing(TrendWindowKey::getDimension);
+
+    private final int flushItems;
+
+    // Committed counts not merged yet, and the number of tweets they came from
+    private Map<TrendWindowKey, Map<String, Long>> pending = new HashMap<TrendWindowKey, Map<String, Long>>();
+    private int pendingTweets;
+    // Identifies the pending counts, once they are in a checkpoint
+    private String token;
+
+    // Counts of the current chunk
+    private Map<TrendWindowKey, Map<String, Long>> chunk = new HashMap<TrendWindowKey, Map<String, Long>>();
+    private int chunkTweets;
+    // Whether the current chunk merged everything, its own counts included
+    private boolean merged;
+
+    /**
+     * @param flushItems How many tweets to count between merges
+     */
+    public TrendTracker(int flushItems) {
+        this.flushItems = flushItems;
+    }
+
+    /**
+     * Picks up the counts from a checkpoint, unless they were merged when the writer that took it closed
+     * @param checkpoint A checkpoint, from checkpointInfo
+     * @param windows The stored sketches
+     */
+    public void restore(Checkpoint checkpoint, TrendWindows windows) {
+        if (!windows.isMerged(checkpoint.token)) {
+            pending = checkpoint.counts;
+            pendingTweets = checkpoint.tweets;
+            token = checkpoint.token;
+        }
+    }
+
+    /**
+     * Counts a tweet's hashtags, account and words into the current chunk
+     * @param tweet A tweet inserted by the chunk
+     */
+    public void add(TweetDataObject tweet) {
+        Date created = tweet.getCreationDate();
+        if (created == null) {
+            return;
+        }
+        List<TweetTagObject> tags = tweet.getTags();
+        if (tags != null) {
+            Map<String, Long> hashtags = null;
+            for (int i = 0; i < tags.size(); i++) {
+                if (tags.get(i) instanceof HashtagObject) {
+                    if (hashtags == null) {
+                        hashtags = counts(chunk, TrendWindowObject.keyFor(created, TrendWindowObject.HASHTAG));
+                    }
+                    hashtags.merge(tags.get(i).getValue(), 1L, Long::sum);
+                }
+            }
+        }
+        if (tweet.getAccountId() != 0) {
+            counts(chunk, TrendWindowObject.keyFor(created, TrendWindowObject.ACCOUNT)).merge(Long.toString(tweet.getAccountId()), 1L, Long::sum);
+        }
+        Map<String, Long> words = null;
+        for (String term : Tokenizer.terms(tweet.getTextContent())) {
+            char first = term.charAt(0);
+            if (first != '#' && first != '@' && !STOP_WORDS.contains(term)) {
+                if (words == null) {
+                    words = counts(chunk, TrendWindowObject.keyFor(created, TrendWindowObject.WORD));
+                }
+                words.merge(term, 1L, Long::sum);
+            }
+        }
+        chunkTweets++;
+    }
+
+    /**
+     * @return Whether enough tweets have been counted to merge them
+     */
+    public boolean isFlushDue() {
+        return pendingTweets + chunkTweets >= flushItems;
+    }
+
+    /**
+     * Merges the pending counts and the current chunk's into the sketches, within the chunk's transaction
+     * @param windows The stored sketches
+     */
+    public void flush(TrendWindows windows) {
+        SortedMap<TrendWindowKey, Map<String, Long>> all = new TreeMap<TrendWindowKey, Map<String, Long>>(WINDOW_ORDER);
+        addAll(all, pending);
+        addAll(all, chunk);
+        windows.merge(all, null);
+        merged = true;
+    }
+
+    /**
+     * Merges the pending counts into the sketches in a transaction of their own, when the writer closes.
+     * A marker is left with them if they are in a checkpoint, so a restart from it won't merge them again.
+     * @param windows The stored sketches
+     */
+    public void close(TrendWindows windows) {
+        if (pendingTweets > 0) {
+            SortedMap<TrendWindowKey, Map<String, Long>> all = new TreeMap<TrendWindowKey, Map<String, Long>>(WINDOW_ORDER);
+            addAll(all, pending);
+            windows.merge(all, token);
+            clearPending();
+        }
+    }
+
+    /**
+     * Called as the chunk's transaction ends, keeps or drops the chunk's counts
+     * @param committed Whether the chunk committed
+     */
+    public void completed(boolean committed) {
+        if (committed) {
+            if (merged) {
+                clearPending();
+            } else {
+                addAll(pending, chunk);
+                pendingTweets += chunkTweets;
+            }
+        }
+        chunk = new HashMap<TrendWindowKey, Map<String, Long>>();
+        chunkTweets = 0;
+        merged = false;
+    }
+
+    /**
+     * @return The counts committed along with the current chunk and not merged, or null if there are none
+     */
+    public Checkpoint checkpointInfo() {
+        if (merged || pendingTweets + chunkTweets == 0) {
+            return null;
+        }
+        if (token == null) {
+            token = UUID.randomUUID().toString();
+        }
+        return new Checkpoint(this);
+    }
+
+    private void clearPending() {
+        pending = new HashMap<TrendWindowKey, Map<String, Long>>();
+        pendingTweets = 0;
+        token = null;
+    }
+
+    private static Map<String, Long> counts(Map<TrendWindowKey, Map<String, Long>> windows, TrendWindowKey key) {
+        Map<String, Long> counts = windows.get(key);
+        if (counts == null) {
+            counts = new HashMap<String, Long>();
+            windows.put(key, counts);
+        }
+        return counts;
+    }
+
+    private static void addAll(Map<TrendWindowKey, Map<String, Long>> to, Map<TrendWindowKey, Map<String, Long>> from) {
+        for (Map.Entry<TrendWindowKey, Map<String, Long>> window : from.entrySet()) {
+            Map<String, Long> counts = counts(to, window.getKey());
+            for (Map.Entry<String, Long> key : window.getValue().entrySet()) {
+                counts.merge(key.getKey(), key.getValue(), Long::sum);
+            }
+        }
+    }
+
+    /**
+     * The counts committed but not merged as of a checkpoint.  Taken while the chunk is still in
+     * flight, it writes the pending counts and the chunk's when it is serialized rather than copying
+     * them, which comes to the same whether that is before or after the chunk's transaction ends.
+     */
+    public static class Checkpoint implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private transient TrendTracker tracker;
+        private transient Map<TrendWindowKey, Map<String, Long>> counts;
+        private transient int tweets;
+        private transient String token;
+
+        Checkpoint(TrendTracker tracker) {
+            this.tracker = tracker;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            // Once the chunk has committed its counts are among the pending ones, and its own are empty
+            out.writeUTF(tracker.token);
+            out.writeInt(tracker.pendingTweets + tracker.chunkTweets);
+            out.writeInt(tracker.pending.size() + tracker.chunk.size());
+            writeWindows(out, tracker.pending);
+            writeWindows(out, tracker.chunk);
+        }
+
+        private static void writeWindows(ObjectOutputStream out, Map<TrendWindowKey, Map<String, Long>> windows) throws IOException {
+            for (Map.Entry<TrendWindowKey, Map<String, Long>> window : windows.entrySet()) {
+                out.writeLong(window.getKey().getWindowStart().getTime());
+                out.writeUTF(window.getKey().getDimension());
+                out.writeInt(window.getValue().size());
+                for (Map.Entry<String, Long> key : window.getValue().entrySet()) {
+                    out.writeUTF(key.getKey());
+                    out.writeLong(key.getValue());
+                }
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            token = in.readUTF();
+            tweets = in.readInt();
+            counts = new HashMap<TrendWindowKey, Map<String, Long>>();
+            int windows = in.readInt();
+            for (int i = 0; i < windows; i++) {
+                Map<String, Long> window = TrendTracker.counts(counts, new TrendWindowKey(new Date(in.readLong()), in.readUTF()));
+                int keys = in.readInt();
+                for (int k = 0; k < keys; k++) {
+                    window.merge(in.readUTF(), in.readLong(), Long::sum);
+                }
+            }
+        }
+    }
+}
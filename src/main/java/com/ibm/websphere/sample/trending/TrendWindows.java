@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 International Business Machines Corp.
+ * 
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership. Licensed under the Apache License, 
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ibm.websphere.sample.trending;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+
+import com.ibm.websphere.sample.jpa.TrendFlushObject;
+import com.ibm.websphere.sample.jpa.TrendWindowKey;
+import com.ibm.websphere.sample.jpa.TrendWindowObject;
+
+/**
+ * Reads and updates the hourly trend sketches in TWITTER.TREND_WINDOWS.  Counts are merged into
+ * the sketches by the batch writers (see TrendTracker), within the chunk's transaction or, when a
+ * writer closes, one of their own; queries merge the sketches of the hours asked about.
+ */
+@ApplicationScoped
+public class TrendWindows {
+    private final static Logger logger = Logger.getLogger("sample");
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    // Flush markers are only needed until the partition that wrote one could have been restarted
+    private static final long FLUSH_MARKER_DAYS = 30;
+
+    @PersistenceContext(unitName = "tweet-persister")
+    EntityManager entityManager;
+
+    /**
+     * Merges counts into the sketches, locking each row as it is read so concurrent writers (partitions,
+     * overlapping jobs) can't lose each other's updates.
+     * @param counts The counts per key of each window and dimension, in the order the rows are to be locked
+     * @param token If not null, a marker recording that these counts were merged is written with them
+     */
+    @Transactional
+    public void merge(SortedMap<TrendWindowKey, Map<String, Long>> counts, String token) {
+        for (Map.Entry<TrendWindowKey, Map<String, Long>> window : counts.entrySet()) {
+            TrendWindowObject row = entityManager.find(TrendWindowObject.class, window.getKey(), LockModeType.PESSIMISTIC_WRITE);
+            TrendSketch sketch = row != null ? TrendSketch.decode(row.getSketch()) : new TrendSketch();
+            for (Map.Entry<String, Long> key : window.getValue().entrySet()) {
+                sketch.add(key.getKey(), key.getValue());
+            }
+            if (row != null) {
+                row.setSketch(sketch.encode());
+            } else {
+                entityManager.persist(new TrendWindowObject(window.getKey(), sketch.encode()));
+            }
+        }
+        if (token != null) {
+            Date now = new Date();
+            entityManager.persist(new TrendFlushObject(token, now));
+            int pruned = entityManager.createQuery("DELETE FROM TrendFlushObject f WHERE f.flushed < :before")
+                    .setParameter("before", new Date(now.getTime() - FLUSH_MARKER_DAYS * MILLIS_PER_DAY)).executeUpdate();
+            if (pruned > 0) {
+                logger.fine("Pruned " + pruned + " trend flush markers");
+            }
+        }
+    }
+
+    /**
+     * @param token A token passed to merge
+     * @return Whether the counts with that token have been merged
+     */
+    public boolean isMerged(String token) {
+        return entityManager.find(TrendFlushObject.class, token) != null;
+    }
+
+    /**
+     * Merges the sketches of the windows starting within [since, until)
+     * @param dimension HASHTAG, ACCOUNT or WORD
+     * @param since The earliest window
+     * @param until The end of the period
+     * @return The merged sketch, empty if there are no windows in the period
+     */
+    public TrendSketch query(String dimension, Date since, Date until) {
+        List<byte[]> sketches = entityManager.createQuery("SELECT w.sketch FROM TrendWindowObject w"
+                + " WHERE w.dimension = :dimension AND w.windowStart >= :since AND w.windowStart < :until", byte[].class)
+                .setParameter("dimension", dimension).setParameter("since", since).setParameter("until", until).getResultList();
+        TrendSketch merged = new TrendSketch();
+        for (byte[] sketch : sketches) {
+            merged.merge(TrendSketch.decode(sketch));
+        }
+        return merged;
+    }
+
+    /**
+     * @return The start of the newest window, or null if there are none
+     */
+    public Date newestWindow() {
+        return entityManager.createQuery("SELECT MAX(w.windowStart) FROM TrendWindowObject w", Date.class).getSingleResult();
+    }
+}